@@ -0,0 +1,375 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+
+/*-
+ * Timing benchmarks for the hot paths of the game: building a Grid, finding
+ * neighbors, placing mines, flood filling, checking game state, solving,
+ * computing mine probabilities, recounting a board and drawing.
+ *
+ * Run with the game's classpath:
+ *   java Benchmarks [output.json] [sizes, e.g. 9,100,1000,4000] [iterations] [millis]
+ *
+ * Each benchmark is warmed up, then timed over a number of iterations that each
+ * run for at least the given number of milliseconds, and the results are written
+ * in the same JSON layout as JMH's -rf json, so they can be compared across
+ * revisions with the usual JMH tooling.
+ */
+
+// Represents one benchmarked operation, measured on a board of a given size
+interface IBenchmark {
+  // EFFECT: prepares a fresh state for the next call to run, outside the timing
+  void setup();
+
+  // performs the measured operation, returning a value that depends on its
+  // result so the work cannot be optimized away
+  int run();
+}
+
+// Represents the timings of one benchmark at one board size
+class BenchmarkResult {
+  String name;
+  int size;
+  ArrayList<Double> nanosPerOp;
+
+  BenchmarkResult(String name, int size) {
+    this.name = name;
+    this.size = size;
+    this.nanosPerOp = new ArrayList<Double>();
+  }
+
+  // the mean of the timed iterations, in nanoseconds per operation
+  double score() {
+    double sum = 0;
+    for (double d : this.nanosPerOp) {
+      sum += d;
+    }
+    return sum / this.nanosPerOp.size();
+  }
+
+  // the standard deviation of the timed iterations, in nanoseconds per operation
+  double error() {
+    if (this.nanosPerOp.size() < 2) {
+      return 0;
+    }
+    double mean = this.score();
+    double sum = 0;
+    for (double d : this.nanosPerOp) {
+      sum += (d - mean) * (d - mean);
+    }
+    return Math.sqrt(sum / (this.nanosPerOp.size() - 1));
+  }
+
+  // this result as one line for a person to read
+  String summary() {
+    return this.name + " " + this.size + "x" + this.size + ": " + (long) this.score() + " ns/op";
+  }
+
+  // this result as a JMH-style JSON object
+  String toJson() {
+    StringBuilder raw = new StringBuilder();
+    for (int k = 0; k < this.nanosPerOp.size(); k++) {
+      if (k > 0) {
+        raw.append(", ");
+      }
+      raw.append(this.nanosPerOp.get(k));
+    }
+    return "{\"benchmark\": \"" + this.name + "\", \"mode\": \"avgt\", "
+        + "\"params\": {\"size\": \"" + this.size + "x" + this.size + "\"}, "
+        + "\"primaryMetric\": {\"score\": " + this.score() + ", \"scoreError\": "
+        + this.error() + ", \"scoreUnit\": \"ns/op\", \"rawData\": [[" + raw + "]]}}";
+  }
+
+}
+
+// Runs every benchmark at every board size and records the results
+class Benchmarks {
+  // the largest board drawn: a board's layer holds 30x30 pixels per tile, so a
+  // 1000x1000 board's would take gigabytes
+  static final int MAX_DRAW_SIZE = 100;
+
+  int iterations;
+  long millis;
+  int sink;
+
+  Benchmarks(int iterations, long millis) {
+    this.iterations = iterations;
+    this.millis = millis;
+    this.sink = 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    String out = args.length > 0 ? args[0] : "bench-results.json";
+    int[] sizes = args.length > 1 ? Benchmarks.parseSizes(args[1])
+        : new int[] { 9, 100, 1000, 4000 };
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    long millis = args.length > 3 ? Long.parseLong(args[3]) : 500;
+
+    Benchmarks bench = new Benchmarks(iterations, millis);
+    ArrayList<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    for (int size : sizes) {
+      for (BenchmarkResult result : bench.runAll(size)) {
+        System.out.println(result.summary());
+        results.add(result);
+      }
+    }
+    PrintWriter writer = new PrintWriter(out, "UTF-8");
+    writer.println(Benchmarks.toJson(results));
+    writer.close();
+    System.out.println("Wrote " + results.size() + " results to " + out);
+  }
+
+  // the board sizes in the given comma-separated list
+  static int[] parseSizes(String list) {
+    String[] parts = list.split(",");
+    int[] sizes = new int[parts.length];
+    for (int k = 0; k < parts.length; k++) {
+      sizes[k] = Integer.parseInt(parts[k].trim());
+    }
+    return sizes;
+  }
+
+  // the given results as a JSON array
+  static String toJson(ArrayList<BenchmarkResult> results) {
+    StringBuilder json = new StringBuilder("[\n");
+    for (int k = 0; k < results.size(); k++) {
+      json.append("  ").append(results.get(k).toJson());
+      json.append(k < results.size() - 1 ? ",\n" : "\n");
+    }
+    return json.append("]").toString();
+  }
+
+  // runs every benchmark on a size x size board
+  ArrayList<BenchmarkResult> runAll(int size) {
+    ArrayList<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    results.add(this.measure("Grid.new", size, new GridConstruction(size)));
+    results.add(this.measure("Grid.findNeighbors", size, new FindNeighbors(size)));
+    results.add(this.measure("Grid.placeMines.low", size, new PlaceMines(size, 0.01)));
+    results.add(this.measure("Grid.placeMines.medium", size, new PlaceMines(size, 0.15)));
+    results.add(this.measure("Grid.placeMines.high", size, new PlaceMines(size, 0.9)));
+    results.add(this.measure("Cell.open.flood", size, new FloodFill(size)));
+    results.add(this.measure("Grid.gameState", size, new GameState(size)));
+    results.add(this.measure("Solver.solve", size, new SolveBoard(size)));
+    results.add(this.measure("Probability.probabilities", size, new MineOdds(size)));
+    results.add(this.measure("Board.recount", size, new Recount(size)));
+    if (size <= MAX_DRAW_SIZE) {
+      results.add(this.measure("Grid.draw", size, new DrawGrid(size)));
+    }
+    return results;
+  }
+
+  // times the given benchmark: one warmup iteration, then the configured number
+  // of timed iterations, each running the operation for at least millis
+  BenchmarkResult measure(String name, int size, IBenchmark bench) {
+    BenchmarkResult result = new BenchmarkResult(name, size);
+    this.iterate(bench);
+    for (int k = 0; k < this.iterations; k++) {
+      result.nanosPerOp.add(this.iterate(bench));
+    }
+    return result;
+  }
+
+  // runs the given benchmark for at least millis, returning the mean time of one
+  // operation in nanoseconds, excluding setup
+  double iterate(IBenchmark bench) {
+    long budget = this.millis * 1000000;
+    long timed = 0;
+    long ops = 0;
+    while (timed < budget) {
+      bench.setup();
+      long start = System.nanoTime();
+      this.sink += bench.run();
+      timed += System.nanoTime() - start;
+      ops++;
+    }
+    return (double) timed / ops;
+  }
+
+}
+
+// Builds an empty Grid
+class GridConstruction implements IBenchmark {
+  int size;
+
+  GridConstruction(int size) {
+    this.size = size;
+  }
+
+  public void setup() {
+    // each run builds its own Grid
+  }
+
+  public int run() {
+    return new Grid(this.size, this.size).board.size();
+  }
+}
+
+// Finds the neighbors of the Cell in the middle of a Grid
+class FindNeighbors implements IBenchmark {
+  Grid grid;
+  int mid;
+
+  FindNeighbors(int size) {
+    this.grid = new Grid(new Random(1), size, size, size * size / 6);
+    this.mid = size / 2;
+  }
+
+  public void setup() {
+    // the Grid is only read
+  }
+
+  public int run() {
+    return this.grid.findNeighbors(this.mid, this.mid).size();
+  }
+}
+
+// Places mines covering the given fraction of an empty Grid
+class PlaceMines implements IBenchmark {
+  int size;
+  int numMines;
+  Random rand;
+  Grid grid;
+
+  PlaceMines(int size, double density) {
+    this.size = size;
+    this.numMines = (int) (size * size * density);
+    this.rand = new Random(1);
+  }
+
+  public void setup() {
+    this.grid = new Grid(this.size, this.size);
+  }
+
+  public int run() {
+    this.grid.placeMines(this.rand, this.numMines);
+    return this.grid.board.closedSafe;
+  }
+}
+
+// Clicks the corner of a Grid whose only mine sits in the opposite corner, so
+// the flood opens every other Cell
+class FloodFill implements IBenchmark {
+  int size;
+  Grid grid;
+
+  FloodFill(int size) {
+    this.size = size;
+  }
+
+  public void setup() {
+    this.grid = new Grid(this.size, this.size);
+    this.grid.board.placeMine(this.grid.board.size() - 1);
+  }
+
+  public int run() {
+    return this.grid.cellAt(0, 0).open(true).size();
+  }
+}
+
+// Asks a Grid in play whether the game is lost or won and how many flags it holds
+class GameState implements IBenchmark {
+  Grid grid;
+
+  GameState(int size) {
+    this.grid = new Grid(new Random(1), size, size, size * size / 6);
+    this.grid.board.toggleFlag(0);
+  }
+
+  public void setup() {
+    // the Grid is only read
+  }
+
+  public int run() {
+    int state = this.grid.numFlags();
+    if (this.grid.gameOver()) {
+      state += 2;
+    }
+    if (this.grid.win()) {
+      state += 4;
+    }
+    return state;
+  }
+}
+
+// Draws every Cell of a Grid from scratch
+class DrawGrid implements IBenchmark {
+  Grid grid;
+  BoardRenderer renderer;
+
+  DrawGrid(int size) {
+    this.grid = new Grid(new Random(1), size, size, size * size / 6);
+    this.renderer = new BoardRenderer(this.grid.board);
+  }
+
+  public void setup() {
+    this.renderer.invalidate();
+  }
+
+  public int run() {
+    return this.renderer.draw().width;
+  }
+}
+
+// Plays a fresh first-click-safe Grid to the end with the Solver, guessing when
+// stuck
+class SolveBoard implements IBenchmark {
+  int size;
+  int seed;
+  Grid grid;
+
+  SolveBoard(int size) {
+    this.size = size;
+    this.seed = 0;
+  }
+
+  public void setup() {
+    this.seed++;
+    this.grid = new Grid(new Random(this.seed), this.size, this.size,
+        this.size * this.size / 6, true);
+  }
+
+  public int run() {
+    return new Solver(this.grid).solve(this.size / 2, this.size / 2, true).ordinal();
+  }
+}
+
+// Computes the chance of a mine under every closed Cell of a Grid the Solver got
+// stuck on, with nothing remembered from earlier calls
+class MineOdds implements IBenchmark {
+  Grid grid;
+  int numMines;
+  ProbabilityEngine odds;
+
+  MineOdds(int size) {
+    this.numMines = size * size / 6;
+    this.grid = new Grid(new Random(1), size, size, this.numMines, true);
+    new Solver(this.grid).solve(size / 2, size / 2, false);
+  }
+
+  public void setup() {
+    this.odds = new ProbabilityEngine(this.grid.board);
+  }
+
+  public int run() {
+    return this.odds.probabilities(this.numMines).length;
+  }
+}
+
+// Recounts the running totals and stored counts of a Grid in play with bit planes
+class Recount implements IBenchmark {
+  Grid grid;
+
+  Recount(int size) {
+    this.grid = new Grid(new Random(1), size, size, size * size / 6, true);
+    this.grid.openCell(size / 2, size / 2);
+  }
+
+  public void setup() {
+    // the Grid is only read
+  }
+
+  public int run() {
+    return this.grid.board.countersMatchScan() ? 1 : 0;
+  }
+}
@@ -0,0 +1,248 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Represents a board as bit planes, one bit per tile with each row padded to
+// whole longs, bit j of word k of a row standing for column 64 * k + j: which
+// tiles hold mines, are open and are flagged, and the four bits of each tile's
+// stored adjacent-mine count. The true counts of 64 tiles at a time are found
+// by adding shifted copies of the mine plane into four count planes, and the
+// running totals of a Board are recounted with popcounts rather than with a
+// branch per tile. Mines are chosen on a Bitboard before they are placed, so
+// they can be placed in index order
+class Bitboard {
+  static final VarHandle EIGHT_TILES =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  int width;
+  int height;
+  int words;
+  long[] mines;
+  long[] open;
+  long[] flags;
+  long[][] counts;
+
+  // a Bitboard with no mines for a board of the given size, holding only a mine
+  // plane, as used to choose where mines go
+  Bitboard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.words = (width + 63) / 64;
+    this.mines = new long[this.words * height];
+    this.open = null;
+    this.flags = null;
+    this.counts = null;
+  }
+
+  // a Bitboard of the tiles of the given Board, gathered 64 at a time; a Board
+  // on the heap is read eight tiles per load
+  Bitboard(Board board) {
+    this(board.width, board.height);
+    this.open = new long[this.mines.length];
+    this.flags = new long[this.mines.length];
+    this.counts = new long[4][this.mines.length];
+    for (int y = 0; y < this.height; y++) {
+      for (int k = 0; k < this.words; k++) {
+        int base = board.index(k * 64, y);
+        int n = Math.min(64, this.width - k * 64);
+        int w = y * this.words + k;
+        int j = 0;
+        if (board.cells != null) {
+          for (; j + 8 <= n; j += 8) {
+            long eight = (long) EIGHT_TILES.get(board.cells, base + j);
+            this.mines[w] |= Bitboard.gather(eight, 4) << j;
+            this.open[w] |= Bitboard.gather(eight, 5) << j;
+            this.flags[w] |= Bitboard.gather(eight, 6) << j;
+            for (int b = 0; b < 4; b++) {
+              this.counts[b][w] |= Bitboard.gather(eight, b) << j;
+            }
+          }
+        }
+        for (; j < n; j++) {
+          long bits = board.cell(base + j);
+          this.mines[w] |= ((bits >>> 4) & 1) << j;
+          this.open[w] |= ((bits >>> 5) & 1) << j;
+          this.flags[w] |= ((bits >>> 6) & 1) << j;
+          for (int b = 0; b < 4; b++) {
+            this.counts[b][w] |= ((bits >>> b) & 1) << j;
+          }
+        }
+      }
+    }
+  }
+
+  // the given bit of each of the eight bytes of the given long, packed into
+  // the low eight bits with the lowest byte's first: the masked bits are one
+  // byte apart, so multiplying by a constant with one bit per byte moves bit
+  // 8i up by 56 - 7i into the top byte, and no two products overlap
+  static long gather(long eight, int bit) {
+    return (((eight >>> bit) & 0x0101010101010101L) * 0x0102040810204080L) >>> 56;
+  }
+
+  // the index in each plane of the word holding the tile at the given index;
+  // the tile's bit in it is its column mod 64
+  int word(int i) {
+    return (i / this.width) * this.words + (i % this.width) / 64;
+  }
+
+  // does the tile at the given index hold a mine?
+  boolean hasMine(int i) {
+    return (this.mines[this.word(i)] & (1L << (i % this.width))) != 0;
+  }
+
+  // EFFECT: removes every mine
+  void clearMines() {
+    Arrays.fill(this.mines, 0);
+  }
+
+  // EFFECT: marks the tile at the given index as holding a mine
+  void setMine(int i) {
+    this.mines[this.word(i)] |= 1L << (i % this.width);
+  }
+
+  // the bits of the last word of a row that stand for tiles
+  long lastWordMask() {
+    int used = this.width % 64;
+    return used == 0 ? -1L : (1L << used) - 1;
+  }
+
+  // the number of tiles that hold a mine
+  int mineCount() {
+    int count = 0;
+    for (long w : this.mines) {
+      count += Long.bitCount(w);
+    }
+    return count;
+  }
+
+  // the number of flagged tiles
+  int numFlags() {
+    int count = 0;
+    for (long w : this.flags) {
+      count += Long.bitCount(w);
+    }
+    return count;
+  }
+
+  // the number of open tiles that hold a mine
+  int openMines() {
+    int count = 0;
+    for (int w = 0; w < this.mines.length; w++) {
+      count += Long.bitCount(this.mines[w] & this.open[w]);
+    }
+    return count;
+  }
+
+  // the number of closed tiles that hold no mine
+  int closedSafe() {
+    long last = this.lastWordMask();
+    int count = 0;
+    for (int w = 0; w < this.mines.length; w++) {
+      long tiles = w % this.words == this.words - 1 ? last : -1L;
+      count += Long.bitCount(tiles & ~this.mines[w] & ~this.open[w]);
+    }
+    return count;
+  }
+
+  // is any mine open?
+  boolean lost() {
+    for (int w = 0; w < this.mines.length; w++) {
+      if ((this.mines[w] & this.open[w]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // is every tile without a mine open?
+  boolean won() {
+    return this.closedSafe() == 0;
+  }
+
+  // EFFECT: places this Bitboard's mines on the given Board one at a time, in
+  // index order, so the counts they add are written in three streams of rows
+  // rather than scattered across the board
+  void placeMinesInOrder(Board board) {
+    for (int y = 0; y < this.height; y++) {
+      for (int k = 0; k < this.words; k++) {
+        long w = this.mines[y * this.words + k];
+        while (w != 0) {
+          board.placeMine(board.index(k * 64 + Long.numberOfTrailingZeros(w), y));
+          w &= w - 1;
+        }
+      }
+    }
+  }
+
+  // the word of the mine plane at the given row and word of a row, or 0 off the
+  // board
+  long mineWord(int y, int k) {
+    if (y < 0 || y >= this.height || k < 0 || k >= this.words) {
+      return 0;
+    }
+    return this.mines[y * this.words + k];
+  }
+
+  // EFFECT: sets out[0] to out[3] to the bit planes of the number of mines
+  // adjacent to each tile of the word at the given row and word of a row: each
+  // of the eight neighbor words, the mine word above, below or beside shifted
+  // by a column, is added to all 64 tiles at once with a ripple-carry add
+  void neighborCounts(int y, int k, long[] out) {
+    long c0 = 0;
+    long c1 = 0;
+    long c2 = 0;
+    long c3 = 0;
+    for (int dy = -1; dy <= 1; dy++) {
+      long w = this.mineWord(y + dy, k);
+      long before = this.mineWord(y + dy, k - 1);
+      long after = this.mineWord(y + dy, k + 1);
+      for (int dx = -1; dx <= 1; dx++) {
+        long add;
+        if (dx < 0) {
+          add = (w << 1) | (before >>> 63);
+        }
+        else if (dx > 0) {
+          add = (w >>> 1) | (after << 63);
+        }
+        else if (dy != 0) {
+          add = w;
+        }
+        else {
+          continue;
+        }
+        long carry = c0 & add;
+        c0 ^= add;
+        long next = c1 & carry;
+        c1 ^= carry;
+        carry = c2 & next;
+        c2 ^= next;
+        c3 |= carry;
+      }
+    }
+    out[0] = c0;
+    out[1] = c1;
+    out[2] = c2;
+    out[3] = c3;
+  }
+
+  // does every tile's stored count match the mines around it?
+  boolean countsMatchMines() {
+    long last = this.lastWordMask();
+    long[] actual = new long[4];
+    for (int y = 0; y < this.height; y++) {
+      for (int k = 0; k < this.words; k++) {
+        this.neighborCounts(y, k, actual);
+        int w = y * this.words + k;
+        long tiles = k == this.words - 1 ? last : -1L;
+        for (int b = 0; b < 4; b++) {
+          if (((actual[b] ^ this.counts[b][w]) & tiles) != 0) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+}
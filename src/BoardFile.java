@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/*-
+ * Boards saved to disk, one byte per tile in Board's packing after a fixed
+ * header of big-endian fields:
+ *
+ *   offset  0  int   MAGIC, "MSWB"
+ *   offset  4  int   VERSION
+ *   offset  8  int   width
+ *   offset 12  int   height
+ *   offset 16  int   number of mines
+ *   offset 20  int   mines still to be placed on the first click
+ *   offset 24  long  seed the mines are drawn from
+ *   offset 32  int   flags
+ *   offset 36  int   closed safe tiles
+ *   offset 40  int   open mines
+ *   offset 44  int   1 while the file is open, 0 once it is closed
+ *   offset 64        the tiles, indexed by y * width + x
+ *
+ * The tiles are mapped into memory rather than read, so opening a board of any
+ * size takes constant time, moves edit the file in place, and boards larger
+ * than the heap can be played. Moves write only the tiles, so the fields at 20
+ * and 32 to 40 can be stale in a file that was never closed; such a file is
+ * recounted from its tiles when it is next opened.
+ */
+
+// Represents a Board whose tiles are the bytes of a mapped BoardFile
+class MappedBoard extends Board {
+  MappedByteBuffer tiles;
+
+  MappedBoard(int width, int height, MappedByteBuffer tiles, int numFlags, int closedSafe,
+      int openMines) {
+    super(width, height, null, numFlags, closedSafe, openMines);
+    this.tiles = tiles;
+  }
+
+  int cell(int i) {
+    return this.tiles.get(i);
+  }
+
+  void setCell(int i, int bits) {
+    this.tiles.put(i, (byte) bits);
+  }
+
+}
+
+// Represents an open board file: its header and tiles mapped into memory, and
+// the Grid that plays on them
+class BoardFile {
+  static final int MAGIC = 0x4D535742;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  // the header offset of the field marking a file that is open
+  static final int IN_USE = 44;
+
+  FileChannel channel;
+  MappedByteBuffer header;
+  int numMines;
+  long seed;
+  Grid grid;
+
+  // maps the board in the given channel to the file at the given path, whose
+  // header has been checked, recounting its running totals from the tiles if
+  // it was not closed
+  // EFFECT: marks the file as open until it is closed
+  BoardFile(Path path, FileChannel channel, MappedByteBuffer header) throws IOException {
+    this.channel = channel;
+    this.header = header;
+    int width = header.getInt(8);
+    int height = header.getInt(12);
+    this.numMines = header.getInt(16);
+    this.seed = header.getLong(24);
+    MappedByteBuffer tiles = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE,
+        (long) width * height);
+    MappedBoard board = new MappedBoard(width, height, tiles, header.getInt(32),
+        header.getInt(36), header.getInt(40));
+    this.grid = new Grid(board, new Random(this.seed), header.getInt(20));
+    if (header.getInt(IN_USE) != 0) {
+      try {
+        this.recount(path);
+      }
+      catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+    header.putInt(IN_USE, 1);
+    header.force();
+  }
+
+  // EFFECT: sets the Grid's running totals from its tiles in one pass over
+  // them, keeping nothing but the totals, and takes any mine on them to mean
+  // the first click's mines have been placed; throws if the tiles hold some
+  // but not all of the mines, or counts that do not match them, as when the
+  // process stopped while placing mines
+  void recount(Path path) throws IOException {
+    Board board = this.grid.board;
+    int numFlags = 0;
+    int closedSafe = 0;
+    int openMines = 0;
+    int mines = 0;
+    boolean countsMatch = true;
+    for (int i = 0; i < board.size(); i++) {
+      int bits = board.cell(i);
+      if ((bits & Board.FLAG) != 0) {
+        numFlags++;
+      }
+      if ((bits & Board.MINE) != 0) {
+        mines++;
+        if ((bits & Board.OPEN) != 0) {
+          openMines++;
+        }
+      }
+      else if ((bits & Board.OPEN) == 0) {
+        closedSafe++;
+      }
+      countsMatch = countsMatch && (bits & Board.COUNT_MASK) == BoardFile.minesAround(board, i);
+    }
+    boolean unplaced = mines == 0 && this.grid.pendingMines == this.numMines;
+    if (!unplaced && mines != this.numMines) {
+      throw new IOException("Board file holds " + mines + " of its " + this.numMines
+          + " mines: " + path);
+    }
+    if (!countsMatch) {
+      throw new IOException("Board file's counts do not match its mines: " + path);
+    }
+    board.numFlags = numFlags;
+    board.closedSafe = closedSafe;
+    board.openMines = openMines;
+    if (!unplaced) {
+      this.grid.pendingMines = 0;
+    }
+  }
+
+  // the number of mines on the tiles adjacent to the tile at the given index
+  static int minesAround(Board board, int i) {
+    int x = i % board.width;
+    int y = i / board.width;
+    int num = 0;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, board.width - 1); nx++) {
+        if ((nx != x || ny != y) && board.hasMine(board.index(nx, ny))) {
+          num++;
+        }
+      }
+    }
+    return num;
+  }
+
+  // creates a board file at the given path for a new game whose mines are
+  // drawn from the given seed, placed when the first Cell is opened if
+  // firstClickSafe and right away otherwise
+  static BoardFile create(Path path, int width, int height, int numMines, long seed,
+      boolean firstClickSafe) throws IOException {
+    if (firstClickSafe && numMines > width * height - 1) {
+      throw new IllegalArgumentException(
+          "Cannot place " + numMines + " mines on " + (width * height - 1) + " tiles");
+    }
+    BoardFile file = BoardFile.write(path, width, height, numMines, firstClickSafe ? numMines : 0,
+        seed, 0, width * height, 0);
+    if (!firstClickSafe) {
+      file.grid.placeMines(file.grid.rand, numMines);
+    }
+    file.sync();
+    return file;
+  }
+
+  // saves the given Grid, which holds the given number of mines drawn from the
+  // given seed, to a board file at the given path
+  static BoardFile save(Path path, Grid grid, int numMines, long seed) throws IOException {
+    Board board = grid.board;
+    BoardFile file = BoardFile.write(path, board.width, board.height, numMines,
+        grid.pendingMines, seed, board.numFlags, board.closedSafe, board.openMines);
+    ByteBuffer tiles = ((MappedBoard) file.grid.board).tiles.duplicate();
+    if (board.cells != null) {
+      tiles.put(board.cells);
+    }
+    else {
+      for (int i = 0; i < board.size(); i++) {
+        tiles.put((byte) board.cell(i));
+      }
+    }
+    file.sync();
+    return file;
+  }
+
+  // writes the header of a board file with the given fields at the given path,
+  // followed by tiles that are all zero
+  static BoardFile write(Path path, int width, int height, int numMines, int pendingMines,
+      long seed, int numFlags, int closedSafe, int openMines) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.putInt(0, MAGIC);
+    header.putInt(4, VERSION);
+    header.putInt(8, width);
+    header.putInt(12, height);
+    header.putInt(16, numMines);
+    header.putInt(20, pendingMines);
+    header.putLong(24, seed);
+    header.putInt(32, numFlags);
+    header.putInt(36, closedSafe);
+    header.putInt(40, openMines);
+    return new BoardFile(path, channel, header);
+  }
+
+  // opens the board file at the given path, with every move on its Grid
+  // written through to the file
+  static BoardFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    if (channel.size() < HEADER_SIZE) {
+      channel.close();
+      throw new IOException("Not a board file: " + path);
+    }
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    if (header.getInt(0) != MAGIC) {
+      channel.close();
+      throw new IOException("Not a board file: " + path);
+    }
+    if (header.getInt(4) != VERSION) {
+      channel.close();
+      throw new IOException("Unsupported board file version " + header.getInt(4));
+    }
+    long tiles = (long) header.getInt(8) * header.getInt(12);
+    if (channel.size() < HEADER_SIZE + tiles) {
+      channel.close();
+      throw new IOException("Truncated board file: " + path);
+    }
+    return new BoardFile(path, channel, header);
+  }
+
+  // a game on this file's Grid
+  Engine engine() {
+    return new Engine(this.grid, this.numMines);
+  }
+
+  // EFFECT: records the Grid's running totals in the header and writes every
+  // change to the storage device
+  void sync() {
+    Board board = this.grid.board;
+    this.header.putInt(20, this.grid.pendingMines);
+    this.header.putInt(32, board.numFlags);
+    this.header.putInt(36, board.closedSafe);
+    this.header.putInt(40, board.openMines);
+    this.header.force();
+    ((MappedBoard) board).tiles.force();
+  }
+
+  // EFFECT: syncs this file, marks it closed and closes it; the Grid must not be
+  // used afterwards
+  void close() throws IOException {
+    this.sync();
+    this.header.putInt(IN_USE, 0);
+    this.header.force();
+    this.channel.close();
+  }
+
+}
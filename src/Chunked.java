@@ -0,0 +1,282 @@
+import java.util.HashMap;
+import java.util.Random;
+
+// Represents a Minesweeper board with no edges, stored as square chunks of
+// Chunk.SIZE x Chunk.SIZE cells that are only created when a cell in them, or
+// next to them, is asked about; each chunk's mines come from the board's seed
+// and the chunk's coordinates, so the same seed always gives the same board
+// whatever order it is explored in, and memory grows only with the explored area
+class ChunkedBoard {
+  // the most cells one click opens; a flood stopped by this limit leaves open
+  // cells with no adjacent mines on its edge, and clicking one carries it on
+  static final int FLOOD_LIMIT = 1 << 20;
+
+  long seed;
+  int minesPerChunk;
+  HashMap<Long, Chunk> chunks;
+  // the chunk used last, since most lookups fall in the same chunk as the one
+  // before
+  Chunk recent;
+  long openSafe;
+  int numFlags;
+  boolean exploded;
+
+  // every chunk holds the given fraction of its cells as mines, except that the
+  // cells around (0, 0) never do, so the first click there is always safe
+  ChunkedBoard(long seed, double density) {
+    if (!(density >= 0 && density < 1)) {
+      throw new IllegalArgumentException("Mine density must be at least 0 and below 1");
+    }
+    this.seed = seed;
+    this.minesPerChunk = (int) Math.round(density * Chunk.SIZE * Chunk.SIZE);
+    this.chunks = new HashMap<Long, Chunk>();
+    this.recent = null;
+    this.openSafe = 0;
+    this.numFlags = 0;
+    this.exploded = false;
+  }
+
+  // the number of chunks created so far
+  int chunkCount() {
+    return this.chunks.size();
+  }
+
+  // the chunk holding the cell at the given coordinates, created if need be
+  Chunk chunkAt(int x, int y) {
+    int cx = Math.floorDiv(x, Chunk.SIZE);
+    int cy = Math.floorDiv(y, Chunk.SIZE);
+    if (this.recent != null && this.recent.cx == cx && this.recent.cy == cy) {
+      return this.recent;
+    }
+    long key = Chunk.key(cx, cy);
+    Chunk chunk = this.chunks.get(key);
+    if (chunk == null) {
+      chunk = new Chunk(cx, cy, new Random(Chunk.seed(this.seed, cx, cy)), this.minesPerChunk);
+      this.chunks.put(key, chunk);
+    }
+    this.recent = chunk;
+    return chunk;
+  }
+
+  // the chunk holding the cell at the given coordinates, or null if it has not
+  // been created
+  Chunk existingChunkAt(int x, int y) {
+    int cx = Math.floorDiv(x, Chunk.SIZE);
+    int cy = Math.floorDiv(y, Chunk.SIZE);
+    if (this.recent != null && this.recent.cx == cx && this.recent.cy == cy) {
+      return this.recent;
+    }
+    return this.chunks.get(Chunk.key(cx, cy));
+  }
+
+  // does the cell at the given coordinates contain a mine?
+  boolean hasMine(int x, int y) {
+    return this.chunkAt(x, y).hasMine(Chunk.local(x), Chunk.local(y));
+  }
+
+  // is the cell at the given coordinates open?
+  boolean isOpen(int x, int y) {
+    Chunk chunk = this.existingChunkAt(x, y);
+    return chunk != null && chunk.isOpen(Chunk.local(x), Chunk.local(y));
+  }
+
+  // is the cell at the given coordinates flagged?
+  boolean isFlagged(int x, int y) {
+    Chunk chunk = this.existingChunkAt(x, y);
+    return chunk != null && chunk.isFlagged(Chunk.local(x), Chunk.local(y));
+  }
+
+  // the number of mines adjacent to the cell at the given coordinates
+  int surroundingMines(int x, int y) {
+    int lx = Chunk.local(x);
+    int ly = Chunk.local(y);
+    if (lx > 0 && lx < Chunk.SIZE - 1 && ly > 0 && ly < Chunk.SIZE - 1) {
+      return this.chunkAt(x, y).surroundingMines(lx, ly);
+    }
+    int count = 0;
+    for (int ny = y - 1; ny <= y + 1; ny++) {
+      for (int nx = x - 1; nx <= x + 1; nx++) {
+        if ((nx != x || ny != y) && this.hasMine(nx, ny)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // the number of flags adjacent to the cell at the given coordinates
+  int surroundingFlags(int x, int y) {
+    int count = 0;
+    for (int ny = y - 1; ny <= y + 1; ny++) {
+      for (int nx = x - 1; nx <= x + 1; nx++) {
+        if ((nx != x || ny != y) && this.isFlagged(nx, ny)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // EFFECT: opens the cell at the given coordinates and floods outward from it
+  // like Board.open, up to FLOOD_LIMIT cells; clicking an open cell whose flags
+  // match its count opens its other neighbors
+  // returns the coordinates of every cell opened, as x, y pairs
+  IntList open(int x, int y) {
+    IntList opened = new IntList();
+    if (this.isFlagged(x, y)) {
+      return opened;
+    }
+    if (this.isOpen(x, y)) {
+      if (this.surroundingMines(x, y) == this.surroundingFlags(x, y)) {
+        this.openNeighbors(x, y, opened);
+      }
+    }
+    else {
+      this.reveal(x, y, opened);
+    }
+    // as in Board.open, the opened list doubles as the flood's work queue
+    for (int k = 0; k < opened.size() && opened.size() < 2 * FLOOD_LIMIT; k += 2) {
+      int cx = opened.get(k);
+      int cy = opened.get(k + 1);
+      if (!this.hasMine(cx, cy) && this.surroundingMines(cx, cy) == 0) {
+        this.openNeighbors(cx, cy, opened);
+      }
+    }
+    return opened;
+  }
+
+  // EFFECT: opens every closed, unflagged cell adjacent to the cell at the given
+  // coordinates, adding each to the given list
+  void openNeighbors(int x, int y, IntList opened) {
+    for (int ny = y - 1; ny <= y + 1; ny++) {
+      for (int nx = x - 1; nx <= x + 1; nx++) {
+        if (!this.isFlagged(nx, ny)) {
+          this.reveal(nx, ny, opened);
+        }
+      }
+    }
+  }
+
+  // EFFECT: opens the cell at the given coordinates if it is closed, adding it to
+  // the given list
+  void reveal(int x, int y, IntList opened) {
+    Chunk chunk = this.chunkAt(x, y);
+    int lx = Chunk.local(x);
+    int ly = Chunk.local(y);
+    if (chunk.isOpen(lx, ly)) {
+      return;
+    }
+    chunk.state[ly * Chunk.SIZE + lx] |= Board.OPEN;
+    if (chunk.hasMine(lx, ly)) {
+      this.exploded = true;
+    }
+    else {
+      this.openSafe++;
+    }
+    opened.add(x);
+    opened.add(y);
+  }
+
+  // EFFECT: flags the cell at the given coordinates if it is closed and
+  // unflagged, or unflags it if it is flagged
+  void toggleFlag(int x, int y) {
+    Chunk chunk = this.chunkAt(x, y);
+    int i = Chunk.local(y) * Chunk.SIZE + Chunk.local(x);
+    if ((chunk.state[i] & Board.OPEN) != 0) {
+      return;
+    }
+    chunk.state[i] ^= Board.FLAG;
+    this.numFlags += (chunk.state[i] & Board.FLAG) != 0 ? 1 : -1;
+  }
+
+}
+
+// Represents one square of a ChunkedBoard: which of its cells hold mines, one
+// bit per cell in a long per row, and which are open or flagged, using Board's
+// bits
+class Chunk {
+  static final int SIZE = 64;
+
+  int cx;
+  int cy;
+  long[] mines;
+  byte[] state;
+
+  // places the given number of mines with Floyd's sampling, drawing from rand,
+  // except within one cell of (0, 0)
+  Chunk(int cx, int cy, Random rand, int numMines) {
+    this.cx = cx;
+    this.cy = cy;
+    this.mines = new long[SIZE];
+    this.state = new byte[SIZE * SIZE];
+    int n = SIZE * SIZE;
+    for (int j = n - numMines; j < n; j++) {
+      int t = rand.nextInt(j + 1);
+      this.setMine(this.hasMine(t % SIZE, t / SIZE) ? j : t);
+    }
+    for (int y = -1; y <= 1; y++) {
+      for (int x = -1; x <= 1; x++) {
+        if (Math.floorDiv(x, SIZE) == cx && Math.floorDiv(y, SIZE) == cy) {
+          this.mines[Chunk.local(y)] &= ~(1L << Chunk.local(x));
+        }
+      }
+    }
+  }
+
+  // the key of the chunk with the given chunk coordinates
+  static long key(int cx, int cy) {
+    return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+  }
+
+  // the position of the given board coordinate within its chunk
+  static int local(int coordinate) {
+    return Math.floorMod(coordinate, SIZE);
+  }
+
+  // a seed for the chunk with the given chunk coordinates, mixed from the
+  // board's seed so neighboring chunks are unrelated
+  static long seed(long seed, int cx, int cy) {
+    long z = seed + Chunk.key(cx, cy) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // EFFECT: places a mine in the cell at the given index within this chunk
+  void setMine(int i) {
+    this.mines[i / SIZE] |= 1L << (i % SIZE);
+  }
+
+  // does the cell at the given position within this chunk contain a mine?
+  boolean hasMine(int lx, int ly) {
+    return (this.mines[ly] & (1L << lx)) != 0;
+  }
+
+  // is the cell at the given position within this chunk open?
+  boolean isOpen(int lx, int ly) {
+    return (this.state[ly * SIZE + lx] & Board.OPEN) != 0;
+  }
+
+  // is the cell at the given position within this chunk flagged?
+  boolean isFlagged(int lx, int ly) {
+    return (this.state[ly * SIZE + lx] & Board.FLAG) != 0;
+  }
+
+  // the number of mines adjacent to the cell at the given position, which must
+  // not be on the edge of this chunk
+  int surroundingMines(int lx, int ly) {
+    long around = 7L << (lx - 1);
+    return Long.bitCount(this.mines[ly - 1] & around) + Long.bitCount(this.mines[ly + 1] & around)
+        + Long.bitCount(this.mines[ly] & around & ~(1L << lx));
+  }
+
+  // the number of mines in this chunk
+  int mineCount() {
+    int count = 0;
+    for (long row : this.mines) {
+      count += Long.bitCount(row);
+    }
+    return count;
+  }
+
+}
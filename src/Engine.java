@@ -0,0 +1,743 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*-
+ * The rules of Minesweeper, free of any rendering: an Engine plays a game on a
+ * Grid in cell coordinates, so games can be run and checked without javalib.
+ */
+
+// Represents the state of a game of Minesweeper
+enum GameStatus {
+  PLAYING, WON, LOST
+}
+
+// Represents a game of Minesweeper played in cell coordinates, with no display
+class Engine {
+  int width;
+  int height;
+  int numMines;
+  boolean firstClickSafe;
+  Grid grid;
+  int moves;
+  // the board before each move that changed it, and the mines still to be
+  // placed then, or null if moves are not remembered
+  ArrayList<PagedBoard> history;
+  IntList pendingHistory;
+
+  // if firstClickSafe, mines are placed only once the first cell is opened, and
+  // never on or around it
+  Engine(Random rand, int width, int height, int numMines, boolean firstClickSafe) {
+    this(new Grid(rand, width, height, numMines, firstClickSafe), numMines);
+    this.firstClickSafe = firstClickSafe;
+  }
+
+  // a game whose mines are placed from the given seed
+  Engine(long seed, int width, int height, int numMines, boolean firstClickSafe) {
+    this(new Random(seed), width, height, numMines, firstClickSafe);
+  }
+
+  // a game on the given Grid, which holds the given number of mines
+  Engine(Grid grid, int numMines) {
+    this.width = grid.board.width;
+    this.height = grid.board.height;
+    this.numMines = numMines;
+    this.firstClickSafe = false;
+    this.grid = grid;
+    this.moves = 0;
+    this.history = null;
+    this.pendingHistory = null;
+  }
+
+  // is there a cell at the given coordinates?
+  boolean inBounds(int x, int y) {
+    return this.grid.inBounds(x, y);
+  }
+
+  // is the game won, lost or still being played?
+  GameStatus status() {
+    if (this.grid.gameOver()) {
+      return GameStatus.LOST;
+    }
+    else if (this.grid.win()) {
+      return GameStatus.WON;
+    }
+    return GameStatus.PLAYING;
+  }
+
+  // how many mines have not been flagged
+  int minesLeft() {
+    return this.numMines - this.grid.numFlags();
+  }
+
+  // EFFECT: opens the cell at the given coordinates, chording if its flags match
+  // its mines; returns the indices of the newly opened cells, which is empty if
+  // the move is out of bounds. When moves are remembered, a move that opens
+  // nothing is neither remembered nor counted, so undoing every move counts
+  // back to 0
+  IntList open(int x, int y) {
+    if (!this.inBounds(x, y)) {
+      return new IntList(0);
+    }
+    this.remember();
+    this.moves++;
+    IntList opened = this.grid.openCell(x, y);
+    if (opened.size() == 0 && this.history != null) {
+      this.history.remove(this.history.size() - 1);
+      this.pendingHistory.removeLast();
+      this.moves--;
+    }
+    return opened;
+  }
+
+  // EFFECT: toggles the flag on the cell at the given coordinates; returns the
+  // index of the changed cell, or -1 if the move is out of bounds
+  int toggleFlag(int x, int y) {
+    if (!this.inBounds(x, y)) {
+      return -1;
+    }
+    this.remember();
+    this.moves++;
+    this.grid.toggleFlag(x, y);
+    return this.grid.board.index(x, y);
+  }
+
+  // EFFECT: starts a new game of the same size and mine count on the same
+  // Grid, cleared in place, with mines drawn from the given Random
+  void restart(Random rand) {
+    this.grid.reset(rand, this.numMines, this.firstClickSafe);
+    this.moves = 0;
+    if (this.history != null) {
+      this.keepHistory();
+    }
+  }
+
+  // EFFECT: starts a new game on the given Grid, which has the same size and
+  // mine count
+  void restart(Grid grid) {
+    this.grid = grid;
+    this.moves = 0;
+    if (this.history != null) {
+      this.keepHistory();
+    }
+  }
+
+  // EFFECT: remembers the board before every move from now on, forgetting any
+  // moves remembered so far, so moves can be undone; the board's tiles move into
+  // copy-on-write pages, so remembering a move costs only the pages it changes
+  void keepHistory() {
+    if (!(this.grid.board instanceof PagedBoard)) {
+      this.grid.board = new PagedBoard(this.grid.board);
+    }
+    this.history = new ArrayList<PagedBoard>();
+    this.pendingHistory = new IntList();
+  }
+
+  // EFFECT: remembers the board as it is before a move, if moves are remembered
+  void remember() {
+    if (this.history != null) {
+      this.history.add(((PagedBoard) this.grid.board).snapshot());
+      this.pendingHistory.add(this.grid.pendingMines);
+    }
+  }
+
+  // EFFECT: takes back the last move that changed the board, if moves are
+  // remembered; returns the indices of the tiles it changed back, found by
+  // comparing only the pages the move copied
+  IntList undo() {
+    IntList changed = new IntList();
+    if (this.history == null || this.history.isEmpty()) {
+      return changed;
+    }
+    PagedBoard board = (PagedBoard) this.grid.board;
+    PagedBoard before = this.history.remove(this.history.size() - 1);
+    board.diff(before, changed);
+    board.restore(before);
+    this.grid.pendingMines = this.pendingHistory.removeLast();
+    this.moves--;
+    return changed;
+  }
+
+}
+
+// Represents a grid of cells across which mines are randomly dispersed
+class Grid {
+  Board board;
+  Random rand;
+  int pendingMines;
+
+  Grid(Random rand, int width, int height, int numMines) {
+    this(rand, width, height, numMines, false);
+  }
+
+  // if firstClickSafe, no mines are placed until the first Cell is opened, and
+  // then none are placed on or around that Cell
+  Grid(Random rand, int width, int height, int numMines, boolean firstClickSafe) {
+    this(width, height);
+    this.rand = rand;
+    if (firstClickSafe) {
+      if (numMines > width * height - 1) {
+        throw new IllegalArgumentException(
+            "Cannot place " + numMines + " mines on " + (width * height - 1) + " tiles");
+      }
+      this.pendingMines = numMines;
+    }
+    else {
+      this.placeMines(rand, numMines);
+    }
+  }
+
+  // constructor used only for testing placeMines (creates a grid with no mines)
+  Grid(int width, int height) {
+    this(new Board(width, height), null, 0);
+  }
+
+  // a Grid over the given Board, which places the given number of mines from
+  // rand when its first Cell is opened
+  Grid(Board board, Random rand, int pendingMines) {
+    this.board = board;
+    this.rand = rand;
+    this.pendingMines = pendingMines;
+  }
+
+  // EFFECT: starts this Grid over with mines drawn from rand, placed as the
+  // constructor would place them; the Board is cleared in place, so nothing the
+  // size of the board is allocated
+  void reset(Random rand, int numMines, boolean firstClickSafe) {
+    this.board.clear();
+    this.rand = rand;
+    this.pendingMines = 0;
+    if (firstClickSafe) {
+      this.pendingMines = numMines;
+    }
+    else {
+      this.placeMines(rand, numMines);
+    }
+  }
+
+  // returns a view of the Cell at the given coordinates
+  Cell cellAt(int x, int y) {
+    return new Cell(this.board, this.board.index(x, y));
+  }
+
+  // returns a list of every Cell adjacent (in any of the 8 directions) to the one
+  // at the given coordinates
+  ArrayList<Cell> findNeighbors(int x, int y) {
+    ArrayList<Cell> neighbors = new ArrayList<Cell>();
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        if (!(i == 0 && j == 0) && this.inBounds(x + j, y + i)) {
+          neighbors.add(this.cellAt(x + j, y + i));
+        }
+      }
+    }
+    return neighbors;
+  }
+
+  // is there a Cell at the given coordinates on this Grid?
+  boolean inBounds(int x, int y) {
+    return this.board.inBounds(x, y);
+  }
+
+  // EFFECT: randomly places the given number of mines into Cells on this Grid,
+  // never repeating a Cell
+  void placeMines(Random rand, int numMines) {
+    this.board.placeRandomMines(rand, numMines, -1);
+  }
+
+  // counts the flags in this grid
+  int numFlags() {
+    assert this.board.countersMatchScan() : "board counters out of sync";
+    return this.board.numFlags;
+  }
+
+  // EFFECT: opens the Cell at the given coordinates; returns the indices of the
+  // newly opened cells
+  IntList openCell(int x, int y) {
+    long start = Metrics.start();
+    int i = this.board.index(x, y);
+    if (this.pendingMines > 0) {
+      this.board.placeRandomMines(this.rand, this.pendingMines, i);
+      this.pendingMines = 0;
+    }
+    IntList opened = this.board.open(i, true);
+    Metrics.OPEN_NANOS.observeSince(start);
+    return opened;
+  }
+
+  // EFFECT: toggles the flag on the Cell at the given coordinates
+  void toggleFlag(int x, int y) {
+    this.board.toggleFlag(this.board.index(x, y));
+  }
+
+  // do any of the open Cells in this Grid contain a mine, thus ending the game?
+  boolean gameOver() {
+    assert this.board.countersMatchScan() : "board counters out of sync";
+    return this.board.openMines > 0;
+  }
+
+  // are all non-mine cells open?
+  boolean win() {
+    assert this.board.countersMatchScan() : "board counters out of sync";
+    return this.board.closedSafe == 0;
+  }
+
+  // EFFECT: opens every Cell in this Grid
+  void openAll() {
+    for (int i = 0; i < this.board.size(); i++) {
+      this.board.setOpen(i);
+    }
+  }
+
+}
+
+// Represents the state of every tile on a Minesweeper board, packed one byte per
+// tile and indexed by y * width + x: the low bits hold the precomputed number of
+// adjacent mines, and the high bits mark a mine, an open tile and a flag.
+// Running totals of flags, closed safe tiles and open mines are kept alongside,
+// updated by every mutation, so game state queries never scan the board.
+// Every read and write of a tile goes through cell and setCell, so a MappedBoard
+// can keep the same bytes in a file instead
+class Board {
+  static final int COUNT_MASK = 0x0F;
+  static final int MINE = 0x10;
+  static final int OPEN = 0x20;
+  static final int FLAG = 0x40;
+
+  int width;
+  int height;
+  byte[] cells;
+  int numFlags;
+  int closedSafe;
+  int openMines;
+  // where placeRandomMines chooses mines, kept so a cleared Board places its
+  // next mines without allocating
+  Bitboard placement;
+
+  Board(int width, int height) {
+    this(width, height, new byte[width * height], 0, width * height, 0);
+  }
+
+  // a Board over the given tiles, whose running totals are already known
+  Board(int width, int height, byte[] cells, int numFlags, int closedSafe, int openMines) {
+    this.width = width;
+    this.height = height;
+    this.cells = cells;
+    this.numFlags = numFlags;
+    this.closedSafe = closedSafe;
+    this.openMines = openMines;
+    this.placement = null;
+  }
+
+  // the number of tiles on this Board
+  int size() {
+    return this.width * this.height;
+  }
+
+  // the packed byte of the tile at the given index
+  int cell(int i) {
+    return this.cells[i];
+  }
+
+  // EFFECT: sets the packed byte of the tile at the given index
+  void setCell(int i, int bits) {
+    this.cells[i] = (byte) bits;
+  }
+
+  // EFFECT: closes, unflags and removes the mine from every tile, with one fill
+  // of the tiles on the heap
+  void clear() {
+    if (this.cells != null) {
+      Arrays.fill(this.cells, (byte) 0);
+    }
+    else {
+      for (int i = 0; i < this.size(); i++) {
+        this.setCell(i, 0);
+      }
+    }
+    this.numFlags = 0;
+    this.closedSafe = this.size();
+    this.openMines = 0;
+  }
+
+  // the index of the tile at the given coordinates
+  int index(int x, int y) {
+    return y * this.width + x;
+  }
+
+  // is there a tile at the given coordinates on this Board?
+  boolean inBounds(int x, int y) {
+    return y >= 0 && y < this.height && x >= 0 && x < this.width;
+  }
+
+  // does the tile at the given index contain a mine?
+  boolean hasMine(int i) {
+    return (this.cell(i) & MINE) != 0;
+  }
+
+  // is the tile at the given index open?
+  boolean isOpen(int i) {
+    return (this.cell(i) & OPEN) != 0;
+  }
+
+  // is the tile at the given index flagged?
+  boolean isFlagged(int i) {
+    return (this.cell(i) & FLAG) != 0;
+  }
+
+  // the number of mines adjacent to the tile at the given index
+  int surroundingMines(int i) {
+    return this.cell(i) & COUNT_MASK;
+  }
+
+  // counts the flagged tiles adjacent to the tile at the given index
+  int surroundingFlags(int i) {
+    int x = i % this.width;
+    int y = i / this.width;
+    int num = 0;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.width - 1); nx++) {
+        if ((nx != x || ny != y) && this.isFlagged(this.index(nx, ny))) {
+          num++;
+        }
+      }
+    }
+    return num;
+  }
+
+  // EFFECT: places a mine on the tile at the given index and adds it to the
+  // mine count of each adjacent tile
+  void placeMine(int i) {
+    if (this.hasMine(i)) {
+      return;
+    }
+    this.setCell(i, this.cell(i) | MINE);
+    if (this.isOpen(i)) {
+      this.openMines++;
+    }
+    else {
+      this.closedSafe--;
+    }
+    int x = i % this.width;
+    int y = i / this.width;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.width - 1); nx++) {
+        if (nx != x || ny != y) {
+          int n = this.index(nx, ny);
+          this.setCell(n, this.cell(n) + 1);
+        }
+      }
+    }
+  }
+
+  // EFFECT: places the given number of mines on this mine-free Board, chosen
+  // uniformly at random with Floyd's sampling, so each mine costs exactly one
+  // draw from rand at any density; if safe is an index, no mine is placed on it
+  // or, when enough tiles remain, on its neighbors. A heap board with nothing
+  // open or mined yet has its mines chosen on a cached Bitboard and placed in
+  // index order; any other board, such as a mapped one that may be larger than
+  // the heap, has them placed as they are drawn, and fails rather than placing
+  // a second mine on a tile
+  void placeRandomMines(Random rand, int numMines, int safe) {
+    long start = Metrics.start();
+    int[] excluded = this.safeZone(safe, numMines);
+    int n = this.size() - excluded.length;
+    if (numMines > n) {
+      throw new IllegalArgumentException("Cannot place " + numMines + " mines on " + n + " tiles");
+    }
+    if (this.cells != null && this.closedSafe == this.size()) {
+      this.placeRandomMinesInOrder(rand, numMines, excluded, n);
+    }
+    else {
+      for (int j = n - numMines; j < n; j++) {
+        int t = this.skipping(rand.nextInt(j + 1), excluded);
+        if (this.hasMine(t)) {
+          t = this.skipping(j, excluded);
+          if (this.hasMine(t)) {
+            throw new IllegalStateException(
+                "Cannot place " + numMines + " mines on a board that already holds mines");
+          }
+        }
+        this.placeMine(t);
+      }
+    }
+    Metrics.PLACE_NANOS.observeSince(start);
+  }
+
+  // EFFECT: places the given number of mines on this heap Board, which holds
+  // none, on tiles drawn with Floyd's sampling from the given number of tiles
+  // not in the given sorted list of excluded indices, choosing them all on a
+  // Bitboard first so they are placed in index order
+  void placeRandomMinesInOrder(Random rand, int numMines, int[] excluded, int n) {
+    if (this.placement == null) {
+      this.placement = new Bitboard(this.width, this.height);
+    }
+    Bitboard placed = this.placement;
+    placed.clearMines();
+    for (int j = n - numMines; j < n; j++) {
+      int t = this.skipping(rand.nextInt(j + 1), excluded);
+      if (placed.hasMine(t)) {
+        t = this.skipping(j, excluded);
+      }
+      placed.setMine(t);
+    }
+    placed.placeMinesInOrder(this);
+  }
+
+  // the sorted indices of the tiles to keep free of the given number of mines:
+  // none if safe is negative, otherwise the tile at safe and its neighbors, or
+  // just the tile itself if the rest of the board cannot hold every mine
+  int[] safeZone(int safe, int numMines) {
+    if (safe < 0) {
+      return new int[0];
+    }
+    int x = safe % this.width;
+    int y = safe / this.width;
+    IntList zone = new IntList(9);
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.width - 1); nx++) {
+        zone.add(this.index(nx, ny));
+      }
+    }
+    if (numMines > this.size() - zone.size()) {
+      return new int[] { safe };
+    }
+    return Arrays.copyOf(zone.items, zone.size());
+  }
+
+  // the index of the tile at the given rank among the tiles not in the given
+  // sorted list of excluded indices
+  int skipping(int rank, int[] excluded) {
+    int i = rank;
+    for (int e : excluded) {
+      if (e <= i) {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  // EFFECT: opens the tile at the given index and floods outward through every
+  // tile with no adjacent mines, and, if the tile was clicked and its adjacent
+  // flags match its adjacent mines, also opens its unflagged neighbors;
+  // returns the indices of the tiles that were newly opened, in the order opened
+  IntList open(int i, boolean cellWasClicked) {
+    IntList opened = new IntList();
+    if (this.isOpen(i)) {
+      if (this.surroundingMines(i) == 0) {
+        this.openNeighbors(i, opened);
+      }
+    }
+    else {
+      this.reveal(i, opened);
+    }
+    if (cellWasClicked && this.surroundingMines(i) == this.surroundingFlags(i)) {
+      this.openNeighbors(i, opened);
+    }
+    // the opened list doubles as the flood's work queue, and the open bit marks
+    // tiles already visited, so each tile is expanded at most once
+    for (int k = 0; k < opened.size(); k++) {
+      int c = opened.get(k);
+      if (this.surroundingMines(c) == 0) {
+        this.openNeighbors(c, opened);
+      }
+    }
+    Metrics.OPEN_CELLS.observe(opened.size());
+    return opened;
+  }
+
+  // EFFECT: opens every closed, unflagged tile adjacent to the tile at the given
+  // index, adding each to the given list
+  void openNeighbors(int i, IntList opened) {
+    int x = i % this.width;
+    int y = i / this.width;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.width - 1); nx++) {
+        int n = this.index(nx, ny);
+        if (!this.isFlagged(n)) {
+          this.reveal(n, opened);
+        }
+      }
+    }
+  }
+
+  // EFFECT: opens the tile at the given index if it is closed, adding it to the
+  // given list
+  void reveal(int i, IntList opened) {
+    if (!this.isOpen(i)) {
+      this.setOpen(i);
+      opened.add(i);
+    }
+  }
+
+  // EFFECT: marks the tile at the given index as open
+  void setOpen(int i) {
+    if (this.isOpen(i)) {
+      return;
+    }
+    this.setCell(i, this.cell(i) | OPEN);
+    if (this.hasMine(i)) {
+      this.openMines++;
+    }
+    else {
+      this.closedSafe--;
+    }
+  }
+
+  // EFFECT: flags the tile at the given index if it is unflagged, removes the
+  // flag if it is flagged
+  void toggleFlag(int i) {
+    this.setCell(i, this.cell(i) ^ FLAG);
+    this.numFlags += this.isFlagged(i) ? 1 : -1;
+  }
+
+  // do the running totals of flags, closed safe tiles and open mines agree with
+  // a full recount of this Board, and does every tile's count agree with the
+  // mines around it?
+  boolean countersMatchScan() {
+    Bitboard planes = new Bitboard(this);
+    return planes.numFlags() == this.numFlags && planes.closedSafe() == this.closedSafe
+        && planes.openMines() == this.openMines && planes.countsMatchMines();
+  }
+
+}
+
+// Represents a tile in Minesweeper, which may or may not be open, flagged, or
+// containing a mine, as a view onto its slot in a Board
+class Cell {
+  Board board;
+  int index;
+
+  Cell(Board board, int index) {
+    this.board = board;
+    this.index = index;
+  }
+
+  // a lone Cell with no neighbors, on a Board of its own
+  Cell(boolean hasMine) {
+    this(new Board(1, 1), 0);
+    if (hasMine) {
+      this.placeMine();
+    }
+  }
+
+  // does this cell contain a mine?
+  boolean hasMine() {
+    return this.board.hasMine(this.index);
+  }
+
+  // is this cell open?
+  boolean isOpen() {
+    return this.board.isOpen(this.index);
+  }
+
+  // is this cell flagged?
+  boolean isFlagged() {
+    return this.board.isFlagged(this.index);
+  }
+
+  // returns a list of every Cell adjacent to this one
+  ArrayList<Cell> neighbors() {
+    ArrayList<Cell> neighbors = new ArrayList<Cell>();
+    int x = this.index % this.board.width;
+    int y = this.index / this.board.width;
+    for (int i = -1; i < 2; i++) {
+      for (int j = -1; j < 2; j++) {
+        if (!(i == 0 && j == 0) && this.board.inBounds(x + j, y + i)) {
+          neighbors.add(new Cell(this.board, this.board.index(x + j, y + i)));
+        }
+      }
+    }
+    return neighbors;
+  }
+
+  // finds the number of mines adjacent to this Cell
+  int surroundingMines() {
+    return this.board.surroundingMines(this.index);
+  }
+
+  // finds the number of flagged Cells adjacent to this Cell
+  int surroundingFlags() {
+    return this.board.surroundingFlags(this.index);
+  }
+
+  // EFFECT: this cell now contains a mine
+  void placeMine() {
+    this.board.placeMine(this.index);
+  }
+
+  // EFFECT: opens this cell, and any neighbors if its surrounding mine count is
+  // equal to 0 or its surrounding flags; returns the indices of the newly opened cells
+  IntList open(boolean cellWasClicked) {
+    return this.board.open(this.index, cellWasClicked);
+  }
+
+  // should this cell cause the game to end
+  // because it is open and containing a mine?
+  boolean gameOver() {
+    return this.isOpen() && this.hasMine();
+  }
+
+  // EFFECT: flags this cell if it is unflagged, removes the flag if it is flagged
+  void toggleFlag() {
+    this.board.toggleFlag(this.index);
+  }
+
+}
+
+// Represents a growable list of ints, stored without boxing
+class IntList {
+  int[] items;
+  int size;
+
+  IntList(int capacity) {
+    this.items = new int[Math.max(capacity, 1)];
+    this.size = 0;
+  }
+
+  IntList() {
+    this(16);
+  }
+
+  // the number of ints in this list
+  int size() {
+    return this.size;
+  }
+
+  // the int at the given position in this list
+  int get(int k) {
+    if (k >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + k + " out of bounds for size " + this.size);
+    }
+    return this.items[k];
+  }
+
+  // EFFECT: adds the given int to the end of this list
+  void add(int n) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.items.length * 2);
+    }
+    this.items[this.size] = n;
+    this.size++;
+  }
+
+  // EFFECT: removes the last int from this list and returns it
+  int removeLast() {
+    if (this.size == 0) {
+      throw new IndexOutOfBoundsException("Cannot remove from an empty list");
+    }
+    this.size--;
+    return this.items[this.size];
+  }
+
+  // EFFECT: removes every int from this list
+  void clear() {
+    this.size = 0;
+  }
+
+  // the ints in this list, in order, as an array of exactly its size
+  int[] toArray() {
+    return Arrays.copyOf(this.items, this.size);
+  }
+
+}
@@ -0,0 +1,260 @@
+// Keeps what can be deduced about a Grid's closed tiles from its open counts
+// alone, up to date as moves change it: the tiles known to be safe and known to
+// hold mines, by the single-cell rule (a count whose known mines are all found,
+// or whose unknown tiles must all be mines) and the subset rule (two counts
+// within two tiles of each other whose unknown tiles nest). Only the counts
+// within two tiles of a changed tile are derived again, and each deduction
+// queues only the counts beside it, so an update costs time proportional to
+// the tiles changed and the tiles deduced, never to the board's area. Flags are
+// the player's own guesses and may be wrong, so they are never deduced from;
+// they only hide a tile from the hints until it is unflagged. Known tiles wait
+// on a stack for each kind, from which stale entries are dropped when a hint is
+// asked for, so a hint costs amortized constant time
+class HintEngine {
+  Grid grid;
+  Board board;
+  long[] safe;
+  long[] mines;
+  long[] queued;
+  IntList pending;
+  IntList safeHints;
+  IntList mineHints;
+
+  // a HintEngine knowing everything the open counts of the given Grid show
+  HintEngine(Grid grid) {
+    this.show(grid);
+  }
+
+  // EFFECT: keeps hints for the given Grid from now on, forgetting everything
+  // known and deducing again from every open count, as after a restart
+  void show(Grid grid) {
+    this.grid = grid;
+    this.board = grid.board;
+    int words = (this.board.size() + 63) / 64;
+    this.safe = new long[words];
+    this.mines = new long[words];
+    this.queued = new long[words];
+    this.pending = new IntList();
+    this.safeHints = new IntList();
+    this.mineHints = new IntList();
+    for (int i = 0; i < this.board.size(); i++) {
+      if (this.board.isOpen(i)) {
+        this.queue(i);
+      }
+    }
+    this.propagate();
+  }
+
+  // EFFECT: derives again what the counts near the tiles in the given list tell,
+  // as changed by a move or by undoing one. A move only opens tiles; a closed
+  // tile in the list was closed again by an undo, which may take back counts
+  // that deductions rest on, so everything is then deduced again from scratch,
+  // undo being rare
+  void changed(IntList tiles) {
+    for (int k = 0; k < tiles.size(); k++) {
+      if (!this.board.isOpen(tiles.get(k))) {
+        this.show(this.grid);
+        return;
+      }
+    }
+    for (int k = 0; k < tiles.size(); k++) {
+      this.queueAround(tiles.get(k), 2);
+    }
+    this.propagate();
+  }
+
+  // EFFECT: offers the tile at the given index, whose flag was toggled, as a
+  // hint again if it is known and now unflagged; does nothing for -1
+  void changed(int i) {
+    if (i >= 0 && !this.board.isOpen(i) && !this.board.isFlagged(i)) {
+      if (HintEngine.has(this.safe, i)) {
+        this.safeHints.add(i);
+      }
+      else if (HintEngine.has(this.mines, i)) {
+        this.mineHints.add(i);
+      }
+    }
+  }
+
+  // the index of a closed, unflagged tile known to be safe, or -1 if none is
+  // known
+  // EFFECT: drops the hints that have since been opened or flagged
+  int safeHint() {
+    return this.hint(this.safeHints);
+  }
+
+  // the index of a closed, unflagged tile known to hold a mine, or -1 if none
+  // is known
+  // EFFECT: drops the hints that have since been flagged
+  int mineHint() {
+    return this.hint(this.mineHints);
+  }
+
+  // the index of the last closed, unflagged tile on the given stack, or -1 if
+  // there is none
+  // EFFECT: pops the open and flagged tiles above it
+  int hint(IntList hints) {
+    while (hints.size() > 0) {
+      int i = hints.get(hints.size() - 1);
+      if (!this.board.isOpen(i) && !this.board.isFlagged(i)) {
+        return i;
+      }
+      hints.removeLast();
+    }
+    return -1;
+  }
+
+  // is the tile at the given index known to be safe?
+  boolean knownSafe(int i) {
+    return HintEngine.has(this.safe, i);
+  }
+
+  // is the tile at the given index known to hold a mine?
+  boolean knownMine(int i) {
+    return HintEngine.has(this.mines, i);
+  }
+
+  // is the bit for the given index set in the given bitset?
+  static boolean has(long[] bits, int i) {
+    return (bits[i >> 6] & (1L << i)) != 0;
+  }
+
+  // EFFECT: applies the single-cell and subset rules to every queued count, and
+  // to every count next to a tile they decide, until none is left
+  void propagate() {
+    while (this.pending.size() > 0) {
+      int c = this.pending.removeLast();
+      this.queued[c >> 6] &= ~(1L << c);
+      this.evaluate(c);
+    }
+  }
+
+  // EFFECT: decides whatever the count on the tile at the given index tells,
+  // alone or together with a count within two tiles of it. Unknown tiles are
+  // kept as bits of a 7x7 window centered on the count, which holds every
+  // tile around a count within two of it, so the subset rule is a few mask
+  // operations per pair
+  void evaluate(int c) {
+    if (!this.board.isOpen(c) || this.board.hasMine(c)) {
+      return;
+    }
+    int x = c % this.board.width;
+    int y = c / this.board.width;
+    long unknownC = this.unknownMask(x, y, x - 3, y - 3);
+    if (unknownC == 0) {
+      return;
+    }
+    int left = this.minesLeftAround(x, y);
+    if (left == 0 || left == Long.bitCount(unknownC)) {
+      this.decide(unknownC, x - 3, y - 3, left > 0);
+      return;
+    }
+    for (int ny = Math.max(y - 2, 0); ny <= Math.min(y + 2, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 2, 0); nx <= Math.min(x + 2, this.board.width - 1); nx++) {
+        int b = this.board.index(nx, ny);
+        if (b == c || !this.board.isOpen(b) || this.board.hasMine(b)) {
+          continue;
+        }
+        long unknownB = this.unknownMask(nx, ny, x - 3, y - 3);
+        int leftB = this.minesLeftAround(nx, ny);
+        if (this.decideDifference(unknownB, unknownC, leftB - left, x - 3, y - 3)
+            || this.decideDifference(unknownC, unknownB, left - leftB, x - 3, y - 3)) {
+          this.queue(c);
+          return;
+        }
+      }
+    }
+  }
+
+  // the closed tiles around the given column and row that are not yet known to
+  // be safe or mines, as bits of the 7x7 window whose top left corner is at the
+  // given column and row
+  long unknownMask(int x, int y, int left, int top) {
+    long mask = 0;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        int n = this.board.index(nx, ny);
+        if (!this.board.isOpen(n) && !HintEngine.has(this.safe, n)
+            && !HintEngine.has(this.mines, n)) {
+          mask |= 1L << ((ny - top) * 7 + nx - left);
+        }
+      }
+    }
+    return mask;
+  }
+
+  // the number of mines around the open tile at the given column and row that
+  // are not yet known
+  int minesLeftAround(int x, int y) {
+    int left = this.board.surroundingMines(this.board.index(x, y));
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        if (HintEngine.has(this.mines, this.board.index(nx, ny))) {
+          left--;
+        }
+      }
+    }
+    return left;
+  }
+
+  // EFFECT: given that the tiles in outer but not inner hold the given number of
+  // mines, decides them as safe if that is none or as mines if that is all of
+  // them; returns whether it did either
+  boolean decideDifference(long outer, long inner, int mines, int left, int top) {
+    long extra = outer & ~inner;
+    if ((inner & ~outer) != 0 || extra == 0) {
+      return false;
+    }
+    if (mines == 0 || mines == Long.bitCount(extra)) {
+      this.decide(extra, left, top, mines > 0);
+      return true;
+    }
+    return false;
+  }
+
+  // EFFECT: marks every tile in the given mask of the 7x7 window whose top left
+  // corner is at the given column and row as a mine or as safe, offering it as a
+  // hint and queueing the counts beside it
+  void decide(long mask, int left, int top, boolean mine) {
+    while (mask != 0) {
+      int bit = Long.numberOfTrailingZeros(mask);
+      int i = this.board.index(left + bit % 7, top + bit / 7);
+      if (mine) {
+        this.mines[i >> 6] |= 1L << i;
+        this.mineHints.add(i);
+      }
+      else {
+        this.safe[i >> 6] |= 1L << i;
+        this.safeHints.add(i);
+      }
+      this.queueAround(i, 1);
+      mask &= mask - 1;
+    }
+  }
+
+  // EFFECT: queues every open tile within the given distance of the tile at the
+  // given index, skipping any already waiting
+  void queueAround(int i, int distance) {
+    int x = i % this.board.width;
+    int y = i / this.board.width;
+    int bottom = Math.min(y + distance, this.board.height - 1);
+    int right = Math.min(x + distance, this.board.width - 1);
+    for (int ny = Math.max(y - distance, 0); ny <= bottom; ny++) {
+      for (int nx = Math.max(x - distance, 0); nx <= right; nx++) {
+        int n = this.board.index(nx, ny);
+        if (this.board.isOpen(n)) {
+          this.queue(n);
+        }
+      }
+    }
+  }
+
+  // EFFECT: queues the tile at the given index unless it is already waiting
+  void queue(int i) {
+    if (!HintEngine.has(this.queued, i)) {
+      this.queued[i >> 6] |= 1L << i;
+      this.pending.add(i);
+    }
+  }
+
+}
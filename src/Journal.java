@@ -0,0 +1,210 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/*-
+ * A game journal is a header followed by one record per move:
+ *
+ *   header  int MAGIC, "MSWJ"; byte VERSION; varint width, height, mines;
+ *           byte 1 if the first click is safe, else 0; long seed
+ *   record  varint cell index * 4 + action; varint ticks since the last record;
+ *           and, for a restart, the long seed of the new game
+ *
+ * Varints are unsigned and hold 7 bits per byte, low bits first, with the high
+ * bit set on every byte but the last, so most records take two or three bytes;
+ * a key is written as a long, so it holds every cell index of any board. Replaying a
+ * journal builds every Grid from its seed, so no board is ever stored.
+ */
+
+// Appends the moves of a game, and of every game restarted from it, to a
+// stream as they happen, flushing once per move
+class MoveJournal {
+  static final int MAGIC = 0x4D53574A;
+  static final int VERSION = 1;
+  static final int OPEN = 0;
+  static final int FLAG = 1;
+  static final int RESTART = 2;
+
+  DataOutputStream out;
+  int lastTick;
+
+  // writes the header of a journal for a game on the given Engine, whose mines
+  // are drawn from the given seed
+  MoveJournal(OutputStream out, Engine engine, long seed) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.lastTick = 0;
+    try {
+      this.out.writeInt(MAGIC);
+      this.out.writeByte(VERSION);
+      MoveJournal.writeVarint(this.out, engine.width);
+      MoveJournal.writeVarint(this.out, engine.height);
+      MoveJournal.writeVarint(this.out, engine.numMines);
+      this.out.writeByte(engine.firstClickSafe ? 1 : 0);
+      this.out.writeLong(seed);
+      this.out.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // EFFECT: writes the given long, taken as unsigned, to the given stream as a
+  // varint
+  static void writeVarint(OutputStream out, long n) throws IOException {
+    while ((n & ~0x7FL) != 0) {
+      out.write((int) (n & 0x7F) | 0x80);
+      n >>>= 7;
+    }
+    out.write((int) n);
+  }
+
+  // reads an unsigned varint from the given stream, which must hold all of it
+  // since it is in the given part of the journal
+  static long readVarint(InputStream in, String part) throws IOException {
+    long n = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Journal ends inside " + part);
+      }
+      n |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return n;
+      }
+    }
+    throw new IOException("Varint longer than 10 bytes");
+  }
+
+  // EFFECT: records that the cell at the given index was opened on the given tick
+  void open(int index, int tick) {
+    this.record(index * 4L + OPEN, tick);
+  }
+
+  // EFFECT: records that the flag on the cell at the given index was toggled on
+  // the given tick
+  void flag(int index, int tick) {
+    this.record(index * 4L + FLAG, tick);
+  }
+
+  // EFFECT: records that a new game was started on the given tick of the last,
+  // with mines drawn from the given seed; ticks restart from 0
+  void restart(long seed, int tick) {
+    this.record(RESTART, tick);
+    try {
+      this.out.writeLong(seed);
+      this.out.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.lastTick = 0;
+  }
+
+  // EFFECT: writes one record with the given key and the ticks since the last
+  void record(long key, int tick) {
+    try {
+      MoveJournal.writeVarint(this.out, key);
+      MoveJournal.writeVarint(this.out, (tick - this.lastTick) & 0xFFFFFFFFL);
+      this.out.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.lastTick = tick;
+  }
+
+}
+
+// Replays a journal written by a MoveJournal one move at a time, streaming it
+// rather than reading it whole, onto an Engine rebuilt from the journal's seeds
+class JournalReplayer {
+  DataInputStream in;
+  Engine engine;
+  int moves;
+  int tick;
+
+  // reads the journal's header and starts its first game
+  JournalReplayer(InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    if (this.in.readInt() != MoveJournal.MAGIC) {
+      throw new IOException("Not a move journal");
+    }
+    int version = this.in.readByte();
+    if (version != MoveJournal.VERSION) {
+      throw new IOException("Unsupported move journal version " + version);
+    }
+    int width = JournalReplayer.readField(this.in, "its header");
+    int height = JournalReplayer.readField(this.in, "its header");
+    int numMines = JournalReplayer.readField(this.in, "its header");
+    boolean firstClickSafe = this.in.readByte() == 1;
+    this.engine = new Engine(this.in.readLong(), width, height, numMines, firstClickSafe);
+    this.moves = 0;
+    this.tick = 0;
+  }
+
+  // reads a varint holding an int, which must be present in the given part of
+  // the journal
+  static int readField(InputStream in, String part) throws IOException {
+    long n = MoveJournal.readVarint(in, part);
+    if (n > 0xFFFFFFFFL) {
+      throw new IOException("Journal holds too large a number inside " + part);
+    }
+    return (int) n;
+  }
+
+  // is the journal at its end, between records?
+  boolean atEnd() throws IOException {
+    this.in.mark(1);
+    boolean end = this.in.read() < 0;
+    this.in.reset();
+    return end;
+  }
+
+  // EFFECT: replays the next move onto the Engine; returns whether there was one
+  boolean step() throws IOException {
+    if (this.atEnd()) {
+      return false;
+    }
+    long key = MoveJournal.readVarint(this.in, "a record");
+    this.tick += JournalReplayer.readField(this.in, "a record");
+    long index = key >>> 2;
+    if (index >= (long) this.engine.width * this.engine.height) {
+      throw new IOException("Journal names cell " + index + ", which is not on the board");
+    }
+    int x = (int) (index % this.engine.width);
+    int y = (int) (index / this.engine.width);
+    switch ((int) key & 3) {
+      case MoveJournal.OPEN:
+        this.engine.open(x, y);
+        break;
+      case MoveJournal.FLAG:
+        this.engine.toggleFlag(x, y);
+        break;
+      case MoveJournal.RESTART:
+        this.engine.restart(new Random(this.in.readLong()));
+        this.tick = 0;
+        break;
+      default:
+        throw new IOException("Unknown journal action " + (key & 3));
+    }
+    this.moves++;
+    return true;
+  }
+
+  // EFFECT: replays moves until the given number have been replayed or the
+  // journal ends; returns how many have been replayed
+  int replayTo(int move) throws IOException {
+    while (this.moves < move && this.step()) {
+      // each step replays one move
+    }
+    return this.moves;
+  }
+
+}
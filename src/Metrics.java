@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*-
+ * Built-in metrics for the hot paths of the game, off unless the JVM is started
+ * with -Dminesweeper.metrics=true:
+ *
+ *   grid.openCell.nanos          time to open a cell, flood and chord included
+ *   board.open.cells             cells revealed by one open
+ *   board.placeMines.nanos       time to place a board's mines
+ *   renderer.draw.nanos          time to bring the board's layer up to date
+ *   game.makeScene.nanos         time to draw a frame
+ *   game.makeScene.bytes         bytes allocated while drawing a frame
+ *
+ * Every value is kept in a Histogram in the Metrics registry, and is also
+ * committed as a MetricEvent, so a flight recording of the game shows it. With
+ * -Dminesweeper.metrics.file=path, the registry's report is written to that
+ * file when the JVM exits. When metrics are off, each instrumented call costs
+ * one read of a static field.
+ */
+
+// Represents a histogram of non-negative long values in the style of
+// HdrHistogram: values below 2 * SUB_BUCKETS have a bucket each, and above that
+// every power of two is split into SUB_BUCKETS equal buckets, so any recorded
+// value is known to within 1 part in SUB_BUCKETS while the whole range of long
+// takes a few thousand counters; safe to record into from any thread
+class Histogram {
+  static final int SUB_BITS = 6;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  String name;
+  AtomicLongArray counts;
+  AtomicLong total;
+  AtomicLong sum;
+  AtomicLong max;
+
+  Histogram(String name) {
+    this.name = name;
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new AtomicLong();
+    this.sum = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  // the bucket holding the given non-negative value
+  static int bucket(long value) {
+    int shift = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKETS) - SUB_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  // the smallest value held by the given bucket
+  static long lowest(int bucket) {
+    int shift = Math.max(bucket / SUB_BUCKETS - 1, 0);
+    return (long) (bucket - shift * SUB_BUCKETS) << shift;
+  }
+
+  // the largest value held by the given bucket
+  static long highest(int bucket) {
+    return bucket == BUCKETS - 1 ? Long.MAX_VALUE : Histogram.lowest(bucket + 1) - 1;
+  }
+
+  // EFFECT: counts the given value, treating a negative one as 0
+  void record(long value) {
+    long v = Math.max(value, 0);
+    this.counts.incrementAndGet(Histogram.bucket(v));
+    this.total.incrementAndGet();
+    this.sum.addAndGet(v);
+    long seen = this.max.get();
+    while (v > seen && !this.max.compareAndSet(seen, v)) {
+      seen = this.max.get();
+    }
+  }
+
+  // EFFECT: counts the given value if metrics are on, and commits it as a
+  // MetricEvent
+  void observe(long value) {
+    if (Metrics.enabled) {
+      this.record(value);
+      MetricEvent event = new MetricEvent();
+      if (event.shouldCommit()) {
+        event.metric = this.name;
+        event.value = value;
+        event.commit();
+      }
+    }
+  }
+
+  // EFFECT: counts the nanoseconds since the given time from Metrics.start, if
+  // metrics were on then and still are
+  void observeSince(long start) {
+    if (Metrics.enabled && start != 0) {
+      this.observe(System.nanoTime() - start);
+    }
+  }
+
+  // the number of values counted
+  long count() {
+    return this.total.get();
+  }
+
+  // the mean of the values counted
+  double mean() {
+    long n = this.total.get();
+    return n == 0 ? 0 : (double) this.sum.get() / n;
+  }
+
+  // the largest value counted in the bucket below which the given percentage of
+  // values fall, or 0 if none have been counted
+  long percentile(double percent) {
+    long n = this.total.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(percent / 100 * n), 1);
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += this.counts.get(b);
+      if (seen >= rank) {
+        return Math.min(Histogram.highest(b), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+  // EFFECT: forgets every value counted
+  void reset() {
+    for (int b = 0; b < BUCKETS; b++) {
+      this.counts.set(b, 0);
+    }
+    this.total.set(0);
+    this.sum.set(0);
+    this.max.set(0);
+  }
+
+  // one line summarizing this histogram
+  String summary() {
+    return this.name + " count=" + this.count() + " mean=" + String.format("%.1f", this.mean())
+        + " p50=" + this.percentile(50) + " p90=" + this.percentile(90) + " p99="
+        + this.percentile(99) + " max=" + this.max.get();
+  }
+
+}
+
+// One value recorded by a Histogram, as seen by a flight recording
+@Name("minesweeper.Metric")
+@Label("Minesweeper Metric")
+@Category("Minesweeper")
+@Description("A latency, size or allocation measured in the game")
+class MetricEvent extends Event {
+  @Label("Metric")
+  String metric;
+
+  @Label("Value")
+  long value;
+}
+
+// The registry of every Histogram, by name, and whether they are recording
+class Metrics {
+  static final ConcurrentHashMap<String, Histogram> REGISTRY =
+      new ConcurrentHashMap<String, Histogram>();
+
+  static boolean enabled = Boolean.getBoolean("minesweeper.metrics");
+
+  static final Histogram OPEN_NANOS = Metrics.histogram("grid.openCell.nanos");
+  static final Histogram OPEN_CELLS = Metrics.histogram("board.open.cells");
+  static final Histogram PLACE_NANOS = Metrics.histogram("board.placeMines.nanos");
+  static final Histogram DRAW_NANOS = Metrics.histogram("renderer.draw.nanos");
+  static final Histogram FRAME_NANOS = Metrics.histogram("game.makeScene.nanos");
+  static final Histogram FRAME_BYTES = Metrics.histogram("game.makeScene.bytes");
+
+  static {
+    String file = System.getProperty("minesweeper.metrics.file");
+    if (file != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(new MetricsDump(Paths.get(file))));
+    }
+  }
+
+  // the Histogram with the given name, registered if it is new
+  static Histogram histogram(String name) {
+    Histogram histogram = REGISTRY.get(name);
+    if (histogram == null) {
+      REGISTRY.putIfAbsent(name, new Histogram(name));
+      histogram = REGISTRY.get(name);
+    }
+    return histogram;
+  }
+
+  // the time to pass to Histogram.observeSince, or 0 if metrics are off
+  static long start() {
+    return Metrics.enabled ? System.nanoTime() : 0;
+  }
+
+  // the bytes allocated so far by this thread if metrics are on and the JVM
+  // counts them, otherwise -1
+  static long allocatedBytes() {
+    if (Metrics.enabled
+        && ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  // EFFECT: counts the bytes this thread has allocated since the given count
+  // from allocatedBytes, if it was counted
+  static void observeAllocatedSince(Histogram histogram, long before) {
+    if (before >= 0) {
+      long after = Metrics.allocatedBytes();
+      if (after >= 0) {
+        histogram.observe(after - before);
+      }
+    }
+  }
+
+  // a summary of every registered Histogram, one per line, sorted by name
+  static String report() {
+    ArrayList<String> names = new ArrayList<String>(REGISTRY.keySet());
+    Collections.sort(names);
+    StringBuilder out = new StringBuilder();
+    for (String name : names) {
+      out.append(REGISTRY.get(name).summary()).append("\n");
+    }
+    return out.toString();
+  }
+
+  // EFFECT: writes the report to the file at the given path
+  static void dump(Path path) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path,
+        StandardCharsets.UTF_8))) {
+      out.print(Metrics.report());
+    }
+  }
+
+  // EFFECT: forgets every value counted by every registered Histogram
+  static void reset() {
+    for (Histogram histogram : REGISTRY.values()) {
+      histogram.reset();
+    }
+  }
+
+}
+
+// Writes the Metrics report to a file, as the JVM exits
+class MetricsDump implements Runnable {
+  Path path;
+
+  MetricsDump(Path path) {
+    this.path = path;
+  }
+
+  public void run() {
+    try {
+      Metrics.dump(this.path);
+    }
+    catch (IOException e) {
+      System.err.println("Could not write metrics to " + this.path + ": " + e.getMessage());
+    }
+  }
+
+}
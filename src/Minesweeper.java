@@ -1,8 +1,29 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import javalib.worldimages.*;
 
 /*-
@@ -17,55 +38,142 @@ import javalib.worldimages.*;
  */
 
 
-// Represents a game of Minesweeper
+// Represents a game of Minesweeper, displaying an Engine and passing it the
+// player's clicks
 class Game extends World {
-  Random rand;
-  int numMines;
-  int width;
-  int height;
-  Grid grid;
+  Engine engine;
+  BoardRenderer renderer;
+  MoveJournal journal;
+  BoardPool pool;
+  GridPrefetcher prefetcher;
   int tickNum;
+  CounterText minesLeft;
+  CounterText time;
+  WorldScene frame;
+  int frameTick;
+  Camera camera;
+  Posn dragFrom;
+  // the seed of the current game's mines, or GameResult.NO_SEED
+  long seed;
+  ScoreStore scores;
+  HintEngine hints;
+
+  Game(Engine engine) {
+    this.engine = engine;
+    this.renderer = new BoardRenderer(this.engine.grid.board);
+    this.journal = null;
+    this.pool = null;
+    this.prefetcher = null;
+    this.tickNum = 0;
+    this.minesLeft = new CounterText("Mines left: ");
+    this.time = new CounterText("Time: ");
+    this.frame = null;
+    this.frameTick = 0;
+    this.camera = null;
+    this.dragFrom = null;
+    this.seed = GameResult.NO_SEED;
+    this.scores = null;
+    this.hints = null;
+  }
+
+  // a game on boards that need no guessing, taken from the given pool both now
+  // and on every restart; each starts with its middle cell open
+  Game(BoardPool pool) {
+    this(new Engine(pool.take(), pool.generator.numMines));
+    this.pool = pool;
+  }
+
+  // a first-click-safe game whose mines are drawn from the given seed, with every
+  // move, and every game restarted from it, appended to the given journal stream
+  Game(long seed, int numMines, int width, int height, OutputStream journal) {
+    this(seed, numMines, width, height);
+    this.journal = new MoveJournal(journal, this.engine, seed);
+  }
+
+  // a first-click-safe game whose mines are drawn from the given seed
+  Game(long seed, int numMines, int width, int height) {
+    this(new Engine(seed, width, height, numMines, true));
+    this.seed = seed;
+  }
+
+  // if firstClickSafe, mines are placed only once the first cell is opened, and
+  // never on or around it
+  Game(Random rand, int numMines, int width, int height, boolean firstClickSafe) {
+    this(new Engine(rand, width, height, numMines, firstClickSafe));
+  }
 
   Game(Random rand, int numMines, int width, int height) {
-    this.rand = rand;
-    this.numMines = numMines;
-    this.width = width;
-    this.height = height;
-    this.grid = new Grid(this.rand, this.width, this.height, this.numMines);
-    this.tickNum = 0;
+    this(rand, numMines, width, height, false);
   }
 
   Game(int numMines, int width, int height) {
-    this(new Random(), numMines, width, height);
+    this(new Random().nextLong(), numMines, width, height);
   }
 
-  // draws the game of Minesweeper to be displayed on every tick
+  // draws the game of Minesweeper to be displayed on every tick: the last frame
+  // again if nothing has changed since, otherwise a new frame showing the board's
+  // layer, whose tiles are repainted only if a move changed them
   public WorldScene makeScene() {
-    WorldScene scene = this.grid.draw();
-    scene.placeImageXY(
-        new TextImage("Mines left: " + (this.numMines - this.grid.numFlags()), 24, Color.BLACK),
-        this.width * 30 / 4, this.height * 30 + 30);
-    scene.placeImageXY(new TextImage("Time: " + this.tickNum, 24, Color.BLACK),
-        this.width * 30 / 4 * 3, this.height * 30 + 30);
-    return scene;
+    long start = Metrics.start();
+    long allocated = Metrics.allocatedBytes();
+    if (this.frame == null || this.frameTick != this.tickNum || this.renderer.stale()) {
+      this.frame = this.renderer.draw();
+      this.frameTick = this.tickNum;
+      this.placeCounters(this.frame);
+    }
+    Metrics.FRAME_NANOS.observeSince(start);
+    Metrics.observeAllocatedSince(Metrics.FRAME_BYTES, allocated);
+    return this.frame;
+  }
+
+  // EFFECT: places the mines left and time counters below the board on the
+  // given scene
+  void placeCounters(WorldScene scene) {
+    scene.placeImageXY(this.minesLeft.show(this.engine.minesLeft()), this.boardWidth() / 4,
+        this.boardHeight() + 30);
+    scene.placeImageXY(this.time.show(this.tickNum), this.boardWidth() / 4 * 3,
+        this.boardHeight() + 30);
+  }
+
+  // the width in pixels of the part of the window showing the board
+  int boardWidth() {
+    if (this.camera != null) {
+      return this.camera.width;
+    }
+    return this.engine.width * 30;
+  }
+
+  // the height in pixels of the part of the window showing the board
+  int boardHeight() {
+    if (this.camera != null) {
+      return this.camera.height;
+    }
+    return this.engine.height * 30;
+  }
+
+  // EFFECT: shows the board through a window of the given size in pixels from
+  // now on, drawing only the tiles in view; the arrow keys and dragging with the
+  // middle button pan it, and "=" and "-" zoom in and out. The game is then
+  // played with bigBang(width, height + 60, 1.0)
+  void useViewport(int width, int height) {
+    this.camera = new Camera(width, height, this.engine.width, this.engine.height);
+    this.renderer.look(this.camera);
   }
 
   // returns the game over display, which reveals all mines
   // and notifies the player of their loss
   // EFFECT: opens all cells
   public WorldScene lastScene(String msg) {
-    this.grid.openAll();
-    WorldScene scene = this.grid.draw();
+    this.engine.grid.openAll();
+    this.renderer.invalidate();
     Color color = Color.RED;
     if (msg.equals("YOU WIN!")) {
       color = Color.BLUE;
     }
-    scene.placeImageXY(new TextImage(msg, 48, color), scene.width / 2, scene.height / 2);
-    scene.placeImageXY(
-        new TextImage("Mines left: " + (this.numMines - this.grid.numFlags()), 24, Color.BLACK),
-        scene.width / 4, scene.height + 30);
-    scene.placeImageXY(new TextImage("Time: " + this.tickNum, 24, Color.BLACK), scene.width / 4 * 3,
-        scene.height + 30);
+    WorldScene scene = this.renderer.draw();
+    scene.placeImageXY(new TextImage(msg, 48, color), this.boardWidth() / 2,
+        this.boardHeight() / 2);
+    this.placeCounters(scene);
     return scene;
   }
 
@@ -77,273 +185,486 @@ class Game extends World {
   // EFFECT: handles mouse clicks to open or flag cells,
   // and informs the player of a win or loss if necessary
   public void onMouseClicked(Posn p, String button) {
-    if (p.x > 0 && p.x < this.width * 30 && p.y > 0 && p.y < this.height * 30) {
-      if (button.equals("LeftButton")) {
-        this.grid.openCell(p);
+    Posn tile = this.tileAt(p);
+    if (tile != null) {
+      this.play(tile.x, tile.y, button);
+    }
+  }
+
+  // EFFECT: opens the cell at the given column and row for the left button, or
+  // toggles its flag for the right, and informs the player of a win or loss if
+  // necessary
+  void play(int x, int y, String button) {
+    int i = this.engine.grid.board.index(x, y);
+    if (button.equals("LeftButton")) {
+      IntList opened = this.engine.open(x, y);
+      this.renderer.changed(opened);
+      if (this.hints != null) {
+        this.hints.changed(opened);
       }
-      else if (button.equals("RightButton")) {
-        this.grid.toggleFlag(p);
+      if (this.journal != null) {
+        this.journal.open(i, this.tickNum);
       }
-      if (this.grid.gameOver()) {
-        this.endOfWorld("GAME OVER");
-        // this.onKeyEvent("r");
+    }
+    else if (button.equals("RightButton")) {
+      int flagged = this.engine.toggleFlag(x, y);
+      this.renderer.changed(flagged);
+      if (this.hints != null) {
+        this.hints.changed(flagged);
       }
-      else if (this.grid.win()) {
-        this.endOfWorld("YOU WIN!");
+      if (this.journal != null) {
+        this.journal.flag(i, this.tickNum);
       }
     }
+    if (this.engine.status() == GameStatus.LOST) {
+      this.keepScore(false);
+      this.endOfWorld("GAME OVER");
+    }
+    else if (this.engine.status() == GameStatus.WON) {
+      this.keepScore(true);
+      this.endOfWorld("YOU WIN!");
+    }
   }
 
-  // EFFECT: Handles key events, specifically restarting the game
-  // when the user presses "R"
-  public void onKeyEvent(String key) {
-    if (key.equals("r")) {
-      this.grid = new Grid(new Random(), this.width, this.height, this.numMines);
-      this.tickNum = 0;
+  // the column and row of the tile shown at the given point in the window, or
+  // null if no tile is shown there
+  Posn tileAt(Posn p) {
+    if (this.camera != null) {
+      return this.camera.tileAt(p);
+    }
+    if (p.x > 0 && p.x < this.engine.width * 30 && p.y > 0 && p.y < this.engine.height * 30) {
+      return new Posn(p.x / 30, p.y / 30);
     }
+    return null;
   }
 
-}
-
-// Represents a grid of cells across which mines are randomly dispersed
-class Grid {
-  ArrayList<ArrayList<Cell>> cells;
-
-  Grid(Random rand, int width, int height, int numMines) {
-    this.cells = new ArrayList<ArrayList<Cell>>();
-
-    // builds a grid of dummy cells
-    for (int y = 0; y < height; y++) {
-      this.cells.add(new ArrayList<Cell>());
-      for (int x = 0; x < width; x++) {
-        this.cells.get(y).add(new Cell(false, new ArrayList<Cell>()));
-      }
+  // EFFECT: starts dragging the view when the middle button is pressed
+  public void onMousePressed(Posn p, String button) {
+    if (this.camera != null && button.equals("MiddleButton")) {
+      this.dragFrom = p;
     }
+  }
 
-    // sets the correct neighbors for each cell
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        this.cells.get(y).get(x).setNeighbors(this.findNeighbors(x, y));
-      }
+  // EFFECT: pans the view by the distance dragged when the middle button is
+  // released, so the board follows the pointer
+  public void onMouseReleased(Posn p, String button) {
+    if (this.dragFrom != null && button.equals("MiddleButton")) {
+      this.camera.panBy(this.dragFrom.x - p.x, this.dragFrom.y - p.y);
+      this.dragFrom = null;
     }
+  }
 
-    this.placeMines(rand, numMines);
+  // EFFECT: prepares each next game on a background thread from now on, so
+  // restarting need not wait for its mines to be placed
+  void prefetchRestarts() {
+    this.prefetcher = new GridPrefetcher(this.engine, new Random());
   }
 
-  // constructor used only for testing placeMines (creates a grid with no mines)
-  Grid(int width, int height) {
-    this.cells = new ArrayList<ArrayList<Cell>>();
+  // EFFECT: adds the result of every game finished from now on to the given
+  // store, which is left open for the caller to close
+  void keepScores(ScoreStore scores) {
+    this.scores = scores;
+  }
 
-    // builds a grid of dummy cells
-    for (int y = 0; y < height; y++) {
-      this.cells.add(new ArrayList<Cell>());
-      for (int x = 0; x < width; x++) {
-        this.cells.get(y).add(new Cell(false, new ArrayList<Cell>()));
-      }
+  // EFFECT: adds the result of the game just finished to the score store, if
+  // there is one, without waiting for it to be written
+  void keepScore(boolean won) {
+    if (this.scores != null) {
+      this.scores.add(new GameResult(this.engine.width, this.engine.height,
+          this.engine.numMines, this.seed, this.tickNum, this.engine.moves,
+          System.currentTimeMillis(), won));
     }
   }
 
-  // returns a list of every Cell adjacent (in any of the 8 directions) to the one
-  // at the given coordinates
-  ArrayList<Cell> findNeighbors(int x, int y) {
-    ArrayList<Cell> neighbors = new ArrayList<Cell>();
-    for (int i = -1; i < 2; i++) {
-      for (int j = -1; j < 2; j++) {
-        if (!(i == 0 && j == 0) && this.inBounds(x + j, y + i)) {
-          neighbors.add(this.cells.get(y + i).get(x + j));
-        }
+  // EFFECT: lets the player take back moves with "u" from now on; a journalled
+  // game cannot be undone, since its journal only ever grows
+  void allowUndo() {
+    if (this.journal == null) {
+      this.engine.keepHistory();
+      this.renderer.show(this.engine.grid.board);
+      if (this.hints != null) {
+        this.hints.show(this.engine.grid);
       }
     }
-    return neighbors;
   }
 
-  // is there a Cell at the given coordinates on this Grid?
-  boolean inBounds(int x, int y) {
-    return y >= 0 && y < this.cells.size() && x >= 0 && x < this.cells.get(y).size();
+  // EFFECT: keeps the tiles that can be deduced safe or mines up to date from
+  // now on, and opens a tile known to be safe when "h" is pressed
+  void offerHints() {
+    this.hints = new HintEngine(this.engine.grid);
   }
 
-  // EFFECT: randomly places the given number of mines into Cells on this Grid,
-  // never repeating a Cell
-  void placeMines(Random rand, int numMines) {
-    int x;
-    int y;
-    while (numMines > 0) {
-      y = rand.nextInt(this.cells.size());
-      x = rand.nextInt(this.cells.get(y).size());
-      if (!this.cells.get(y).get(x).hasMine) {
-        this.cells.get(y).get(x).placeMine();
-        numMines--;
+  // EFFECT: Handles key events, specifically restarting the game
+  // when the user presses "R", taking back a move with "U" if undo is allowed,
+  // and moving the view if there is a camera
+  public void onKeyEvent(String key) {
+    if (key.equals("r")) {
+      if (this.pool != null) {
+        this.engine.restart(this.pool.take());
+        this.seed = GameResult.NO_SEED;
+      }
+      else {
+        long seed;
+        if (this.prefetcher != null) {
+          seed = this.prefetcher.restart();
+        }
+        else {
+          seed = new Random().nextLong();
+          this.engine.restart(new Random(seed));
+        }
+        if (this.journal != null) {
+          this.journal.restart(seed, this.tickNum);
+        }
+        this.seed = seed;
+      }
+      this.renderer.show(this.engine.grid.board);
+      if (this.hints != null) {
+        this.hints.show(this.engine.grid);
+      }
+      this.tickNum = 0;
+    }
+    else if (key.equals("u") && this.engine.history != null) {
+      IntList changed = this.engine.undo();
+      this.renderer.changed(changed);
+      if (this.hints != null) {
+        this.hints.changed(changed);
       }
     }
+    else if (key.equals("h") && this.hints != null) {
+      int safe = this.hints.safeHint();
+      if (safe >= 0) {
+        this.play(safe % this.engine.width, safe / this.engine.width, "LeftButton");
+      }
+    }
+    else if (this.camera != null) {
+      this.moveCamera(key);
+    }
   }
 
-  // counts the flags in this grid
-  int numFlags() {
-    int count = 0;
-    for (ArrayList<Cell> a : this.cells) {
-      for (Cell c : a) {
-        if (c.flagged) {
-          count += 1;
-        }
-      }
+  // EFFECT: pans the view a quarter of the window for an arrow key, and zooms
+  // in for "=" or "+" and out for "-"
+  void moveCamera(String key) {
+    if (key.equals("left")) {
+      this.camera.panBy(-this.camera.width / 4, 0);
+    }
+    else if (key.equals("right")) {
+      this.camera.panBy(this.camera.width / 4, 0);
+    }
+    else if (key.equals("up")) {
+      this.camera.panBy(0, -this.camera.height / 4);
+    }
+    else if (key.equals("down")) {
+      this.camera.panBy(0, this.camera.height / 4);
+    }
+    else if (key.equals("=") || key.equals("+")) {
+      this.camera.zoomBy(1);
+    }
+    else if (key.equals("-")) {
+      this.camera.zoomBy(-1);
     }
-    return count;
   }
 
-  // EFFECT: opens the Cell at the given Posn
-  void openCell(Posn p) {
-    this.cells.get(p.y / 30).get(p.x / 30).open(true);
+}
+
+// The prebuilt, shared images for every way a Cell can look: closed, flagged,
+// an open mine, and open with 0 to 8 adjacent mines, along with the pixels of
+// each, as painted onto a BoardRenderer's layer
+class CellImages {
+  static final WorldImage BORDER = new RectangleImage(30, 30, OutlineMode.OUTLINE, Color.BLUE);
+  static final WorldImage CLOSED = new OverlayImage(BORDER,
+      new RectangleImage(30, 30, OutlineMode.SOLID, Color.LIGHT_GRAY));
+  static final WorldImage FLAGGED = new OverlayImage(new TriangleImage(new Posn(0, -10),
+      new Posn(-10, 10), new Posn(10, 10), OutlineMode.SOLID, Color.RED), CLOSED);
+  static final WorldImage MINE = new OverlayImage(
+      new CircleImage(10, OutlineMode.SOLID, Color.BLACK), BORDER);
+  static final WorldImage[] OPEN = CellImages.openImages();
+  // the kinds of tile after the nine open, mine-free ones
+  static final int OPEN_MINE = 9;
+  static final int FLAGGED_TILE = 10;
+  static final int CLOSED_TILE = 11;
+  static final WorldImage[] KINDS = CellImages.kinds();
+  static final Color[][] PIXELS = CellImages.pixels(KINDS, 30);
+
+  // builds the images of an open, mine-free cell, indexed by its number of
+  // adjacent mines
+  static WorldImage[] openImages() {
+    WorldImage[] images = new WorldImage[9];
+    images[0] = BORDER;
+    for (int n = 1; n < images.length; n++) {
+      images[n] = new OverlayImage(new TextImage("" + n, 24, Color.GREEN), BORDER);
+    }
+    return images;
   }
 
-  // EFFECT: toggles the flag on the Cell at the given Posn
-  void toggleFlag(Posn p) {
-    this.cells.get(p.y / 30).get(p.x / 30).toggleFlag();
+  // the image of every kind of tile, indexed as kindOf numbers them
+  static WorldImage[] kinds() {
+    WorldImage[] images = Arrays.copyOf(OPEN, 12);
+    images[OPEN_MINE] = MINE;
+    images[FLAGGED_TILE] = FLAGGED;
+    images[CLOSED_TILE] = CLOSED;
+    return images;
   }
 
-  // do any of the open Cells in this Grid contain a mine, thus ending the game?
-  boolean gameOver() {
-    for (ArrayList<Cell> a : this.cells) {
-      for (Cell c : a) {
-        if (c.gameOver()) {
-          return true;
-        }
+  // the pixels of each of the given tile images drawn with the given number of
+  // pixels to a side, row by row, exactly as they would be drawn on a scene
+  // with nothing beneath them
+  static Color[][] pixels(WorldImage[] images, int size) {
+    Color[][] pixels = new Color[images.length][];
+    for (int k = 0; k < images.length; k++) {
+      BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g = tile.createGraphics();
+      g.translate(size / 2, size / 2);
+      if (size == 30) {
+        images[k].draw(g);
+      }
+      else {
+        new ScaleImage(images[k], size / 30.0).draw(g);
+      }
+      g.dispose();
+      pixels[k] = new Color[size * size];
+      for (int p = 0; p < pixels[k].length; p++) {
+        pixels[k][p] = new Color(tile.getRGB(p % size, p / size), true);
       }
     }
-    return false;
+    return pixels;
   }
 
-  // are all non-mine cells open?
-  boolean win() {
-    for (ArrayList<Cell> a : this.cells) {
-      for (Cell c : a) {
-        if (!(c.open || c.hasMine)) {
-          return false;
-        }
-      }
+  // the pixels of every kind of tile drawn with the given even number of pixels
+  // to a side
+  static Color[][] pixelsAt(int size) {
+    if (size == 30) {
+      return PIXELS;
     }
-    return true;
+    return CellImages.pixels(KINDS, size);
   }
 
-  // EFFECT: opens every Cell in this Grid
-  void openAll() {
-    for (ArrayList<Cell> a : this.cells) {
-      for (Cell c : a) {
-        c.open(false);
+  // the kind of the tile at the given index on the given Board: its number of
+  // adjacent mines if it is open and mine-free, otherwise OPEN_MINE,
+  // FLAGGED_TILE or CLOSED_TILE
+  static int kindOf(Board board, int i) {
+    if (board.isOpen(i)) {
+      if (board.hasMine(i)) {
+        return OPEN_MINE;
       }
+      return board.surroundingMines(i);
     }
+    else if (board.isFlagged(i)) {
+      return FLAGGED_TILE;
+    }
+    return CLOSED_TILE;
   }
 
-  // draws every Cell in this Grid at its coordinates
-  WorldScene draw() {
-    WorldScene scene = new WorldScene(this.cells.size() * 30, this.cells.get(0).size() * 30);
-    for (int y = 0; y < this.cells.size(); y++) {
-      for (int x = 0; x < this.cells.get(y).size(); x++) {
-        scene.placeImageXY(this.cells.get(y).get(x).draw(), x * 30 + 15, y * 30 + 15);
-      }
-    }
-    return scene;
+  // the image for the tile at the given index on the given Board
+  static WorldImage forTile(Board board, int i) {
+    return KINDS[CellImages.kindOf(board, i)];
   }
 
 }
 
-// Represents a tile in Minesweeper, which may or may not be open, flagged, or
-// containing a mine
-class Cell {
-  boolean hasMine;
-  boolean open;
-  boolean flagged;
-  ArrayList<Cell> neighbors;
-
-  Cell(boolean hasMine, ArrayList<Cell> neighbors) {
-    this.hasMine = hasMine;
-    this.open = false;
-    this.flagged = false;
-    this.neighbors = neighbors;
+// Draws a Board onto a bitmap, its layer, repainting only the tiles reported as
+// changed since the last draw. A repainted tile's pixels replace the old ones,
+// so the layer never grows, and every frame shows the same layer as one image:
+// a frame in which no tile changed paints nothing, and the canvas copies one
+// bitmap rather than drawing every tile again. Without a Camera the layer holds
+// the whole board with 30 pixel tiles; through one it holds only the tiles in
+// the camera's window and MARGIN more on every side, so a frame costs time in
+// proportion to the window rather than the board, and a small pan only moves
+// the layer
+class BoardRenderer {
+  // the columns and rows painted beyond each edge of a camera's window
+  static final int MARGIN = 4;
+
+  Board board;
+  Camera camera;
+  ComputedPixelImage layer;
+  Color[][] pixels;
+  int tile;
+  int left;
+  int top;
+  int across;
+  int down;
+  IntList dirty;
+  boolean repaint;
+  int painted;
+  int shownX;
+  int shownY;
+
+  BoardRenderer(Board board) {
+    this.board = board;
+    this.camera = null;
+    this.layer = null;
+    this.pixels = CellImages.PIXELS;
+    this.tile = 30;
+    this.left = 0;
+    this.top = 0;
+    this.across = 0;
+    this.down = 0;
+    this.dirty = new IntList();
+    this.repaint = true;
+    this.painted = 0;
+    this.shownX = 0;
+    this.shownY = 0;
   }
 
-  // finds the number of mines adjacent to this Cell
-  int surroundingMines() {
-    int num = 0;
-    for (Cell c : this.neighbors) {
-      if (c.hasMine) {
-        num++;
-      }
+  // EFFECT: marks every tile in the given list as needing to be redrawn
+  void changed(IntList tiles) {
+    for (int k = 0; k < tiles.size(); k++) {
+      this.dirty.add(tiles.get(k));
     }
-    return num;
   }
 
-  // finds the number of flagged Cells adjacent to this Cell
-  int surroundingFlags() {
-    int num = 0;
-    for (Cell c : this.neighbors) {
-      if (c.flagged) {
-        num++;
-      }
-    }
-    return num;
+  // EFFECT: marks the tile at the given index as needing to be redrawn
+  void changed(int i) {
+    this.dirty.add(i);
+  }
+
+  // EFFECT: draws the given Board from now on, starting with every tile
+  void show(Board board) {
+    this.board = board;
+    this.invalidate();
+  }
+
+  // EFFECT: draws only what the given Camera sees from now on, or the whole
+  // board if it is null
+  void look(Camera camera) {
+    this.camera = camera;
+    this.invalidate();
   }
 
-  // EFFECT: changes this cell's list of neighbors to the given list
-  void setNeighbors(ArrayList<Cell> neighbors) {
-    this.neighbors = neighbors;
+  // EFFECT: marks every tile as needing to be redrawn
+  void invalidate() {
+    this.repaint = true;
+    this.dirty.clear();
   }
 
-  // EFFECT: this cell now contains a mine
-  void placeMine() {
-    this.hasMine = true;
+  // has any tile changed, or the camera moved, since the last draw?
+  boolean stale() {
+    return this.repaint || this.dirty.size() > 0 || this.camera != null
+        && (this.camera.x != this.shownX || this.camera.y != this.shownY
+            || this.camera.tileSize() != this.tile);
   }
 
-  // EFFECT: opens this cell, and any neighbors if its surrounding mine count is
-  // equal to 0 or its surrounding flags
-  void open(boolean cellWasClicked) {
-    this.open = true;
-    if (this.surroundingMines() == 0) {
-      for (Cell c : this.neighbors) {
-        if (!c.open && !flagged) {
-          c.open(false);
+  // the layer, with every changed tile repainted; every tile is repainted once
+  // more are marked than the layer holds
+  // EFFECT: brings the layer up to date, moving it if the camera has left it
+  ComputedPixelImage update() {
+    long start = Metrics.start();
+    this.cover();
+    if (this.repaint || this.dirty.size() > this.across * this.down) {
+      this.painted = 0;
+      for (int y = this.top; y < this.top + this.down; y++) {
+        for (int x = this.left; x < this.left + this.across; x++) {
+          this.paint(this.board.index(x, y));
         }
       }
     }
-    if (cellWasClicked && this.surroundingMines() == this.surroundingFlags()) {
-      for (Cell c : this.neighbors) {
-        if (!c.flagged) {
-          c.open(false);
-        }
+    else {
+      for (int k = 0; k < this.dirty.size(); k++) {
+        this.paint(this.dirty.get(k));
       }
     }
+    this.dirty.clear();
+    this.repaint = false;
+    Metrics.DRAW_NANOS.observeSince(start);
+    return this.layer;
   }
 
-  // should this cell cause the game to end
-  // because it is open and containing a mine?
-  boolean gameOver() {
-    return this.open && this.hasMine;
+  // EFFECT: places the layer over the tiles the next frame shows, with tiles of
+  // the size it shows them at, keeping it where it is if it already covers
+  // them; if it moves, every tile is marked to be repainted
+  void cover() {
+    int tile = 30;
+    int left = 0;
+    int top = 0;
+    int right = this.board.width;
+    int bottom = this.board.height;
+    if (this.camera != null) {
+      tile = this.camera.tileSize();
+      if (!this.repaint && tile == this.tile && this.camera.firstColumn() >= this.left
+          && this.camera.endColumn() <= this.left + this.across
+          && this.camera.firstRow() >= this.top && this.camera.endRow() <= this.top + this.down) {
+        return;
+      }
+      left = Math.max(0, this.camera.firstColumn() - MARGIN);
+      top = Math.max(0, this.camera.firstRow() - MARGIN);
+      right = Math.min(this.board.width, this.camera.endColumn() + MARGIN);
+      bottom = Math.min(this.board.height, this.camera.endRow() + MARGIN);
+    }
+    if (tile != this.tile) {
+      this.pixels = CellImages.pixelsAt(tile);
+    }
+    if (this.layer == null || this.layer.width != (right - left) * tile
+        || this.layer.height != (bottom - top) * tile) {
+      this.layer = new ComputedPixelImage((right - left) * tile, (bottom - top) * tile);
+      this.repaint = true;
+    }
+    if (tile != this.tile || left != this.left || top != this.top) {
+      this.repaint = true;
+    }
+    this.tile = tile;
+    this.left = left;
+    this.top = top;
+    this.across = right - left;
+    this.down = bottom - top;
   }
 
-  // EFFECT: flags this cell if it is unflagged, removes the flag if it is flagged
-  void toggleFlag() {
-    this.flagged = !this.flagged;
+  // a new scene showing the up-to-date layer, the size of the board or of the
+  // camera's window, on which anything else shown with the board can be placed
+  // EFFECT: brings the layer up to date
+  WorldScene draw() {
+    ComputedPixelImage layer = this.update();
+    if (this.camera == null) {
+      WorldScene scene = new WorldScene(this.board.width * 30, this.board.height * 30);
+      scene.placeImageXY(layer, this.board.width * 15, this.board.height * 15);
+      return scene;
+    }
+    WorldScene scene = new WorldScene(this.camera.width, this.camera.height);
+    scene.placeImageXY(layer, this.left * this.tile - this.camera.x + layer.width / 2,
+        this.top * this.tile - this.camera.y + layer.height / 2);
+    this.shownX = this.camera.x;
+    this.shownY = this.camera.y;
+    return scene;
   }
 
-  // draws this cell, open or closed, with a flag or mine or # of adjacent mines
-  // if applicable
-  WorldImage draw() {
-    WorldImage img = new RectangleImage(30, 30, OutlineMode.OUTLINE, Color.BLUE);
-    if (this.open) {
-      if (this.hasMine) {
-        img = new OverlayImage(new CircleImage(10, OutlineMode.SOLID, Color.BLACK), img);
-      }
-      else if (this.surroundingMines() > 0) {
-        img = new OverlayImage(new TextImage("" + this.surroundingMines(), 24, Color.GREEN), img);
-      }
+  // EFFECT: paints the current pixels of the tile at the given index onto the
+  // layer, if the layer holds it
+  void paint(int i) {
+    int column = i % this.board.width - this.left;
+    int row = i / this.board.width - this.top;
+    if (column < 0 || column >= this.across || row < 0 || row >= this.down) {
+      return;
     }
-    else {
-      img = new OverlayImage(img, new RectangleImage(30, 30, OutlineMode.SOLID, Color.LIGHT_GRAY));
-      if (this.flagged) {
-        img = new OverlayImage(new TriangleImage(new Posn(0, -10), new Posn(-10, 10),
-            new Posn(10, 10), OutlineMode.SOLID, Color.RED), img);
-      }
+    Color[] pixels = this.pixels[CellImages.kindOf(this.board, i)];
+    for (int p = 0; p < pixels.length; p++) {
+      this.layer.setPixel(column * this.tile + p % this.tile, row * this.tile + p / this.tile,
+          pixels[p]);
+    }
+    this.painted++;
+  }
+
+}
+
+// A counter shown below the board, whose image is rebuilt only when the value
+// it shows changes
+class CounterText {
+  String label;
+  int value;
+  WorldImage image;
+
+  CounterText(String label) {
+    this.label = label;
+    this.value = 0;
+    this.image = null;
+  }
+
+  // the image of this counter showing the given value
+  // EFFECT: rebuilds the image if the value has changed since it was built
+  WorldImage show(int value) {
+    if (this.image == null || value != this.value) {
+      this.value = value;
+      this.image = new TextImage(this.label + value, 24, Color.BLACK);
     }
-    return img;
+    return this.image;
   }
 
 }
@@ -365,20 +686,21 @@ class ExamplesMinesweeper {
   Grid grid2;
   Cell cell1;
   Cell cell2;
-  Cell cell3;
-  Cell cell4;
-  Cell cell5;
   ArrayList<Cell> neighbors;
   ArrayList<Cell> neighbors2;
 
   void init() {
     this.testRand = new Random(12345);
     this.world1 = new Game(this.testRand, 60, 20, 20);
-    this.world2 = new Game(this.testRand, 2, 2, 2);
-    this.world2.grid.cells.get(0).get(0).open = true;
-    this.world2.grid.cells.get(0).get(1).open = true;
-    this.world2.grid.cells.get(1).get(0).open = true;
-    this.world2.grid.cells.get(1).get(1).flagged = true;
+    // both mines in the bottom row
+    Grid grid = new Grid(2, 2);
+    grid.board.placeMine(2);
+    grid.board.placeMine(3);
+    this.world2 = new Game(new Engine(grid, 2));
+    this.world2.engine.grid.board.setOpen(0);
+    this.world2.engine.grid.board.setOpen(1);
+    this.world2.engine.grid.board.setOpen(2);
+    this.world2.engine.grid.board.toggleFlag(3);
     // change the following values to modify default mines, width, and height
     this.randomWorld = new Game(40, 15, 15);
 
@@ -414,26 +736,23 @@ class ExamplesMinesweeper {
     this.grid1 = new Grid(this.testRand, 20, 20, 60);
     this.grid2 = new Grid(5, 5);
 
-    this.cell1 = new Cell(false, new ArrayList<Cell>());
-    this.cell2 = new Cell(true, new ArrayList<Cell>());
-    this.cell3 = new Cell(false, this.neighbors);
-    this.cell4 = new Cell(true, this.neighbors2);
-    this.cell5 = new Cell(true, this.neighbors);
+    this.cell1 = new Cell(false);
+    this.cell2 = new Cell(true);
 
     this.neighbors = new ArrayList<Cell>();
-    this.neighbors.add(this.grid1.cells.get(4).get(3));
-    this.neighbors.add(this.grid1.cells.get(4).get(4));
-    this.neighbors.add(this.grid1.cells.get(4).get(5));
-    this.neighbors.add(this.grid1.cells.get(5).get(3));
-    this.neighbors.add(this.grid1.cells.get(5).get(5));
-    this.neighbors.add(this.grid1.cells.get(6).get(3));
-    this.neighbors.add(this.grid1.cells.get(6).get(4));
-    this.neighbors.add(this.grid1.cells.get(6).get(5));
+    this.neighbors.add(this.grid1.cellAt(3, 4));
+    this.neighbors.add(this.grid1.cellAt(4, 4));
+    this.neighbors.add(this.grid1.cellAt(5, 4));
+    this.neighbors.add(this.grid1.cellAt(3, 5));
+    this.neighbors.add(this.grid1.cellAt(5, 5));
+    this.neighbors.add(this.grid1.cellAt(3, 6));
+    this.neighbors.add(this.grid1.cellAt(4, 6));
+    this.neighbors.add(this.grid1.cellAt(5, 6));
 
     this.neighbors2 = new ArrayList<Cell>();
-    this.neighbors2.add(this.grid1.cells.get(0).get(18));
-    this.neighbors2.add(this.grid1.cells.get(1).get(18));
-    this.neighbors2.add(this.grid1.cells.get(1).get(19));
+    this.neighbors2.add(this.grid1.cellAt(18, 0));
+    this.neighbors2.add(this.grid1.cellAt(18, 1));
+    this.neighbors2.add(this.grid1.cellAt(19, 1));
   }
 
   // MAIN METHOD FOR PLAYING THE GAME
@@ -441,7 +760,7 @@ class ExamplesMinesweeper {
   void testBigBang(Tester t) {
     this.init();
     Game world = this.randomWorld;
-    world.bigBang(world.grid.cells.get(0).size() * 30, world.grid.cells.size() * 30 + 60, 1.0);
+    world.bigBang(world.engine.width * 30, world.engine.height * 30 + 60, 1.0);
   }
 
   void testMakeScene(Tester t) {
@@ -455,13 +774,13 @@ class ExamplesMinesweeper {
     t.checkExpect(world2.lastScene("YOU WIN!"), this.scene3);
 
     // BEFORE CHANGE
-    t.checkExpect(this.world1.grid.cells.get(0).get(0).open, false);
+    t.checkExpect(this.world1.engine.grid.cellAt(0, 0).isOpen(), false);
 
     // CHANGE
     this.world1.lastScene("GAME OVER");
 
     // AFTER CHANGE
-    t.checkExpect(this.world1.grid.cells.get(0).get(0).open, true);
+    t.checkExpect(this.world1.engine.grid.cellAt(0, 0).isOpen(), true);
   }
 
   void testOnTick(Tester t) {
@@ -478,43 +797,43 @@ class ExamplesMinesweeper {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, false);
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), false);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), true);
 
     // CHANGE 1
     this.world2.onMouseClicked(new Posn(32, 40), "RightButton");
     this.world2.onMouseClicked(new Posn(38, 11), "RightButton");
 
     // AFTER CHANGE 1
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, false);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), false);
 
     // CHANGE 2
     this.world2.onMouseClicked(new Posn(32, 40), "LeftButton");
     this.world2.onMouseClicked(new Posn(5, 3), "LeftButton");
 
     // AFTER CHANGE 2
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, true);
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
   }
 
   void testOnKeyEvent(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(0).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 1).isOpen(), true);
 
     // CHANGE 1
     this.world2.onKeyEvent("q");
 
     // AFTER CHANGE 1
-    t.checkExpect(this.world2.grid.cells.get(1).get(0).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 1).isOpen(), true);
 
     // CHANGE 2
     this.world2.onKeyEvent("r");
 
     // AFTER CHANGE 2
-    t.checkExpect(this.world2.grid.cells.get(1).get(0).open, false);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 1).isOpen(), false);
   }
 
   void testFindNeighbors(Tester t) {
@@ -536,194 +855,2886 @@ class ExamplesMinesweeper {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.grid2.cells.get(3).get(2).hasMine, false);
-    t.checkExpect(this.grid2.cells.get(0).get(0).hasMine, false);
+    t.checkExpect(this.grid2.cellAt(1, 3).hasMine(), false);
+    t.checkExpect(this.grid2.cellAt(0, 0).hasMine(), false);
 
     // CHANGE
     this.grid2.placeMines(this.testRand, 15);
 
     // AFTER CHANGE
-    t.checkExpect(this.grid2.cells.get(3).get(2).hasMine, true);
-    t.checkExpect(this.grid2.cells.get(0).get(0).hasMine, false);
+    t.checkExpect(this.grid2.cellAt(1, 3).hasMine(), true);
+    t.checkExpect(this.grid2.cellAt(0, 0).hasMine(), false);
   }
 
   void testNumFlags(Tester t) {
     this.init();
-    t.checkExpect(this.world1.grid.numFlags(), 0);
-    t.checkExpect(this.world2.grid.numFlags(), 1);
+    t.checkExpect(this.world1.engine.grid.numFlags(), 0);
+    t.checkExpect(this.world2.engine.grid.numFlags(), 1);
   }
 
   void testOpenCell(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, false);
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), false);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
 
     // CHANGE
-    this.world2.grid.openCell(new Posn(1, 10));
-    this.world2.grid.openCell(new Posn(52, 45));
+    this.world2.engine.grid.openCell(0, 0);
+    this.world2.engine.grid.openCell(1, 1);
 
     // AFTER CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, true);
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
   }
 
   void testToggleFlagGrid(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, true);
-    t.checkExpect(this.world2.grid.cells.get(0).get(1).flagged, false);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 0).isFlagged(), false);
 
     // CHANGE
-    this.world2.grid.toggleFlag(new Posn(50, 50));
-    this.world2.grid.toggleFlag(new Posn(43, 16));
+    this.world2.engine.grid.toggleFlag(1, 1);
+    this.world2.engine.grid.toggleFlag(1, 0);
 
     // AFTER CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, false);
-    t.checkExpect(this.world2.grid.cells.get(0).get(1).flagged, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), false);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 0).isFlagged(), true);
   }
 
   void testGameOverGrid(Tester t) {
     this.init();
-    t.checkExpect(this.world1.grid.gameOver(), false);
-    t.checkExpect(this.world2.grid.gameOver(), true);
+    t.checkExpect(this.world1.engine.grid.gameOver(), false);
+    t.checkExpect(this.world2.engine.grid.gameOver(), true);
   }
 
   void testWin(Tester t) {
     this.init();
-    t.checkExpect(this.world1.grid.win(), false);
-    t.checkExpect(this.world2.grid.win(), true);
+    t.checkExpect(this.world1.engine.grid.win(), false);
+    t.checkExpect(this.world2.engine.grid.win(), true);
   }
 
   void testOpenAll(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    for (ArrayList<Cell> a : this.world1.grid.cells) {
-      for (Cell c : a) {
-        t.checkExpect(c.open, false);
-      }
+    for (int i = 0; i < this.world1.engine.grid.board.size(); i++) {
+      t.checkExpect(this.world1.engine.grid.board.isOpen(i), false);
     }
 
     // CHANGE
-    this.world1.grid.openAll();
+    this.world1.engine.grid.openAll();
 
     // AFTER CHANGE
-    for (ArrayList<Cell> a : this.world1.grid.cells) {
-      for (Cell c : a) {
-        t.checkExpect(c.open, true);
-      }
+    for (int i = 0; i < this.world1.engine.grid.board.size(); i++) {
+      t.checkExpect(this.world1.engine.grid.board.isOpen(i), true);
     }
   }
 
   void testDrawGrid(Tester t) {
     this.init();
-    t.checkExpect(this.world2.grid.draw(), this.scene1);
+    t.checkExpect(this.world2.renderer.draw(), this.scene1);
   }
 
   void testSurroundingMines(Tester t) {
     this.init();
-    t.checkExpect(this.world1.grid.cells.get(1).get(2).surroundingMines(), 0);
-    t.checkExpect(this.world1.grid.cells.get(0).get(10).surroundingMines(), 2);
-    t.checkExpect(this.world1.grid.cells.get(17).get(1).surroundingMines(), 5);
-    t.checkExpect(this.world1.grid.cells.get(16).get(1).surroundingMines(), 4);
+    t.checkExpect(this.world1.engine.grid.cellAt(2, 1).surroundingMines(), 0);
+    t.checkExpect(this.world1.engine.grid.cellAt(9, 0).surroundingMines(), 2);
+    t.checkExpect(this.world1.engine.grid.cellAt(16, 5).surroundingMines(), 5);
+    t.checkExpect(this.world1.engine.grid.cellAt(18, 1).surroundingMines(), 4);
   }
 
   void testSurroundingFlags(Tester t) {
     this.init();
-    t.checkExpect(this.world1.grid.cells.get(12).get(6).surroundingFlags(), 0);
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).surroundingFlags(), 1);
+    t.checkExpect(this.world1.engine.grid.cellAt(6, 12).surroundingFlags(), 0);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).surroundingFlags(), 1);
   }
 
-  void testSetNeighbors(Tester t) {
+  void testNeighbors(Tester t) {
     this.init();
-
-    // BEFORE CHANGE
-    t.checkExpect(this.cell1.neighbors, new ArrayList<Cell>());
-    t.checkExpect(this.cell2.neighbors, new ArrayList<Cell>());
-    t.checkExpect(this.cell3.neighbors, this.neighbors);
-    t.checkExpect(this.cell4.neighbors, this.neighbors2);
-
-    // CHANGE
-    this.cell1.setNeighbors(this.neighbors);
-    this.cell2.setNeighbors(this.neighbors2);
-    this.cell3.setNeighbors(new ArrayList<Cell>());
-    this.cell4.setNeighbors(this.neighbors2);
-
-    // AFTER CHANGE
-    t.checkExpect(this.cell1.neighbors, this.neighbors);
-    t.checkExpect(this.cell2.neighbors, this.neighbors2);
-    t.checkExpect(this.cell3.neighbors, new ArrayList<Cell>());
-    t.checkExpect(this.cell4.neighbors, this.neighbors2);
-
+    t.checkExpect(this.cell1.neighbors(), new ArrayList<Cell>());
+    t.checkExpect(this.grid1.cellAt(4, 5).neighbors(), this.neighbors);
+    t.checkExpect(this.grid1.cellAt(19, 0).neighbors(), this.neighbors2);
   }
 
   void testPlaceMine(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.cell1.hasMine, false);
-    t.checkExpect(this.cell2.hasMine, true);
+    t.checkExpect(this.cell1.hasMine(), false);
+    t.checkExpect(this.cell2.hasMine(), true);
 
     // CHANGE
     this.cell1.placeMine();
     this.cell2.placeMine();
 
     // AFTER CHANGE
-    t.checkExpect(this.cell1.hasMine, true);
-    t.checkExpect(this.cell2.hasMine, true);
+    t.checkExpect(this.cell1.hasMine(), true);
+    t.checkExpect(this.cell2.hasMine(), true);
   }
 
   void testOpen(Tester t) {
     this.init();
 
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, false);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), false);
 
     // CHANGE
-    this.world2.grid.cells.get(0).get(0).open(false);
-    this.world2.grid.cells.get(1).get(1).open(true);
+    this.world2.engine.grid.cellAt(0, 0).open(false);
+    this.world2.engine.grid.cellAt(1, 1).open(true);
 
     // AFTER CHANGE
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).open, true);
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).open, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 0).isOpen(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isOpen(), true);
   }
 
   void testGameOverCell(Tester t) {
     this.init();
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).gameOver(), false);
-    t.checkExpect(this.world2.grid.cells.get(1).get(0).gameOver(), true);
-    t.checkExpect(this.world2.grid.cells.get(0).get(1).gameOver(), false);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).gameOver(), false);
+    t.checkExpect(this.world2.engine.grid.cellAt(0, 1).gameOver(), true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 0).gameOver(), false);
 
   }
 
   void testToggleFlagCell(Tester t) {
     this.init();
     // BEFORE CHANGE
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), true);
 
     // CHANGE 1
-    this.world2.grid.cells.get(1).get(1).toggleFlag();
+    this.world2.engine.grid.cellAt(1, 1).toggleFlag();
 
     // AFTER CHANGE 1
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, false);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), false);
 
     // CHANGE 2
-    this.world2.grid.cells.get(1).get(1).toggleFlag();
+    this.world2.engine.grid.cellAt(1, 1).toggleFlag();
 
     // AFTER CHANGE 2
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).flagged, true);
+    t.checkExpect(this.world2.engine.grid.cellAt(1, 1).isFlagged(), true);
   }
 
   void testDrawCell(Tester t) {
     this.init();
-    t.checkExpect(this.world2.grid.cells.get(0).get(0).draw(), this.img1);
-    t.checkExpect(this.world2.grid.cells.get(0).get(1).draw(), this.img1);
-    t.checkExpect(this.world2.grid.cells.get(1).get(0).draw(), this.img2);
-    t.checkExpect(this.world2.grid.cells.get(1).get(1).draw(), this.img3);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 0), this.img1);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 1), this.img1);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 2), this.img2);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 3), this.img3);
+  }
+
+  void testCellAt(Tester t) {
+    this.init();
+    t.checkExpect(this.grid1.cellAt(3, 4), new Cell(this.grid1.board, 83));
+    t.checkExpect(this.grid1.cellAt(0, 0), new Cell(this.grid1.board, 0));
+  }
+
+  void testBoardIndex(Tester t) {
+    this.init();
+    t.checkExpect(this.grid1.board.index(0, 0), 0);
+    t.checkExpect(this.grid1.board.index(19, 0), 19);
+    t.checkExpect(this.grid1.board.index(3, 4), 83);
+    t.checkExpect(this.grid1.board.size(), 400);
+  }
+
+  void testBoardPlaceMine(Tester t) {
+    this.init();
+
+    // BEFORE CHANGE
+    t.checkExpect(this.grid2.board.surroundingMines(0), 0);
+    t.checkExpect(this.grid2.board.surroundingMines(6), 0);
+
+    // CHANGE
+    this.grid2.board.placeMine(1);
+    this.grid2.board.placeMine(5);
+    this.grid2.board.placeMine(5);
+
+    // AFTER CHANGE
+    t.checkExpect(this.grid2.board.hasMine(5), true);
+    t.checkExpect(this.grid2.board.surroundingMines(0), 2);
+    t.checkExpect(this.grid2.board.surroundingMines(6), 2);
+    t.checkExpect(this.grid2.board.surroundingMines(10), 1);
+    t.checkExpect(this.grid2.board.surroundingMines(12), 0);
+  }
+
+  void testBoardFlags(Tester t) {
+    this.init();
+
+    // BEFORE CHANGE
+    t.checkExpect(this.grid2.board.isFlagged(6), false);
+    t.checkExpect(this.grid2.board.surroundingFlags(0), 0);
+
+    // CHANGE
+    this.grid2.board.toggleFlag(6);
+    this.grid2.board.toggleFlag(1);
+
+    // AFTER CHANGE
+    t.checkExpect(this.grid2.board.isFlagged(6), true);
+    t.checkExpect(this.grid2.board.surroundingFlags(0), 2);
+    t.checkExpect(this.grid2.board.surroundingFlags(12), 1);
+    t.checkExpect(this.grid2.board.isOpen(6), false);
+  }
+
+  void testBoardOpen(Tester t) {
+    this.init();
+    this.grid2.board.placeMine(24);
+    this.grid2.board.toggleFlag(12);
+
+    // CHANGE 1: floods every tile but the mine, stopping at the flag
+    IntList opened = this.grid2.board.open(0, true);
+
+    // AFTER CHANGE 1
+    t.checkExpect(opened.size(), 23);
+    t.checkExpect(opened.get(0), 0);
+    t.checkExpect(this.grid2.board.isOpen(12), false);
+    t.checkExpect(this.grid2.board.isOpen(18), true);
+    t.checkExpect(this.grid2.board.isOpen(24), false);
+
+    // CHANGE 2: nothing is left to open
+    t.checkExpect(this.grid2.board.open(0, true).size(), 0);
+
+    // CHANGE 3: chording around 18 opens the mine
+    IntList chord = this.grid2.board.open(18, true);
+
+    // AFTER CHANGE 3
+    t.checkExpect(chord.size(), 1);
+    t.checkExpect(chord.get(0), 24);
+  }
+
+  void testBoardOpenLarge(Tester t) {
+    Board big = new Board(3000, 3000);
+    big.placeMine(big.size() - 1);
+    t.checkExpect(big.open(0, true).size(), big.size() - 1);
+    t.checkExpect(big.isOpen(big.size() - 2), true);
+  }
+
+  void testIntList(Tester t) {
+    IntList list = new IntList(1);
+    t.checkExpect(list.size(), 0);
+    for (int i = 0; i < 40; i++) {
+      list.add(i * 2);
+    }
+    t.checkExpect(list.size(), 40);
+    t.checkExpect(list.get(0), 0);
+    t.checkExpect(list.get(39), 78);
+    t.checkException(new IndexOutOfBoundsException("Index 40 out of bounds for size 40"), list,
+        "get", 40);
+    t.checkExpect(list.toArray().length, 40);
+    t.checkExpect(list.toArray()[39], 78);
+    list.clear();
+    t.checkExpect(list.size(), 0);
+    t.checkExpect(list.toArray(), new int[0]);
+  }
+
+  void testBoardCounters(Tester t) {
+    this.init();
+
+    // BEFORE CHANGE
+    t.checkExpect(this.grid2.board.closedSafe, 25);
+    t.checkExpect(this.grid2.board.numFlags, 0);
+    t.checkExpect(this.world1.engine.grid.board.closedSafe, 340);
+
+    // CHANGE
+    this.grid2.board.placeMine(24);
+    this.grid2.board.toggleFlag(3);
+    this.grid2.board.toggleFlag(4);
+    this.grid2.board.toggleFlag(4);
+    this.grid2.board.setOpen(0);
+    this.grid2.board.setOpen(0);
+    this.grid2.board.setOpen(24);
+
+    // AFTER CHANGE
+    t.checkExpect(this.grid2.board.numFlags, 1);
+    t.checkExpect(this.grid2.board.closedSafe, 23);
+    t.checkExpect(this.grid2.board.openMines, 1);
+    t.checkExpect(this.grid2.board.countersMatchScan(), true);
+    t.checkExpect(this.world1.engine.grid.board.countersMatchScan(), true);
+    t.checkExpect(this.world2.engine.grid.board.countersMatchScan(), true);
+
+    // CHANGE 2: knock a counter out of sync
+    this.grid2.board.numFlags = 5;
+
+    // AFTER CHANGE 2
+    t.checkExpect(this.grid2.board.countersMatchScan(), false);
+  }
+
+  void testCellImagesForTile(Tester t) {
+    this.init();
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 0), this.img1);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 2), this.img2);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 3), this.img3);
+    t.checkExpect(CellImages.forTile(this.grid2.board, 0),
+        new OverlayImage(this.cellBorder,
+            new RectangleImage(30, 30, OutlineMode.SOLID, Color.LIGHT_GRAY)));
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 0) == CellImages.OPEN[2], true);
+    t.checkExpect(CellImages.forTile(this.world2.engine.grid.board, 0)
+        == CellImages.forTile(this.world2.engine.grid.board, 1), true);
+  }
+
+  void testOpenImages(Tester t) {
+    WorldImage[] images = CellImages.openImages();
+    t.checkExpect(images.length, 9);
+    t.checkExpect(images[0], new RectangleImage(30, 30, OutlineMode.OUTLINE, Color.BLUE));
+    t.checkExpect(images[5], new OverlayImage(new TextImage("5", 24, Color.GREEN),
+        new RectangleImage(30, 30, OutlineMode.OUTLINE, Color.BLUE)));
+  }
+
+  void testBoardRendererDraw(Tester t) {
+    this.init();
+    t.checkExpect(this.world2.renderer.draw(), this.scene1);
+    t.checkExpect(this.world2.renderer.painted, 4);
+    ComputedPixelImage layer = this.world2.renderer.layer;
+
+    // CHANGE: only the toggled tile is painted again
+    this.world2.renderer.changed(this.world2.engine.toggleFlag(1, 1));
+    t.checkExpect(this.world2.renderer.stale(), true);
+    WorldScene scene = this.world2.renderer.draw();
+
+    // AFTER CHANGE
+    t.checkExpect(scene, this.scene2Board());
+    t.checkExpect(layer == this.world2.renderer.layer, true);
+    t.checkExpect(this.world2.renderer.stale(), false);
+    t.checkExpect(this.world2.renderer.painted, 5);
+  }
+
+  // the board of world2 after its flag is removed
+  WorldScene scene2Board() {
+    WorldScene scene = new WorldScene(60, 60);
+    scene.placeImageXY(this.img1, 15, 15);
+    scene.placeImageXY(this.img1, 45, 15);
+    scene.placeImageXY(this.img2, 15, 45);
+    scene.placeImageXY(new OverlayImage(this.cellBorder,
+        new RectangleImage(30, 30, OutlineMode.SOLID, Color.LIGHT_GRAY)), 45, 45);
+    return scene;
+  }
+
+  void testBoardRendererChanged(Tester t) {
+    this.init();
+    BoardRenderer renderer = new BoardRenderer(this.grid2.board);
+    renderer.draw();
+
+    // CHANGE
+    renderer.changed(4);
+    renderer.changed(this.grid2.board.open(0, true));
+
+    // AFTER CHANGE
+    t.checkExpect(renderer.dirty.size(), 26);
+    t.checkExpect(renderer.layer == null, false);
+
+    // CHANGE 2: more tiles are marked than the board has, so each is painted once
+    renderer.changed(this.grid2.board.open(0, true));
+    renderer.draw();
+
+    // AFTER CHANGE 2
+    t.checkExpect(renderer.painted, 25);
+
+    // CHANGE 3
+    renderer.invalidate();
+
+    // AFTER CHANGE 3
+    t.checkExpect(renderer.repaint, true);
+    t.checkExpect(renderer.dirty.size(), 0);
+
+    // CHANGE 4: a board of another size gets a layer of its own
+    ComputedPixelImage layer = renderer.layer;
+    renderer.show(new Grid(3, 2).board);
+    renderer.draw();
+
+    // AFTER CHANGE 4
+    t.checkExpect(layer == renderer.layer, false);
+    t.checkExpect(renderer.layer.width, 90);
+    t.checkExpect(renderer.layer.height, 60);
+    t.checkExpect(renderer.painted, 6);
+  }
+
+  void testCellImagesPixels(Tester t) {
+    this.init();
+    // a tile's pixels show exactly what placing its image would
+    ComputedPixelImage tile = new ComputedPixelImage(30, 30);
+    Color[] pixels = CellImages.PIXELS[CellImages.FLAGGED_TILE];
+    for (int p = 0; p < pixels.length; p++) {
+      tile.setPixel(p % 30, p / 30, pixels[p]);
+    }
+    WorldScene painted = new WorldScene(30, 30);
+    painted.placeImageXY(tile, 15, 15);
+    WorldScene placed = new WorldScene(30, 30);
+    placed.placeImageXY(this.img3, 15, 15);
+    t.checkExpect(painted, placed);
+    t.checkExpect(CellImages.KINDS.length, CellImages.PIXELS.length);
+    t.checkExpect(CellImages.KINDS[CellImages.CLOSED_TILE], CellImages.CLOSED);
+    t.checkExpect(CellImages.kindOf(new Grid(2, 2).board, 0), CellImages.CLOSED_TILE);
+  }
+
+  void testGameFrames(Tester t) {
+    // mines at the bottom left, one of them flagged, and a safe tile still closed
+    Grid grid = new Grid(3, 2);
+    grid.board.placeMine(3);
+    grid.board.placeMine(4);
+    grid.openCell(0, 0);
+    grid.openCell(1, 0);
+    grid.toggleFlag(1, 1);
+    Game game = new Game(new Engine(grid, 2));
+    WorldScene first = game.makeScene();
+
+    // CHANGE 1: nothing changes, so the frame is shown again
+    WorldScene same = game.makeScene();
+
+    // AFTER CHANGE 1
+    t.checkExpect(same == first, true);
+    t.checkExpect(game.renderer.painted, 6);
+
+    // CHANGE 2: only the timer changes
+    WorldImage minesLeft = game.minesLeft.image;
+    game.onTick();
+    WorldScene ticked = game.makeScene();
+
+    // AFTER CHANGE 2: a new frame, but no tile is painted again
+    t.checkExpect(ticked == first, false);
+    t.checkExpect(ticked, first);
+    t.checkExpect(game.renderer.painted, 6);
+    t.checkExpect(game.minesLeft.image == minesLeft, true);
+    t.checkExpect(game.time.value, 1);
+
+    // CHANGE 3: a click on an open tile whose flags do not match its mines
+    game.onMouseClicked(new Posn(15, 15), "LeftButton");
+
+    // AFTER CHANGE 3
+    t.checkExpect(game.makeScene() == ticked, true);
+
+    // CHANGE 4: a click that unflags a tile
+    game.onMouseClicked(new Posn(45, 45), "RightButton");
+
+    // AFTER CHANGE 4: only that tile is painted again
+    WorldScene unflagged = game.makeScene();
+    t.checkExpect(unflagged == ticked, false);
+    t.checkExpect(game.renderer.painted, 7);
+    t.checkExpect(game.minesLeft.value, 2);
+    t.checkExpect(unflagged, new BoardRenderer(grid.board).draw());
+  }
+
+  void testCamera(Tester t) {
+    Camera camera = new Camera(90, 60, 10, 5);
+    t.checkExpect(camera.tileSize(), 30);
+    t.checkExpect(camera.firstColumn(), 0);
+    t.checkExpect(camera.endColumn(), 3);
+    t.checkExpect(camera.endRow(), 2);
+    t.checkExpect(camera.tileAt(new Posn(45, 15)), new Posn(1, 0));
+    t.checkExpect(camera.tileAt(new Posn(90, 15)), null);
+    t.checkExpect(camera.tileAt(new Posn(-1, 15)), null);
+
+    // CHANGE 1: pan part of a tile across and down
+    camera.panBy(40, 10);
+
+    // AFTER CHANGE 1: clicks are mapped through the offset
+    t.checkExpect(camera.tileAt(new Posn(0, 0)), new Posn(1, 0));
+    t.checkExpect(camera.tileAt(new Posn(89, 59)), new Posn(4, 2));
+    t.checkExpect(camera.firstColumn(), 1);
+    t.checkExpect(camera.endColumn(), 5);
+    t.checkExpect(camera.endRow(), 3);
+
+    // CHANGE 2: pan past the bottom right corner
+    camera.panBy(1000, 1000);
+
+    // AFTER CHANGE 2: the window stops at the board's edge
+    t.checkExpect(camera.x, 210);
+    t.checkExpect(camera.y, 90);
+    t.checkExpect(camera.endColumn(), 10);
+    t.checkExpect(camera.tileAt(new Posn(89, 59)), new Posn(9, 4));
+
+    // CHANGE 3: zoom all the way out, then in by one
+    camera.zoomBy(-10);
+    t.checkExpect(camera.tileSize(), 10);
+    t.checkExpect(camera.x, 10);
+    t.checkExpect(camera.y, 0);
+    camera.zoomBy(1);
+
+    // AFTER CHANGE 3: the middle of the window stays on the same tile
+    t.checkExpect(camera.tileSize(), 16);
+    t.checkExpect(camera.tileAt(new Posn(45, 30)), new Posn(5, 3));
+    t.checkExpect(camera.x, 43);
+    t.checkExpect(camera.y, 18);
+
+    // a board smaller than the window stays at its top left
+    Camera small = new Camera(300, 300, 2, 2);
+    small.panBy(50, 50);
+    t.checkExpect(small.x, 0);
+    t.checkExpect(small.tileAt(new Posn(45, 15)), new Posn(1, 0));
+    t.checkExpect(small.tileAt(new Posn(75, 15)), null);
+    t.checkConstructorException(
+        new IllegalArgumentException("A camera's window must have a positive size"),
+        "Camera", 0, 10, 2, 2);
+  }
+
+  void testBoardRendererCamera(Tester t) {
+    Grid grid = new Grid(new Random(3), 20, 20, 60);
+    grid.openCell(0, 0);
+    BoardRenderer renderer = new BoardRenderer(grid.board);
+    Camera camera = new Camera(60, 60, 20, 20);
+    renderer.look(camera);
+    camera.panBy(75, 90);
+
+    // CHANGE 1: draw through the camera
+    WorldScene scene = renderer.draw();
+
+    // AFTER CHANGE 1: only the tiles in view and a margin are painted, and the
+    // scene shows what placing every tile would
+    t.checkExpect(renderer.left, 0);
+    t.checkExpect(renderer.top, 0);
+    t.checkExpect(renderer.across, 5 + BoardRenderer.MARGIN);
+    t.checkExpect(renderer.down, 5 + BoardRenderer.MARGIN);
+    t.checkExpect(renderer.painted, renderer.across * renderer.down);
+    t.checkExpect(renderer.layer.width, renderer.across * 30);
+    WorldScene expected = new WorldScene(60, 60);
+    for (int i = 0; i < grid.board.size(); i++) {
+      expected.placeImageXY(CellImages.forTile(grid.board, i), i % 20 * 30 + 15 - 75,
+          i / 20 * 30 + 15 - 90);
+    }
+    t.checkExpect(scene, expected);
+    t.checkExpect(renderer.stale(), false);
+
+    // CHANGE 2: a pan within the margin, and a change far outside the layer
+    ComputedPixelImage layer = renderer.layer;
+    camera.panBy(30, 0);
+    t.checkExpect(renderer.stale(), true);
+    renderer.changed(grid.board.index(19, 19));
+    renderer.draw();
+
+    // AFTER CHANGE 2: the layer only moves
+    t.checkExpect(renderer.layer == layer, true);
+    t.checkExpect(renderer.painted, renderer.across * renderer.down);
+
+    // CHANGE 3: a pan past the margin
+    camera.panBy(300, 0);
+    renderer.draw();
+
+    // AFTER CHANGE 3: the layer covers the new view
+    t.checkExpect(renderer.left, camera.firstColumn() - BoardRenderer.MARGIN);
+    t.checkExpect(renderer.left + renderer.across, 20);
+    t.checkExpect(renderer.painted, renderer.across * renderer.down);
+
+    // CHANGE 4: zoom in
+    camera.zoomBy(1);
+    scene = renderer.draw();
+
+    // AFTER CHANGE 4: the tiles are painted at the new size
+    t.checkExpect(renderer.tile, 40);
+    t.checkExpect(renderer.pixels[0].length, 40 * 40);
+    t.checkExpect(renderer.layer.width, renderer.across * 40);
+    t.checkExpect(CellImages.pixelsAt(30) == CellImages.PIXELS, true);
+    t.checkExpect(CellImages.pixelsAt(10)[CellImages.CLOSED_TILE].length, 100);
+  }
+
+  void testBoardRendererCost(Tester t) {
+    // a board far larger than the window paints only what is near the window
+    Grid grid = new Grid(new Random(4), 1000, 1000, 150000);
+    BoardRenderer renderer = new BoardRenderer(grid.board);
+    Camera camera = new Camera(300, 300, 1000, 1000);
+    renderer.look(camera);
+    camera.panBy(15000, 15000);
+    renderer.draw();
+    t.checkExpect(renderer.painted, (10 + 2 * BoardRenderer.MARGIN)
+        * (10 + 2 * BoardRenderer.MARGIN));
+
+    // zoomed all the way out, the window holds more tiles, but no more pixels
+    camera.zoomBy(-10);
+    renderer.draw();
+    t.checkExpect(renderer.painted, (30 + 2 * BoardRenderer.MARGIN)
+        * (30 + 2 * BoardRenderer.MARGIN));
+    t.checkExpect(renderer.layer.width, (30 + 2 * BoardRenderer.MARGIN) * 10);
+  }
+
+  void testGameViewport(Tester t) {
+    Grid grid = new Grid(new Random(5), 40, 30, 100);
+    Game game = new Game(new Engine(grid, 100));
+    game.useViewport(300, 150);
+    t.checkExpect(game.boardWidth(), 300);
+    t.checkExpect(game.boardHeight(), 150);
+    WorldScene first = game.makeScene();
+    t.checkExpect(first.width, 300);
+    t.checkExpect(first.height, 150);
+
+    // CHANGE 1: pan with the arrow keys and by dragging with the middle button
+    game.onKeyEvent("right");
+    game.onKeyEvent("down");
+    game.onMousePressed(new Posn(100, 100), "MiddleButton");
+    game.onMouseReleased(new Posn(80, 90), "MiddleButton");
+    game.onMousePressed(new Posn(100, 100), "LeftButton");
+    game.onMouseReleased(new Posn(0, 0), "LeftButton");
+
+    // AFTER CHANGE 1
+    t.checkExpect(game.camera.x, 75 + 20);
+    t.checkExpect(game.camera.y, 37 + 10);
+    t.checkExpect(game.dragFrom, null);
+    t.checkExpect(game.tileAt(new Posn(10, 10)), new Posn(3, 1));
+    t.checkExpect(game.makeScene() == first, false);
+
+    // CHANGE 2: a click is mapped through the camera
+    game.onMouseClicked(new Posn(10, 10), "RightButton");
+
+    // AFTER CHANGE 2
+    t.checkExpect(grid.board.isFlagged(grid.board.index(3, 1)), true);
+    t.checkExpect(game.makeScene(), game.renderer.draw());
+
+    // CHANGE 3: zoom out and back in, and press keys that do nothing
+    game.onKeyEvent("-");
+    t.checkExpect(game.camera.tileSize(), 20);
+    game.onKeyEvent("=");
+    game.onKeyEvent("left");
+    game.onKeyEvent("up");
+    game.onKeyEvent("q");
+
+    // AFTER CHANGE 3
+    t.checkExpect(game.camera.tileSize(), 30);
+    t.checkExpect(game.camera.x >= 0, true);
+
+    // without a camera, the arrow keys and the middle button do nothing
+    Game plain = new Game(new Random(6), 10, 9, 9);
+    plain.onKeyEvent("right");
+    plain.onMousePressed(new Posn(0, 0), "MiddleButton");
+    t.checkExpect(plain.dragFrom, null);
+    t.checkExpect(plain.tileAt(new Posn(45, 15)), new Posn(1, 0));
+    t.checkExpect(plain.tileAt(new Posn(0, 15)), null);
+    t.checkExpect(plain.makeScene().width, 270);
+  }
+
+  void testPageTree(Tester t) {
+    t.checkExpect(Page.depthFor(1), 0);
+    t.checkExpect(Page.depthFor(1024), 0);
+    t.checkExpect(Page.depthFor(1025), 1);
+    t.checkExpect(Page.depthFor(32 * 1024), 1);
+    t.checkExpect(Page.depthFor(32 * 1024 + 1), 2);
+    t.checkExpect(Page.depthFor(4000 * 4000), 3);
+    t.checkExpect(Page.slot(1023, 1), 0);
+    t.checkExpect(Page.slot(1024 * 33 + 5, 1), 1);
+    t.checkExpect(Page.slot(1024 * 33 + 5, 2), 1);
+    Page empty = Page.empty(2);
+    t.checkExpect(empty.kids[0] == empty.kids[31], true);
+    t.checkExpect(empty.kids[0].kids[0].tiles.length, Page.SIZE);
+    t.checkExpect(empty.owner, null);
+    Object owner = new Object();
+    Page copy = new Page(empty, owner);
+    t.checkExpect(copy.owner == owner, true);
+    t.checkExpect(copy.kids == empty.kids, false);
+    t.checkExpect(copy.kids[5] == empty.kids[5], true);
+  }
+
+  void testPagedBoard(Tester t) {
+    Board plain = new Board(100, 100);
+    plain.placeRandomMines(new Random(7), 1500, 5050);
+    PagedBoard paged = new PagedBoard(plain);
+    t.checkExpect(paged.cells, null);
+    t.checkExpect(paged.depth, 1);
+
+    // CHANGE: play the same moves on both
+    plain.open(5050, true);
+    paged.open(5050, true);
+    plain.toggleFlag(0);
+    paged.toggleFlag(0);
+    plain.open(9999, true);
+    paged.open(9999, true);
+
+    // AFTER CHANGE
+    boolean same = true;
+    for (int i = 0; i < plain.size(); i++) {
+      same = same && plain.cell(i) == paged.cell(i);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(paged.numFlags, plain.numFlags);
+    t.checkExpect(paged.closedSafe, plain.closedSafe);
+    t.checkExpect(paged.openMines, plain.openMines);
+    t.checkExpect(paged.countersMatchScan(), true);
+
+    // CHANGE 2: clear it
+    paged.clear();
+
+    // AFTER CHANGE 2
+    t.checkExpect(paged.cell(5050), 0);
+    t.checkExpect(paged.closedSafe, 10000);
+    t.checkExpect(paged.countersMatchScan(), true);
+  }
+
+  void testPagedBoardSnapshot(Tester t) {
+    PagedBoard board = new PagedBoard(new Board(100, 100));
+    board.placeMine(3000);
+    PagedBoard before = board.snapshot();
+    t.checkExpect(before.root == board.root, true);
+
+    // CHANGE: flag a tile on the third page
+    board.toggleFlag(2100);
+
+    // AFTER CHANGE: only the root and that page were copied
+    t.checkExpect(before.root == board.root, false);
+    t.checkExpect(before.root.kids[2] == board.root.kids[2], false);
+    t.checkExpect(before.root.kids[1] == board.root.kids[1], true);
+    t.checkExpect(before.root.kids[9] == board.root.kids[9], true);
+    t.checkExpect(board.isFlagged(2100), true);
+    t.checkExpect(before.isFlagged(2100), false);
+    t.checkExpect(before.numFlags, 0);
+    IntList changed = new IntList();
+    board.diff(before, changed);
+    t.checkExpect(changed.toArray(), new int[] { 2100 });
+
+    // CHANGE 2: change the snapshot, then restore it
+    before.toggleFlag(50);
+    board.restore(before);
+
+    // AFTER CHANGE 2: the board matches the snapshot, and they no longer change
+    // each other
+    t.checkExpect(board.isFlagged(2100), false);
+    t.checkExpect(board.isFlagged(50), true);
+    t.checkExpect(board.numFlags, 1);
+    board.toggleFlag(51);
+    t.checkExpect(before.isFlagged(51), false);
+    t.checkExpect(board.hasMine(3000), true);
+  }
+
+  void testPagedBoardBranches(Tester t) {
+    // thousands of branches of a large board, one move apart, share their pages
+    PagedBoard board = new PagedBoard(new Board(1000, 1000));
+    board.placeMine(0);
+    PagedBoard[] branches = new PagedBoard[2000];
+    for (int k = 0; k < branches.length; k++) {
+      branches[k] = board.snapshot();
+      branches[k].toggleFlag(k * 499);
+    }
+    boolean apart = true;
+    for (int k = 0; k < branches.length; k++) {
+      apart = apart && branches[k].isFlagged(k * 499) && branches[k].numFlags == 1
+          && !branches[k].isFlagged(k * 499 + 1) && branches[k].hasMine(0);
+    }
+    t.checkExpect(apart, true);
+    t.checkExpect(board.numFlags, 0);
+    t.checkExpect(branches[7].root.kids[31] == board.root.kids[31], true);
+  }
+
+  void testEngineUndo(Tester t) {
+    Engine engine = new Engine(8, 9, 9, 10, true);
+    t.checkExpect(engine.undo().size(), 0);
+    engine.keepHistory();
+    t.checkExpect(engine.grid.board instanceof PagedBoard, true);
+    Board board = engine.grid.board;
+
+    // CHANGE: open the first cell, which places the mines, then flag and open
+    IntList opened = engine.open(4, 4);
+    engine.toggleFlag(0, 0);
+    engine.open(4, 4);
+
+    // AFTER CHANGE: opening an open cell changed nothing, so is not remembered
+    // or counted
+    t.checkExpect(engine.history.size(), 2);
+    t.checkExpect(engine.moves, 2);
+
+    // CHANGE 2: take back the flag
+    IntList unflagged = engine.undo();
+
+    // AFTER CHANGE 2
+    t.checkExpect(unflagged.toArray(), new int[] { 0 });
+    t.checkExpect(board.isFlagged(0), false);
+    t.checkExpect(engine.minesLeft(), 10);
+
+    // CHANGE 3: take back the first move
+    IntList closed = engine.undo();
+
+    // AFTER CHANGE 3: the mines are unplaced again
+    t.checkExpect(closed.size() >= opened.size(), true);
+    t.checkExpect(engine.grid.pendingMines, 10);
+    t.checkExpect(board.closedSafe, 81);
+    t.checkExpect(board.countersMatchScan(), true);
+    t.checkExpect(engine.moves, 0);
+    t.checkExpect(engine.undo().size(), 0);
+    t.checkExpect(engine.moves, 0);
+
+    // a chord that opens nothing is not counted either
+    engine.open(4, 4);
+    engine.toggleFlag(0, 0);
+    engine.open(0, 0);
+    t.checkExpect(engine.moves, 2);
+    engine.undo();
+    engine.undo();
+    t.checkExpect(engine.moves, 0);
+    t.checkExpect(engine.grid.pendingMines, 10);
+
+    // CHANGE 4: restart
+    engine.open(0, 0);
+    engine.restart(new Random(9));
+
+    // AFTER CHANGE 4: the history starts over on the same board
+    t.checkExpect(engine.history.size(), 0);
+    t.checkExpect(engine.grid.board == board, true);
+  }
+
+  void testGameUndo(Tester t) {
+    Game game = new Game(new Random(10), 10, 9, 9, true);
+    game.onKeyEvent("u");
+    t.checkExpect(game.renderer.dirty.size(), 0);
+    game.allowUndo();
+    t.checkExpect(game.renderer.board, game.engine.grid.board);
+    game.onMouseClicked(new Posn(135, 135), "LeftButton");
+    game.makeScene();
+
+    // CHANGE: take the move back
+    game.onKeyEvent("u");
+
+    // AFTER CHANGE: every tile it opened is drawn again
+    t.checkExpect(game.renderer.dirty.size() > 0, true);
+    t.checkExpect(game.makeScene(), new BoardRenderer(new Board(9, 9)).draw());
+
+    // a journalled game keeps every move
+    Game journalled = new Game(11, 10, 9, 9, new ByteArrayOutputStream());
+    journalled.allowUndo();
+    t.checkExpect(journalled.engine.history, null);
+  }
+
+  void testHintEngine(Tester t) {
+    // a wall of counts over four closed tiles, the second and fourth mines
+    Grid grid = new Grid(4, 2);
+    grid.board.placeMine(5);
+    grid.board.placeMine(7);
+    HintEngine hints = new HintEngine(grid);
+    t.checkExpect(hints.safeHint(), -1);
+    t.checkExpect(hints.mineHint(), -1);
+
+    // CHANGE 1: the first two counts nest, so the third closed tile is safe
+    hints.changed(grid.openCell(0, 0));
+    hints.changed(grid.openCell(1, 0));
+
+    // AFTER CHANGE 1
+    t.checkExpect(hints.knownSafe(6), true);
+    t.checkExpect(hints.safeHint(), 6);
+    t.checkExpect(hints.knownMine(5), false);
+
+    // CHANGE 2: the last count decides the rest
+    hints.changed(grid.openCell(3, 0));
+
+    // AFTER CHANGE 2
+    t.checkExpect(hints.knownMine(7), true);
+    t.checkExpect(hints.knownMine(5), false);
+    hints.changed(grid.openCell(2, 0));
+    t.checkExpect(hints.knownMine(5), true);
+    t.checkExpect(hints.knownSafe(4), true);
+    t.checkExpect(hints.safeHint(), 4);
+
+    // CHANGE 3: open one hint and flag a known mine
+    hints.changed(grid.openCell(0, 1));
+    grid.board.toggleFlag(7);
+    hints.changed(7);
+
+    // AFTER CHANGE 3: neither is offered again until the flag comes off
+    t.checkExpect(hints.safeHint(), 6);
+    t.checkExpect(hints.mineHint(), 5);
+    grid.board.toggleFlag(5);
+    hints.changed(5);
+    t.checkExpect(hints.mineHint(), -1);
+    grid.board.toggleFlag(7);
+    hints.changed(7);
+    t.checkExpect(hints.mineHint(), 7);
+    hints.changed(-1);
+    t.checkExpect(hints.mineHint(), 7);
+  }
+
+  void testHintEngineUndo(Tester t) {
+    Grid grid = new Grid(4, 2);
+    grid.board.placeMine(5);
+    grid.board.placeMine(7);
+    Engine engine = new Engine(grid, 2);
+    engine.keepHistory();
+    HintEngine hints = new HintEngine(grid);
+    hints.changed(engine.open(0, 0));
+    hints.changed(engine.open(1, 0));
+    t.checkExpect(hints.safeHint(), 6);
+
+    // CHANGE: take back the count that proved the tile safe
+    hints.changed(engine.undo());
+
+    // AFTER CHANGE: nothing open proves it any more
+    t.checkExpect(hints.knownSafe(6), false);
+    t.checkExpect(hints.safeHint(), -1);
+    t.checkExpect(hints.board, grid.board);
   }
 
-}
\ No newline at end of file
+  void testHintEngineIncremental(Tester t) {
+    Grid grid = new Grid(new Random(3), 30, 16, 70, true);
+    HintEngine hints = new HintEngine(grid);
+    hints.changed(grid.openCell(15, 8));
+    boolean sound = true;
+    boolean same = true;
+    int played = 0;
+
+    // CHANGE: play every safe hint, checking each update against hints deduced
+    // from scratch
+    for (int i = hints.safeHint(); i >= 0; i = hints.safeHint()) {
+      hints.changed(grid.openCell(i % 30, i / 30));
+      played++;
+      HintEngine fresh = new HintEngine(grid);
+      for (int n = 0; n < grid.board.size(); n++) {
+        sound = sound && !(hints.knownMine(n) && !grid.board.hasMine(n))
+            && !(hints.knownSafe(n) && grid.board.hasMine(n));
+        same = same && (grid.board.isOpen(n)
+            || hints.knownSafe(n) == fresh.knownSafe(n)
+            && hints.knownMine(n) == fresh.knownMine(n));
+      }
+    }
+
+    // AFTER CHANGE
+    t.checkExpect(played > 0, true);
+    t.checkExpect(sound, true);
+    t.checkExpect(same, true);
+    t.checkExpect(grid.gameOver(), false);
+  }
+
+  void testGameHints(Tester t) {
+    Game game = new Game(new Random(3), 70, 30, 16, true);
+    game.onKeyEvent("h");
+    t.checkExpect(game.engine.moves, 0);
+    game.offerHints();
+    game.onMouseClicked(new Posn(455, 245), "LeftButton");
+    int open = game.engine.grid.board.size() - game.engine.grid.board.closedSafe - 70;
+    int safe = game.hints.safeHint();
+    t.checkExpect(safe >= 0, true);
+
+    // CHANGE 1: ask for a hint
+    game.onKeyEvent("h");
+
+    // AFTER CHANGE 1: the hinted tile is opened like a click
+    t.checkExpect(game.engine.grid.board.isOpen(safe), true);
+    t.checkExpect(game.engine.moves, 2);
+    t.checkExpect(game.engine.grid.board.size() - game.engine.grid.board.closedSafe - 70 > open,
+        true);
+    t.checkExpect(game.renderer.dirty.size() > 0, true);
+
+    // CHANGE 2: take both moves back in an undoable game
+    game.allowUndo();
+    game.onKeyEvent("h");
+    game.onKeyEvent("u");
+
+    // AFTER CHANGE 2: only what the counts still open prove is known
+    t.checkExpect(game.hints.board, game.engine.grid.board);
+    t.checkExpect(game.hints.safeHint() >= 0, true);
+    HintEngine fresh = new HintEngine(game.engine.grid);
+    boolean same = true;
+    for (int n = 0; n < game.engine.grid.board.size(); n++) {
+      same = same && game.hints.knownSafe(n) == fresh.knownSafe(n)
+          && game.hints.knownMine(n) == fresh.knownMine(n);
+    }
+    t.checkExpect(same, true);
+
+    // CHANGE 3: restart
+    game.onKeyEvent("r");
+
+    // AFTER CHANGE 3: nothing is known of the new game
+    t.checkExpect(game.hints.safeHint(), -1);
+    t.checkExpect(game.hints.board, game.engine.grid.board);
+  }
+
+  void testCounterText(Tester t) {
+    CounterText counter = new CounterText("Time: ");
+    WorldImage zero = counter.show(0);
+    t.checkExpect(zero, new TextImage("Time: 0", 24, Color.BLACK));
+    t.checkExpect(counter.show(0) == zero, true);
+    t.checkExpect(counter.show(7), new TextImage("Time: 7", 24, Color.BLACK));
+    t.checkExpect(counter.value, 7);
+  }
+
+  void testPlaceRandomMines(Tester t) {
+    this.init();
+
+    // CHANGE 1: every tile but the safe one
+    Board full = new Board(5, 5);
+    full.placeRandomMines(new Random(3), 24, 12);
+
+    // AFTER CHANGE 1
+    t.checkExpect(full.hasMine(12), false);
+    t.checkExpect(full.closedSafe, 1);
+    t.checkExpect(full.surroundingMines(12), 8);
+
+    // CHANGE 2: room to keep the whole neighborhood clear
+    this.grid2.board.placeRandomMines(new Random(3), 16, 0);
+
+    // AFTER CHANGE 2
+    t.checkExpect(this.grid2.board.closedSafe, 9);
+    t.checkExpect(this.grid2.board.surroundingMines(0), 0);
+    t.checkExpect(this.grid2.board.hasMine(6), false);
+
+    // the same seed places the same mines
+    Board again = new Board(5, 5);
+    again.placeRandomMines(new Random(3), 16, 0);
+    t.checkExpect(again.cells, this.grid2.board.cells);
+
+    t.checkException(new IllegalArgumentException("Cannot place 25 mines on 24 tiles"),
+        new Board(5, 5), "placeRandomMines", new Random(3), 25, 0);
+    t.checkException(new IllegalArgumentException("Cannot place 26 mines on 25 tiles"),
+        new Board(5, 5), "placeRandomMines", new Random(3), 26, -1);
+  }
+
+  void testSafeZone(Tester t) {
+    this.init();
+    t.checkExpect(this.grid2.board.safeZone(-1, 5), new int[0]);
+    t.checkExpect(this.grid2.board.safeZone(0, 5), new int[] { 0, 1, 5, 6 });
+    t.checkExpect(this.grid2.board.safeZone(12, 16),
+        new int[] { 6, 7, 8, 11, 12, 13, 16, 17, 18 });
+    t.checkExpect(this.grid2.board.safeZone(12, 17), new int[] { 12 });
+  }
+
+  void testSkipping(Tester t) {
+    this.init();
+    t.checkExpect(this.grid2.board.skipping(0, new int[0]), 0);
+    t.checkExpect(this.grid2.board.skipping(1, new int[] { 2, 3 }), 1);
+    t.checkExpect(this.grid2.board.skipping(2, new int[] { 2, 3 }), 4);
+    t.checkExpect(this.grid2.board.skipping(5, new int[] { 0, 1, 5, 6 }), 9);
+  }
+
+  void testFirstClickSafe(Tester t) {
+    this.init();
+    Grid grid = new Grid(new Random(7), 9, 9, 72, true);
+
+    // BEFORE CHANGE
+    t.checkExpect(grid.pendingMines, 72);
+    t.checkExpect(grid.board.closedSafe, 81);
+
+    // CHANGE
+    grid.openCell(4, 4);
+
+    // AFTER CHANGE
+    t.checkExpect(grid.pendingMines, 0);
+    t.checkExpect(grid.board.closedSafe, 0);
+    t.checkExpect(grid.board.isOpen(40), true);
+    t.checkExpect(grid.gameOver(), false);
+    t.checkExpect(grid.win(), true);
+
+    t.checkConstructorException(new IllegalArgumentException("Cannot place 81 mines on 80 tiles"),
+        "Grid", new Random(7), 9, 9, 81, true);
+    t.checkExpect(new Game(new Random(7), 10, 9, 9, true).engine.grid.pendingMines, 10);
+  }
+
+  void testEngineStatus(Tester t) {
+    this.init();
+    t.checkExpect(this.world1.engine.status(), GameStatus.PLAYING);
+    t.checkExpect(this.world2.engine.status(), GameStatus.LOST);
+    Engine engine = new Engine(new Grid(2, 2), 0);
+    engine.grid.board.placeMine(3);
+    engine.open(0, 0);
+    engine.open(1, 0);
+    t.checkExpect(engine.status(), GameStatus.PLAYING);
+    engine.open(0, 1);
+    t.checkExpect(engine.status(), GameStatus.WON);
+  }
+
+  void testEngineMoves(Tester t) {
+    Engine engine = new Engine(42L, 9, 9, 10, true);
+
+    // BEFORE CHANGE
+    t.checkExpect(engine.minesLeft(), 10);
+    t.checkExpect(engine.moves, 0);
+
+    // CHANGE
+    IntList opened = engine.open(4, 4);
+    int flagged = engine.toggleFlag(0, 8);
+
+    // AFTER CHANGE
+    t.checkExpect(opened.size() > 0, true);
+    t.checkExpect(opened.get(0), 40);
+    t.checkExpect(flagged, 72);
+    t.checkExpect(engine.minesLeft(), 9);
+    t.checkExpect(engine.moves, 2);
+    t.checkExpect(engine.open(9, 0).size(), 0);
+    t.checkExpect(engine.toggleFlag(-1, 3), -1);
+    t.checkExpect(engine.moves, 2);
+
+    // the same seed plays the same game
+    Engine again = new Engine(42L, 9, 9, 10, true);
+    again.open(4, 4);
+    again.toggleFlag(0, 8);
+    t.checkExpect(again.grid.board.cells, engine.grid.board.cells);
+  }
+
+  void testEngineRestart(Tester t) {
+    Engine engine = new Engine(42L, 9, 9, 10, false);
+    engine.open(4, 4);
+
+    // CHANGE
+    engine.restart(new Random(5));
+
+    // AFTER CHANGE
+    t.checkExpect(engine.moves, 0);
+    t.checkExpect(engine.grid.board.closedSafe, 71);
+    t.checkExpect(engine.grid.board.isOpen(40), false);
+  }
+
+  void testBenchmarkResult(Tester t) {
+    BenchmarkResult result = new BenchmarkResult("Grid.new", 9);
+    result.nanosPerOp.add(10.0);
+    result.nanosPerOp.add(14.0);
+    t.checkInexact(result.score(), 12.0, 0.001);
+    t.checkInexact(result.error(), Math.sqrt(8.0), 0.001);
+    t.checkExpect(result.toJson(),
+        "{\"benchmark\": \"Grid.new\", \"mode\": \"avgt\", \"params\": {\"size\": \"9x9\"}, "
+            + "\"primaryMetric\": {\"score\": 12.0, \"scoreError\": " + Math.sqrt(8.0)
+            + ", \"scoreUnit\": \"ns/op\", \"rawData\": [[10.0, 14.0]]}}");
+    t.checkExpect(result.summary(), "Grid.new 9x9: 12 ns/op");
+    t.checkExpect(Benchmarks.parseSizes("9, 100,4000"), new int[] { 9, 100, 4000 });
+  }
+
+  void testBenchmarksRunAll(Tester t) {
+    PrintStream console = System.out;
+    ByteArrayOutputStream printed = new ByteArrayOutputStream();
+    ArrayList<BenchmarkResult> results;
+    System.setOut(new PrintStream(printed));
+    try {
+      results = new Benchmarks(1, 1).runAll(9);
+    }
+    finally {
+      System.setOut(console);
+    }
+
+    // only main prints the results
+    t.checkExpect(printed.size(), 0);
+    t.checkExpect(results.size(), 11);
+    t.checkExpect(results.get(8).name, "Probability.probabilities");
+    t.checkExpect(results.get(9).name, "Board.recount");
+    t.checkExpect(results.get(5).name, "Cell.open.flood");
+    t.checkExpect(results.get(5).nanosPerOp.size(), 1);
+  }
+
+  void testSolverEvaluate(Tester t) {
+    Grid grid = new Grid(3, 2);
+    grid.board.placeMine(3);
+    grid.board.setOpen(0);
+    grid.board.setOpen(1);
+    Solver solver = new Solver(grid);
+
+    // CHANGE 1: the unknowns around 0 sit inside those around 1, with as many mines
+    solver.evaluate(1);
+
+    // AFTER CHANGE 1
+    t.checkExpect(grid.board.isOpen(2), true);
+    t.checkExpect(grid.board.isOpen(5), true);
+    t.checkExpect(grid.board.isOpen(3), false);
+    t.checkExpect(solver.moves, 1);
+    t.checkExpect(solver.status(), GameStatus.WON);
+    t.checkExpect(solver.propagate(), false);
+  }
+
+  void testSolverPropagate(Tester t) {
+    Grid grid = new Grid(3, 3);
+    grid.board.placeMine(0);
+    grid.board.placeMine(2);
+    grid.board.setOpen(1);
+    grid.board.setOpen(4);
+    Solver solver = new Solver(grid);
+    solver.queueAround(4);
+
+    // BEFORE CHANGE
+    t.checkExpect(solver.pending.size(), 2);
+
+    // CHANGE: both mines around 4 are among the unknowns around 1, so the bottom
+    // row is safe, and the rest follows
+    t.checkExpect(solver.propagate(), true);
+
+    // AFTER CHANGE
+    t.checkExpect(grid.board.isOpen(8), true);
+    t.checkExpect(grid.board.isOpen(3), true);
+    t.checkExpect(solver.status(), GameStatus.WON);
+  }
+
+  void testSolverUnknownAround(Tester t) {
+    this.init();
+    Solver solver = new Solver(this.world2.engine.grid);
+    IntList unknown = solver.unknownAround(0);
+    t.checkExpect(unknown.size(), 0);
+    t.checkExpect(solver.minesLeftAround(0), 1);
+    t.checkExpect(solver.unknownAround(2).size(), 0);
+    t.checkExpect(new Solver(this.grid2).unknownAround(6).size(), 9);
+  }
+
+  void testSolverSubsetLists(Tester t) {
+    Solver solver = new Solver(new Grid(3, 3));
+    IntList big = new IntList();
+    big.add(1);
+    big.add(4);
+    big.add(7);
+    IntList small = new IntList();
+    small.add(7);
+    small.add(1);
+    t.checkExpect(solver.containsAll(big, small), true);
+    t.checkExpect(solver.containsAll(small, big), false);
+    t.checkExpect(solver.contains(big, 4), true);
+    t.checkExpect(solver.contains(small, 4), false);
+
+    // CHANGE: the one cell around big but not small holds the one extra mine
+    t.checkExpect(solver.decideDifference(big, small, 1), true);
+
+    // AFTER CHANGE
+    t.checkExpect(solver.board.isFlagged(4), true);
+    t.checkExpect(solver.board.isFlagged(1), false);
+    t.checkExpect(solver.decideDifference(small, small, 0), false);
+  }
+
+  void testSolverSolve(Tester t) {
+    // a beginner board that needs no guesses
+    Solver noGuess = new Solver(new Grid(new Random(0), 9, 9, 10, true));
+    t.checkExpect(noGuess.solve(4, 4, false), GameStatus.WON);
+    t.checkExpect(noGuess.guesses, 0);
+
+    // and one that does
+    Solver stuck = new Solver(new Grid(new Random(1), 9, 9, 10, true));
+    t.checkExpect(stuck.solve(4, 4, false), GameStatus.PLAYING);
+    t.checkExpect(stuck.guesses, 0);
+
+    // with guessing, every game is played to the end
+    for (int seed = 0; seed < 20; seed++) {
+      Solver expert = new Solver(new Grid(new Random(seed), 30, 16, 99, true), new Random(seed));
+      t.checkExpect(expert.solve(15, 8, true) == GameStatus.PLAYING, false);
+    }
+    Solver won = new Solver(new Grid(new Random(4), 30, 16, 99, true));
+    t.checkExpect(won.solve(15, 8, true), GameStatus.WON);
+    t.checkExpect(won.grid.numFlags() <= 99, true);
+  }
+
+  void testSolverGuess(Tester t) {
+    // a row of five cells with one mine at 2, flagged, and the cells beside it
+    // open, so the random guess is 0 or 4
+    int zeros = 0;
+    Random rand = new Random(0);
+    for (int game = 0; game < 2000; game++) {
+      Grid row = new Grid(5, 1);
+      row.board.placeMine(2);
+      row.board.toggleFlag(2);
+      row.board.setOpen(1);
+      row.board.setOpen(3);
+      new Solver(row, rand).guess();
+      if (row.board.isOpen(0)) {
+        zeros++;
+      }
+    }
+
+    // every eligible cell is as likely as any other, whatever lies between them;
+    // starting a scan at a random cell would open 0 only a fifth of the time
+    t.checkExpect(zeros > 850 && zeros < 1150, true);
+
+    // a wrong flag leaves nothing to guess, for every kind of guess
+    Grid flagged = new Grid(3, 1);
+    flagged.board.placeMine(0);
+    flagged.board.setOpen(1);
+    flagged.board.toggleFlag(0);
+    flagged.board.toggleFlag(2);
+    t.checkExpect(new Solver(flagged).guess(), false);
+    t.checkExpect(new Solver(flagged, new Random(0)).guess(), false);
+    t.checkExpect(new Solver(flagged, 1).guess(), false);
+
+    // so solving stops there instead of guessing forever
+    Solver stuck = new Solver(flagged, new Random(0));
+    t.checkExpect(stuck.solve(1, 0, true), GameStatus.PLAYING);
+    t.checkExpect(stuck.guesses, 0);
+    t.checkExpect(new Solver(flagged, 1).solve(1, 0, true), GameStatus.PLAYING);
+  }
+
+  // a row of six cells with one mine at 2 and the cells at 1 and 3 open, so
+  // either 2 holds the mine or 0 and 4 both do; 5 is seen by no count
+  Grid linkedRow() {
+    Grid grid = new Grid(6, 1);
+    grid.board.placeMine(2);
+    grid.board.setOpen(1);
+    grid.board.setOpen(3);
+    return grid;
+  }
+
+  void testProbabilities(Tester t) {
+    ProbabilityEngine row = new ProbabilityEngine(this.linkedRow().board);
+    t.checkInexact(row.probabilities(2), new double[] { 0.5, 0, 0.5, 0, 0.5, 0.5 }, 0.000001);
+    t.checkInexact(row.probabilities(1), new double[] { 0, 0, 1, 0, 0, 0 }, 0.000001);
+    t.checkInexact(row.probabilities(3), new double[] { 1, 0, 0, 0, 1, 1 }, 0.000001);
+    t.checkExpect(Double.isNaN(row.probabilities(5)[0]), true);
+
+    // one count of 1 in the middle of a 3x3 board
+    Grid middle = new Grid(3, 3);
+    middle.board.placeMine(0);
+    middle.board.setOpen(4);
+    ProbabilityEngine odds = new ProbabilityEngine(middle.board);
+    t.checkInexact(odds.probabilities(1)[8], 0.125, 0.000001);
+    t.checkExpect(Double.isNaN(odds.probabilities(2)[8]), true);
+
+    // CHANGE: flag the mine
+    middle.board.toggleFlag(0);
+
+    // AFTER CHANGE
+    t.checkInexact(odds.probabilities(1), new double[] { 1, 0, 0, 0, 0, 0, 0, 0, 0 }, 0.000001);
+    t.checkExpect(Double.isNaN(odds.probabilities(2)[8]), true);
+
+    // with nothing open, every cell is as likely as any other
+    t.checkInexact(new ProbabilityEngine(new Grid(5, 5).board).probabilities(5)[12], 0.2,
+        0.000001);
+  }
+
+  void testProbabilityComponents(Tester t) {
+    ArrayList<FrontierComponent> row = new ProbabilityEngine(this.linkedRow().board)
+        .components();
+    t.checkExpect(row.size(), 1);
+    t.checkExpect(row.get(0).cells, new int[] { 0, 2, 4 });
+    t.checkExpect(row.get(0).mines, new int[] { 1, 1 });
+    t.checkExpect(row.get(0).key(), "0,2,4,|1:0,1,|1:1,2,");
+
+    // two counts that share no unknown cell are counted apart
+    Grid apart = new Grid(7, 1);
+    apart.board.placeMine(0);
+    apart.board.setOpen(1);
+    apart.board.setOpen(5);
+    ArrayList<FrontierComponent> two = new ProbabilityEngine(apart.board).components();
+    t.checkExpect(two.size(), 2);
+    t.checkExpect(two.get(1).cells, new int[] { 4, 6 });
+    t.checkExpect(two.get(1).mines, new int[] { 0 });
+    t.checkExpect(new ProbabilityEngine(new Grid(5, 5).board).components().size(), 0);
+  }
+
+  void testFrontierComponentCount(Tester t) {
+    FrontierComponent c = new ProbabilityEngine(this.linkedRow().board).components().get(0);
+    ComponentOdds odds = c.count();
+    t.checkExpect(odds.ways, new double[] { 0, 1, 1, 0 });
+    t.checkExpect(odds.mineWays[0], new double[] { 0, 0, 1, 0 });
+    t.checkExpect(odds.mineWays[1], new double[] { 0, 1, 0, 0 });
+    t.checkExpect(c.memoKey(1, new int[] { 1, 1 }), "1,0=1");
+    t.checkExpect(c.memoKey(2, new int[] { 0, 1 }), "2,1=1");
+    t.checkExpect(c.memoKey(0, new int[] { 1, 1 }), "0");
+    t.checkExpect(c.fits(0, 1, new int[] { 1, 1 }, new int[] { 2, 2 }), true);
+    t.checkExpect(c.fits(1, 1, new int[] { 0, 1 }, new int[] { 1, 2 }), false);
+    t.checkExpect(c.fits(1, 0, new int[] { 1, 1 }, new int[] { 1, 2 }), false);
+  }
+
+  void testComponentOdds(Tester t) {
+    ComponentOdds last = ComponentOdds.empty(2, 1);
+    last.add(ComponentOdds.empty(2, 2), 1, true);
+    t.checkExpect(last.ways, new double[] { 1, 1 });
+    t.checkExpect(last.mineWays[0], new double[] { 0, 1 });
+
+    ComponentOdds both = ComponentOdds.none(2, 0);
+    t.checkExpect(both.ways, new double[] { 0, 0, 0 });
+
+    // CHANGE: the first cell empty, then holding a mine
+    both.add(last, 0, false);
+    both.add(last, 0, true);
+
+    // AFTER CHANGE
+    t.checkExpect(both.ways, new double[] { 1, 2, 1 });
+    t.checkExpect(both.mineWays[0], new double[] { 0, 1, 1 });
+    t.checkExpect(both.mineWays[1], new double[] { 0, 1, 1 });
+    t.checkExpect(both.normalized().ways, new double[] { 0.5, 1, 0.5 });
+    t.checkExpect(both.normalized().mineWays[1], new double[] { 0, 0.5, 0.5 });
+    t.checkExpect(ComponentOdds.none(2, 0).normalized().ways, new double[] { 0, 0, 0 });
+  }
+
+  void testProbabilityHelpers(Tester t) {
+    ProbabilityEngine odds = new ProbabilityEngine(new Grid(5, 5).board);
+    t.checkExpect(ProbabilityEngine.convolve(new double[] { 1, 1 }, new double[] { 1, 2 }),
+        new double[] { 1, 3, 2 });
+    t.checkInexact(odds.logChoose(5, 2), Math.log(10), 0.000001);
+    t.checkInexact(odds.logChoose(4, 0), 0.0, 0.000001);
+    t.checkInexact(odds.scaledBinomials(2, 2, 2), new double[] { 0.5, 1, 0.5 }, 0.000001);
+    t.checkInexact(odds.scaledBinomials(1, 0, 1), new double[] { 1, 0 }, 0.000001);
+
+    // the same component is counted once
+    FrontierComponent c = new ProbabilityEngine(this.linkedRow().board).components().get(0);
+    ComponentOdds counted = odds.oddsOf(c);
+    t.checkExpect(odds.oddsOf(c) == counted, true);
+    t.checkExpect(odds.cache.size(), 1);
+  }
+
+  void testSolverGuessSafest(Tester t) {
+    Solver sure = new Solver(this.linkedRow(), 1);
+
+    // CHANGE: with only one mine, it must be at 2
+    sure.guess();
+
+    // AFTER CHANGE
+    t.checkExpect(sure.board.isOpen(0), true);
+    t.checkExpect(sure.guesses, 0);
+    t.checkExpect(sure.moves, 1);
+
+    Grid even = new Grid(3, 1);
+    even.board.placeMine(0);
+    even.board.setOpen(1);
+    Solver coin = new Solver(even, 1);
+
+    // CHANGE: 0 and 2 are equally likely, so 0 is opened
+    coin.guess();
+
+    // AFTER CHANGE
+    t.checkExpect(coin.guesses, 1);
+    t.checkExpect(coin.status(), GameStatus.LOST);
+
+    for (int seed = 0; seed < 5; seed++) {
+      Solver expert = new Solver(new Grid(new Random(seed), 30, 16, 99, true), 99);
+      t.checkExpect(expert.solve(15, 8, true) == GameStatus.PLAYING, false);
+    }
+  }
+
+  void testWinRateStats(Tester t) {
+    t.checkExpect(WinRateStats.bucket(0), 0);
+    t.checkExpect(WinRateStats.bucket(1), 1);
+    t.checkExpect(WinRateStats.bucket(3), 2);
+    t.checkExpect(WinRateStats.bucket(4), 3);
+    t.checkExpect(WinRateStats.bucket(Long.MAX_VALUE), 63);
+    WinRateStats stats = new WinRateStats();
+    t.checkExpect(stats.winRate(), 0.0);
+    t.checkExpect(stats.margin(), 0.0);
+
+    // CHANGE: two games
+    stats.record(GameStatus.WON, 5, 100);
+    stats.record(GameStatus.LOST, 1, -1);
+
+    // AFTER CHANGE
+    t.checkExpect(stats.games, 2L);
+    t.checkExpect(stats.wins, 1L);
+    t.checkExpect(stats.losses, 1L);
+    t.checkExpect(stats.moves[3], 1L);
+    t.checkExpect(stats.nanos[0], 1L);
+    t.checkExpect(stats.winRate(), 0.5);
+    t.checkInexact(stats.margin(), 0.69296, 0.0001);
+    t.checkExpect(WinRateStats.histogram(stats.moves), "  1-1: 1\n  4-7: 1\n");
+
+    WinRateStats more = new WinRateStats();
+    more.record(GameStatus.WON, 6, 100);
+
+    // CHANGE: merge another batch
+    stats.merge(more);
+
+    // AFTER CHANGE
+    t.checkExpect(stats.games, 3L);
+    t.checkExpect(stats.wins, 2L);
+    t.checkExpect(stats.moves[3], 2L);
+    t.checkExpect(stats.nanos[7], 2L);
+    t.checkExpect(stats.summary().startsWith("games: 3\nwins: 2\nlosses: 1\n"), true);
+  }
+
+  void testWinRates(Tester t) {
+    WinRates random = new WinRates(9, 9, 10, true, false);
+    t.checkExpect(random.solverFor(3).rand == null, false);
+    t.checkExpect(random.solverFor(3).odds, null);
+    t.checkExpect(new WinRates(9, 9, 10, true, true).solverFor(3).odds == null, false);
+
+    // the tallies depend only on the seeds, not on how they are split
+    WinRateStats alone = random.play(0, 600);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    WinRateStats split = random.estimate(pool, 0, 600);
+    pool.shutdown();
+    t.checkExpect(split.games, 600L);
+    t.checkExpect(split.wins, alone.wins);
+    t.checkExpect(split.losses, alone.losses);
+    t.checkExpect(split.moves, alone.moves);
+    t.checkExpect(split.wins + split.losses, 600L);
+    t.checkExpect(alone.wins > 300, true);
+    t.checkExpect(new WinRateTask(random, 5, 9).compute().games, 4L);
+
+    // without first-click safety, some games end on the first click
+    WinRateStats unsafe = new WinRates(9, 9, 40, false, false).play(0, 50);
+    t.checkExpect(unsafe.moves[1] > 0, true);
+
+    // games with consecutive seeds draw unrelated numbers from the start
+    t.checkExpect(WinRates.mix(7), WinRates.mix(7));
+    int zeros = 0;
+    for (int seed = 0; seed < 2000; seed++) {
+      if (new Random(WinRates.mix(seed)).nextInt(2) == 0) {
+        zeros++;
+      }
+    }
+    t.checkExpect(zeros > 850 && zeros < 1150, true);
+  }
+
+  void testChunk(Tester t) {
+    t.checkExpect(Chunk.key(0, 0), 0L);
+    t.checkExpect(Chunk.key(1, -1), 0x1FFFFFFFFL);
+    t.checkExpect(Chunk.local(-1), 63);
+    t.checkExpect(Chunk.local(130), 2);
+    t.checkExpect(Chunk.seed(5, 1, 2) == Chunk.seed(5, 2, 1), false);
+    t.checkExpect(Chunk.seed(5, 1, 2), Chunk.seed(5, 1, 2));
+
+    Chunk far = new Chunk(3, 3, new Random(1), 600);
+    t.checkExpect(far.mineCount(), 600);
+    Chunk full = new Chunk(3, 3, new Random(1), 64 * 64);
+    t.checkExpect(full.mineCount(), 64 * 64);
+    t.checkExpect(full.surroundingMines(5, 5), 8);
+
+    // the cells around (0, 0) are cleared wherever they fall
+    Chunk origin = new Chunk(0, 0, new Random(1), 64 * 64);
+    t.checkExpect(origin.mineCount(), 64 * 64 - 4);
+    t.checkExpect(origin.hasMine(1, 1), false);
+    t.checkExpect(origin.hasMine(2, 1), true);
+    t.checkExpect(new Chunk(-1, -1, new Random(1), 64 * 64).hasMine(63, 63), false);
+    t.checkExpect(origin.surroundingMines(1, 1), 5);
+
+    Chunk one = new Chunk(5, 5, new Random(1), 0);
+    one.setMine(64 * 3 + 4);
+    t.checkExpect(one.hasMine(4, 3), true);
+    t.checkExpect(one.surroundingMines(5, 4), 1);
+    t.checkExpect(one.surroundingMines(4, 3), 0);
+    t.checkExpect(one.isOpen(4, 3), false);
+    t.checkExpect(one.isFlagged(4, 3), false);
+  }
+
+  void testChunkedBoardMines(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("Mine density must be at least 0 and below 1"),
+        "ChunkedBoard", 1L, 1.0);
+    ChunkedBoard board = new ChunkedBoard(7, 0.15);
+    t.checkExpect(board.minesPerChunk, 614);
+    t.checkExpect(board.chunkCount(), 0);
+
+    // only looking at a cell's state creates nothing
+    t.checkExpect(board.isOpen(1000, -1000), false);
+    t.checkExpect(board.isFlagged(1000, -1000), false);
+    t.checkExpect(board.chunkCount(), 0);
+
+    // the same seed gives the same mines, explored in any order
+    ChunkedBoard again = new ChunkedBoard(7, 0.15);
+    t.checkExpect(again.hasMine(-5000, 9000) == board.hasMine(-5000, 9000), true);
+    t.checkExpect(board.chunkCount(), 1);
+    boolean same = true;
+    for (int x = 100; x < 300; x += 7) {
+      same = same && board.hasMine(x, -x) == again.hasMine(x, -x);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(board.existingChunkAt(-5000, 9000) == null, false);
+    t.checkExpect(board.existingChunkAt(-5000, 90000), null);
+
+    // counts across chunk corners match the mines around them
+    boolean counts = true;
+    for (int y = -66; y < -60; y++) {
+      for (int x = 60; x < 68; x++) {
+        int mines = 0;
+        for (int ny = y - 1; ny <= y + 1; ny++) {
+          for (int nx = x - 1; nx <= x + 1; nx++) {
+            if ((nx != x || ny != y) && board.hasMine(nx, ny)) {
+              mines++;
+            }
+          }
+        }
+        counts = counts && mines == board.surroundingMines(x, y);
+      }
+    }
+    t.checkExpect(counts, true);
+  }
+
+  void testChunkedBoardOpen(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(1, 0.15);
+
+    // CHANGE: the first click at the origin is safe
+    IntList opened = board.open(0, 0);
+
+    // AFTER CHANGE
+    t.checkExpect(opened.size(), 142);
+    t.checkExpect(board.openSafe, 71L);
+    t.checkExpect(board.exploded, false);
+    t.checkExpect(board.isOpen(0, 0), true);
+    t.checkExpect(board.surroundingMines(0, 0), 0);
+    t.checkExpect(board.chunkCount(), 4);
+    t.checkExpect(board.open(0, 0).size(), 0);
+
+    ChunkedBoard flags = new ChunkedBoard(1, 0.0);
+    flags.toggleFlag(3, 3);
+    t.checkExpect(flags.numFlags, 1);
+    t.checkExpect(flags.isFlagged(3, 3), true);
+    t.checkExpect(flags.surroundingFlags(2, 2), 1);
+    t.checkExpect(flags.open(3, 3).size(), 0);
+    flags.toggleFlag(3, 3);
+    t.checkExpect(flags.numFlags, 0);
+
+    // CHANGE: a flood on an empty board stops at the limit
+    flags.toggleFlag(0, 1);
+    IntList huge = flags.open(0, 0);
+
+    // AFTER CHANGE
+    t.checkExpect(huge.size() / 2 >= ChunkedBoard.FLOOD_LIMIT, true);
+    t.checkExpect(huge.size() / 2 < ChunkedBoard.FLOOD_LIMIT + 8, true);
+    t.checkExpect(flags.isOpen(0, 1), false);
+    flags.toggleFlag(0, 0);
+    t.checkExpect(flags.numFlags, 1);
+
+    ChunkedBoard full = new ChunkedBoard(1, 0.99);
+    full.open(0, 0);
+
+    // BEFORE CHANGE
+    t.checkExpect(full.exploded, false);
+    t.checkExpect(full.hasMine(2, 0), true);
+
+    // CHANGE: open a mine
+    t.checkExpect(full.open(2, 0).size(), 2);
+
+    // AFTER CHANGE
+    t.checkExpect(full.exploded, true);
+    t.checkExpect(full.openSafe, 9L);
+  }
+
+  void testBoardCell(Tester t) {
+    Board board = new Board(3, 1);
+    board.placeMine(0);
+    t.checkExpect(board.cell(0), Board.MINE);
+    t.checkExpect(board.cell(1), 1);
+
+    // CHANGE
+    board.setCell(2, Board.FLAG | 3);
+
+    // AFTER CHANGE
+    t.checkExpect(board.isFlagged(2), true);
+    t.checkExpect(board.surroundingMines(2), 3);
+    t.checkExpect(board.cells[2], (byte) 0x43);
+
+    Grid over = new Grid(board, this.testRand, 1);
+    t.checkExpect(over.board, board);
+    t.checkExpect(over.pendingMines, 1);
+  }
+
+  // the message of the IOException thrown when opening the given path as a
+  // board file, or "" if none is thrown
+  String openError(Path path) {
+    try {
+      BoardFile.open(path).close();
+      return "";
+    }
+    catch (IOException e) {
+      return e.getMessage();
+    }
+  }
+
+  void testBoardFile(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".mswb");
+    Grid grid = new Grid(new Random(5), 20, 10, 30);
+    grid.openCell(3, 3);
+    grid.toggleFlag(19, 9);
+    BoardFile saved = BoardFile.save(path, grid, 30, 5);
+    t.checkExpect(Files.size(path), 64L + 200);
+    t.checkExpect(saved.header.getInt(0), BoardFile.MAGIC);
+    t.checkExpect(saved.grid.board instanceof MappedBoard, true);
+    saved.close();
+
+    BoardFile opened = BoardFile.open(path);
+    Board board = opened.grid.board;
+    t.checkExpect(opened.numMines, 30);
+    t.checkExpect(opened.seed, 5L);
+    t.checkExpect(board.width, 20);
+    t.checkExpect(board.numFlags, 1);
+    t.checkExpect(board.closedSafe, grid.board.closedSafe);
+    boolean same = true;
+    for (int i = 0; i < 200; i++) {
+      same = same && board.cell(i) == grid.board.cell(i);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(board.countersMatchScan(), true);
+
+    // CHANGE: moves on the mapped board are written to the file
+    Engine engine = opened.engine();
+    engine.toggleFlag(19, 9);
+    engine.toggleFlag(0, 9);
+    opened.close();
+
+    // AFTER CHANGE
+    BoardFile reopened = BoardFile.open(path);
+    t.checkExpect(reopened.grid.board.numFlags, 1);
+    t.checkExpect(reopened.grid.board.isFlagged(reopened.grid.board.index(0, 9)), true);
+    t.checkExpect(reopened.grid.board.isFlagged(199), false);
+    reopened.close();
+    Files.delete(path);
+  }
+
+  void testBoardFileCreate(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".mswb");
+    BoardFile safe = BoardFile.create(path, 9, 9, 10, 4, true);
+    t.checkExpect(safe.grid.pendingMines, 10);
+    safe.close();
+
+    // CHANGE: the mines are placed from the seed on the first click
+    BoardFile first = BoardFile.open(path);
+    first.grid.openCell(4, 4);
+    first.close();
+
+    // AFTER CHANGE
+    Grid expected = new Grid(new Random(4), 9, 9, 10, true);
+    expected.openCell(4, 4);
+    BoardFile played = BoardFile.open(path);
+    t.checkExpect(played.grid.pendingMines, 0);
+    t.checkExpect(played.grid.board.closedSafe, expected.board.closedSafe);
+    t.checkExpect(played.grid.board.countersMatchScan(), true);
+    t.checkExpect(played.engine().status(), GameStatus.PLAYING);
+    played.close();
+
+    BoardFile placed = BoardFile.create(path, 9, 9, 10, 4, false);
+    t.checkExpect(placed.grid.board.closedSafe, 71);
+    t.checkExpect(placed.grid.board.hasMine(0), new Grid(new Random(4), 9, 9, 10).board.hasMine(0));
+    placed.close();
+    String message = "";
+    try {
+      BoardFile.create(path, 2, 2, 4, 0, true);
+    }
+    catch (IllegalArgumentException e) {
+      message = e.getMessage();
+    }
+    t.checkExpect(message, "Cannot place 4 mines on 3 tiles");
+    Files.delete(path);
+  }
+
+  void testBoardFileUnclosed(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".mswb");
+    BoardFile first = BoardFile.create(path, 9, 9, 10, 42, true);
+    t.checkExpect(first.header.getInt(BoardFile.IN_USE), 1);
+    first.engine().open(4, 4);
+    first.engine().toggleFlag(0, 0);
+
+    // CHANGE: open it again without closing it, as after a crash
+    BoardFile reopened = BoardFile.open(path);
+
+    // AFTER CHANGE: the totals come from the tiles, and no more mines are placed
+    Board board = reopened.grid.board;
+    t.checkExpect(reopened.grid.pendingMines, 0);
+    t.checkExpect(board.closedSafe, first.grid.board.closedSafe);
+    t.checkExpect(board.numFlags, 1);
+    t.checkExpect(board.countersMatchScan(), true);
+    Engine engine = reopened.engine();
+    int safe = 0;
+    while (board.hasMine(safe) || board.isOpen(safe)) {
+      safe++;
+    }
+    engine.open(safe % 9, safe / 9);
+    t.checkExpect(new Bitboard(board).mineCount(), 10);
+    t.checkExpect(engine.status() == GameStatus.LOST, false);
+    reopened.close();
+    first.channel.close();
+
+    // a file that was closed is trusted as it is
+    BoardFile closed = BoardFile.open(path);
+    t.checkExpect(closed.header.getInt(BoardFile.IN_USE), 1);
+    t.checkExpect(closed.grid.board.countersMatchScan(), true);
+    closed.close();
+
+    // a file left partway through placing its mines is refused
+    BoardFile placing = BoardFile.create(path, 9, 9, 10, 42, true);
+    for (int i = 0; i < 3; i++) {
+      placing.grid.board.placeMine(i);
+    }
+    t.checkExpect(this.openError(path), "Board file holds 3 of its 10 mines: " + path);
+    for (int i = 3; i < 10; i++) {
+      placing.grid.board.placeMine(i);
+    }
+    placing.grid.board.setCell(80, 5);
+    t.checkExpect(this.openError(path), "Board file's counts do not match its mines: " + path);
+    placing.grid.board.setCell(80, 0);
+    t.checkExpect(this.openError(path), "");
+    placing.channel.close();
+    Files.delete(path);
+  }
+
+  void testBoardFileErrors(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".mswb");
+    t.checkExpect(this.openError(path), "Not a board file: " + path);
+    Files.write(path, new byte[100]);
+    t.checkExpect(this.openError(path), "Not a board file: " + path);
+
+    BoardFile.create(path, 4, 4, 2, 0, false).close();
+    t.checkExpect(this.openError(path), "");
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    channel.truncate(70);
+    channel.close();
+    t.checkExpect(this.openError(path), "Truncated board file: " + path);
+
+    BoardFile.create(path, 4, 4, 2, 0, false).close();
+    channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 9 }), 4);
+    channel.close();
+    t.checkExpect(this.openError(path), "Unsupported board file version 9");
+    Files.delete(path);
+  }
+
+  void testGameResult(Tester t) {
+    ByteBuffer buffer = ByteBuffer.allocate(2 * ScoreStore.RECORD_SIZE);
+    new GameResult(30, 16, 99, -5, 1234, 80, 1700000000000L, true).write(buffer);
+    new GameResult(9, 9, 10, GameResult.NO_SEED, 7, 3, 1, false).write(buffer);
+    t.checkExpect(buffer.position(), 2 * ScoreStore.RECORD_SIZE);
+    buffer.flip();
+    t.checkExpect(GameResult.read(buffer),
+        new GameResult(30, 16, 99, -5, 1234, 80, 1700000000000L, true));
+    t.checkExpect(GameResult.read(buffer),
+        new GameResult(9, 9, 10, GameResult.NO_SEED, 7, 3, 1, false));
+    t.checkExpect(buffer.hasRemaining(), false);
+  }
+
+  void testScoreIndex(Tester t) {
+    ScoreIndex scores = new ScoreIndex("9x9/10");
+    t.checkExpect(scores.best(), -1);
+    t.checkExpect(scores.winRate(), 0.0);
+    scores.add(new GameResult(9, 9, 10, 1, 50, 10, 0, true), 0);
+    scores.add(new GameResult(9, 9, 10, 2, 5, 2, 0, false), 3);
+    scores.add(new GameResult(9, 9, 10, 3, 20, 8, 0, true), 4);
+    scores.add(new GameResult(9, 9, 10, 4, 90, 12, 0, true), 7);
+    t.checkExpect(scores.games, 4);
+    t.checkExpect(scores.wins, 3);
+    t.checkExpect(scores.best(), 20);
+    t.checkExpect(scores.percentile(50), 50L);
+    t.checkExpect(scores.percentile(100), 90L);
+    t.checkExpect(scores.winRate(), 0.75);
+    t.checkExpect(scores.records.get(3), 7);
+  }
+
+  void testScoreStoreKey(Tester t) {
+    t.checkExpect(ScoreStore.key(30, 16, 99), 0x001E0010_00000063L);
+    t.checkExpect(ScoreStore.key(16, 30, 99) != ScoreStore.key(30, 16, 99), true);
+    t.checkExpect(ScoreStore.key(65535, 65535, Integer.MAX_VALUE),
+        0xFFFFFFFF_7FFFFFFFL);
+    String message = "";
+    try {
+      ScoreStore.key(65536, 1, 1);
+    }
+    catch (IllegalArgumentException e) {
+      message = e.getMessage();
+    }
+    t.checkExpect(message, "Cannot keep scores for boards wider or taller than 65535 tiles");
+  }
+
+  // the message of the IOException thrown when opening the given path as a
+  // score file, or "" if none is thrown
+  String scoreError(Path path) {
+    try {
+      ScoreStore.open(path).close();
+      return "";
+    }
+    catch (IOException e) {
+      return e.getMessage();
+    }
+  }
+
+  void testScoreStore(Tester t) throws IOException {
+    Path path = Files.createTempFile("scores", ".mssc");
+    ScoreStore store = ScoreStore.open(path);
+    t.checkExpect(Files.size(path), (long) ScoreStore.HEADER_SIZE);
+    t.checkExpect(store.scores(9, 9, 10), null);
+    t.checkExpect(store.games(9, 9, 10), new ArrayList<GameResult>());
+
+    // CHANGE: results are indexed at once and written behind the game's back
+    for (int k = 0; k < 100; k++) {
+      store.add(new GameResult(9, 9, 10, k, 100 - k, k, k, k % 4 != 0));
+    }
+    store.add(new GameResult(30, 16, 99, 7, 300, 90, 5, true));
+
+    // AFTER CHANGE
+    t.checkExpect(store.scores(9, 9, 10).games, 100);
+    t.checkExpect(store.scores(9, 9, 10).best(), 1);
+    t.checkExpect(store.scores(30, 16, 99).wins, 1);
+    store.flush();
+    t.checkExpect(store.durable, 101);
+    t.checkExpect(Files.size(path), ScoreStore.HEADER_SIZE + 101L * ScoreStore.RECORD_SIZE);
+    ArrayList<GameResult> expert = store.games(30, 16, 99);
+    t.checkExpect(expert.size(), 1);
+    t.checkExpect(expert.get(0), new GameResult(30, 16, 99, 7, 300, 90, 5, true));
+    t.checkExpect(store.games(9, 9, 10).get(42), new GameResult(9, 9, 10, 42, 58, 42, 42, true));
+    store.close();
+
+    // the index is rebuilt from the file, and a record cut short is dropped
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 9, 0, 0 }), channel.size());
+    channel.close();
+    ScoreStore reopened = ScoreStore.open(path);
+    t.checkExpect(Files.size(path), ScoreStore.HEADER_SIZE + 101L * ScoreStore.RECORD_SIZE);
+    t.checkExpect(reopened.records, 101);
+    t.checkExpect(reopened.scores(9, 9, 10).games, 100);
+    t.checkExpect(reopened.scores(9, 9, 10).wins, 75);
+    t.checkExpect(reopened.scores(9, 9, 10).best(), 1);
+    t.checkExpect(reopened.scores(9, 9, 10).percentile(100), 99L);
+    t.checkExpect(reopened.scores(30, 16, 99).best(), 300);
+    reopened.add(new GameResult(30, 16, 99, 8, 200, 70, 6, true));
+    reopened.close();
+    t.checkExpect(ScoreStore.open(path).games(30, 16, 99).get(1).ticks, 200);
+    Files.delete(path);
+  }
+
+  void testScoreStoreErrors(Tester t) throws IOException {
+    Path path = Files.createTempFile("scores", ".mssc");
+    Files.write(path, new byte[] { 1, 2, 3 });
+    t.checkExpect(this.scoreError(path), "Not a score file: " + path);
+    Files.write(path, new byte[100]);
+    t.checkExpect(this.scoreError(path), "Not a score file: " + path);
+    Files.write(path, new byte[] { 0x4D, 0x53, 0x53, 0x43, 0, 0, 0, 2 });
+    t.checkExpect(this.scoreError(path), "Unsupported score file version 2");
+    Files.delete(path);
+    t.checkExpect(this.scoreError(path), "");
+    Files.delete(path);
+  }
+
+  void testGameScores(Tester t) throws IOException {
+    Path path = Files.createTempFile("scores", ".mssc");
+    ScoreStore store = ScoreStore.open(path);
+    Grid grid = new Grid(3, 2);
+    grid.board.placeMine(3);
+    Game game = new Game(new Engine(grid, 1));
+    game.keepScores(store);
+    game.onTick();
+    game.onTick();
+
+    // CHANGE 1: win by opening every safe tile
+    game.onMouseClicked(new Posn(15, 15), "LeftButton");
+    game.onMouseClicked(new Posn(45, 15), "LeftButton");
+    game.onMouseClicked(new Posn(75, 15), "LeftButton");
+
+    // AFTER CHANGE 1
+    t.checkExpect(store.scores(3, 2, 1).wins, 1);
+    t.checkExpect(store.scores(3, 2, 1).best(), 2);
+
+    // CHANGE 2: a seeded game is lost
+    Game seeded = new Game(4, 10, 9, 9);
+    seeded.keepScores(store);
+    seeded.onMouseClicked(new Posn(135, 135), "LeftButton");
+    int mine = 0;
+    while (!seeded.engine.grid.board.hasMine(mine)) {
+      mine++;
+    }
+    seeded.onMouseClicked(new Posn(mine % 9 * 30 + 15, mine / 9 * 30 + 15), "LeftButton");
+
+    // AFTER CHANGE 2
+    ArrayList<GameResult> lost = store.games(9, 9, 10);
+    t.checkExpect(lost.size(), 1);
+    t.checkExpect(lost.get(0).seed, 4L);
+    t.checkExpect(lost.get(0).won, false);
+    t.checkExpect(lost.get(0).moves, 2);
+    t.checkExpect(store.games(3, 2, 1).get(0).seed, GameResult.NO_SEED);
+    store.close();
+    Files.delete(path);
+  }
+
+  void testVarint(Tester t) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MoveJournal.writeVarint(out, 0);
+    MoveJournal.writeVarint(out, 127);
+    MoveJournal.writeVarint(out, 128);
+    MoveJournal.writeVarint(out, 300);
+    MoveJournal.writeVarint(out, Integer.MAX_VALUE);
+    t.checkExpect(out.toByteArray(), new byte[] { 0, 127, (byte) 0x80, 1, (byte) 0xAC, 2,
+        -1, -1, -1, -1, 7 });
+    MoveJournal.writeVarint(out, -1L);
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), 0L);
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), 127L);
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), 128L);
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), 300L);
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), (long) Integer.MAX_VALUE);
+    t.checkExpect(MoveJournal.readVarint(in, "a record"), -1L);
+    t.checkException(new EOFException("Journal ends inside a record"), new MoveJournal(
+        new ByteArrayOutputStream(), new Engine(new Grid(5, 5), 0), 0), "readVarint",
+        new ByteArrayInputStream(new byte[0]), "a record");
+    t.checkException(new EOFException("Journal ends inside a record"), new MoveJournal(
+        new ByteArrayOutputStream(), new Engine(new Grid(5, 5), 0), 0), "readVarint",
+        new ByteArrayInputStream(new byte[] { (byte) 0x80 }), "a record");
+    t.checkException(new IOException("Varint longer than 10 bytes"), new MoveJournal(
+        new ByteArrayOutputStream(), new Engine(new Grid(5, 5), 0), 0), "readVarint",
+        new ByteArrayInputStream(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1 }),
+        "a record");
+    t.checkException(new EOFException("Journal ends inside its header"),
+        this.replayerOf(new byte[0]), "readField", new ByteArrayInputStream(new byte[0]),
+        "its header");
+    t.checkException(new IOException("Journal holds too large a number inside its header"),
+        this.replayerOf(new byte[0]), "readField",
+        new ByteArrayInputStream(new byte[] { -1, -1, -1, -1, 16 }), "its header");
+  }
+
+  // a replayer for a journal of a 5x5 game from seed 1 with the given records
+  JournalReplayer replayerOf(byte[] records) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new MoveJournal(out, new Engine(1, 5, 5, 3, true), 1);
+    out.write(records, 0, records.length);
+    try {
+      return new JournalReplayer(new ByteArrayInputStream(out.toByteArray()));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void testMoveJournal(Tester t) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MoveJournal journal = new MoveJournal(out, new Engine(1, 30, 16, 99, true), 258);
+    t.checkExpect(out.toByteArray(), new byte[] { 'M', 'S', 'W', 'J', 1, 30, 16, 99, 1,
+        0, 0, 0, 0, 0, 0, 1, 2 });
+
+    // CHANGE: open cell 40 on tick 3, flag cell 0 on tick 3, and restart on tick 200
+    out.reset();
+    journal.open(40, 3);
+    journal.flag(0, 3);
+    journal.restart(7, 200);
+
+    // AFTER CHANGE
+    t.checkExpect(out.toByteArray(), new byte[] { (byte) 0xA0, 1, 3, 1, 0, 2,
+        (byte) 0xC5, 1, 0, 0, 0, 0, 0, 0, 0, 7 });
+    t.checkExpect(journal.lastTick, 0);
+
+    // CHANGE: open the last cell of a board of 2^31 - 1 cells, whose key does not
+    // fit in an int
+    out.reset();
+    journal.open(Integer.MAX_VALUE - 1, 0);
+
+    // AFTER CHANGE: the key is 4 * (2^31 - 2), written unsigned
+    t.checkExpect(out.toByteArray(), new byte[] { (byte) 0xF8, -1, -1, -1, 31, 0 });
+  }
+
+  void testJournalReplayer(Tester t) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Game game = new Game(11, 10, 9, 9, out);
+    game.onTick();
+    game.onMouseClicked(new Posn(135, 135), "LeftButton");
+    game.onTick();
+    game.onTick();
+    game.onMouseClicked(new Posn(5, 5), "RightButton");
+    game.onMouseClicked(new Posn(5, 5), "RightButton");
+    game.onMouseClicked(new Posn(35, 5), "RightButton");
+    int firstGameOpen = game.engine.grid.board.closedSafe;
+    game.onKeyEvent("r");
+    game.onTick();
+    game.onMouseClicked(new Posn(15, 255), "LeftButton");
+    game.onMouseClicked(new Posn(999, 5), "LeftButton");
+
+    JournalReplayer replay = new JournalReplayer(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(replay.engine.numMines, 10);
+    t.checkExpect(replay.engine.firstClickSafe, true);
+
+    // CHANGE: replay the first game
+    t.checkExpect(replay.replayTo(4), 4);
+
+    // AFTER CHANGE
+    t.checkExpect(replay.tick, 3);
+    t.checkExpect(replay.engine.grid.board.closedSafe, firstGameOpen);
+    t.checkExpect(replay.engine.grid.board.isFlagged(1), true);
+    t.checkExpect(replay.engine.grid.board.isFlagged(0), false);
+
+    // CHANGE: replay the rest
+    t.checkExpect(replay.replayTo(100), 6);
+
+    // AFTER CHANGE
+    t.checkExpect(replay.step(), false);
+    t.checkExpect(replay.tick, 1);
+    t.checkExpect(replay.engine.grid.board.cells, game.engine.grid.board.cells);
+    t.checkExpect(replay.engine.moves, game.engine.moves);
+  }
+
+  void testJournalReplayerErrors(Tester t) {
+    t.checkConstructorException(new IOException("Not a move journal"), "JournalReplayer",
+        new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+    t.checkConstructorException(new IOException("Unsupported move journal version 2"),
+        "JournalReplayer", new ByteArrayInputStream(new byte[] { 'M', 'S', 'W', 'J', 2 }));
+    t.checkConstructorException(new EOFException("Journal ends inside its header"),
+        "JournalReplayer", new ByteArrayInputStream(new byte[] { 'M', 'S', 'W', 'J', 1 }));
+    t.checkException(new IOException("Unknown journal action 3"),
+        this.replayerOf(new byte[] { 3, 0 }), "step");
+    t.checkException(new EOFException("Journal ends inside a record"),
+        this.replayerOf(new byte[] { 0 }), "step");
+    t.checkException(new EOFException(), this.replayerOf(new byte[] { 2, 0, 1 }), "step");
+    t.checkException(new IOException("Journal names cell 25, which is not on the board"),
+        this.replayerOf(new byte[] { 100, 0 }), "step");
+    t.checkException(new IOException("Journal names cell 2147483646, which is not on the board"),
+        this.replayerOf(new byte[] { (byte) 0xF8, -1, -1, -1, 31, 0 }), "step");
+  }
+
+  void testGameServerHandle(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 1000);
+    t.checkExpect(server.handle("NEW 9 9 10 4", 0), "SESSION 1");
+    t.checkExpect(server.handle("NEW 9 9 10", 0), "SESSION 2");
+    Engine local = new Engine(4, 9, 9, 10, true);
+
+    // CHANGE: play the same moves on the server and locally
+    String opened = server.handle("OPEN 1 4 4", 5);
+    IntList cells = local.open(4, 4);
+
+    // AFTER CHANGE
+    t.checkExpect(opened.startsWith("OK " + local.status() + " 40:"), true);
+    t.checkExpect(opened.split(" ").length, cells.size() + 2);
+    t.checkExpect(server.handle("STATE 1", 5), "OK " + local.status() + " 1 10");
+    t.checkExpect(server.handle("FLAG 1 0 0", 5), "OK PLAYING 9");
+    t.checkExpect(server.handle("FLAG 1 0 0", 5), "OK PLAYING 10");
+    t.checkExpect(server.handle("CHORD 1 4 4", 5).startsWith("OK "), true);
+    t.checkExpect(((GameSession) server.sessions.get(1L)).engine.moves, 4);
+    t.checkExpect(server.handle("RESTART 1 4", 5), "OK PLAYING");
+    t.checkExpect(server.handle("STATE 1", 5), "OK PLAYING 0 10");
+    t.checkExpect(server.handle("RESTART 1", 5), "OK PLAYING");
+    t.checkExpect(server.handle("QUIT", 5), "BYE");
+    server.close();
+  }
+
+  void testGameServerErrors(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 1000);
+    server.handle("NEW 4 4 3 1", 0);
+    t.checkExpect(server.handle("NEW 4 4", 0), "ERR Expected NEW width height mines [seed]");
+    t.checkExpect(server.handle("NEW 0 4 1", 0),
+        "ERR Board must have between 1 and 1048576 tiles");
+    t.checkExpect(server.handle("NEW 2000 2000 1", 0),
+        "ERR Board must have between 1 and 1048576 tiles");
+    t.checkExpect(server.handle("NEW 4 4 -1", 0), "ERR Mines cannot be negative");
+    t.checkExpect(server.handle("NEW 2 2 4", 0), "ERR Cannot place 4 mines on 3 tiles");
+    t.checkExpect(server.handle("NEW a 4 1", 0), "ERR Not a number");
+    t.checkExpect(server.handle("OPEN", 0), "ERR Unknown request");
+    t.checkExpect(server.handle("JUMP 1", 0), "ERR Unknown request");
+    t.checkExpect(server.handle("OPEN 9 1 1", 0), "ERR No session 9");
+    t.checkExpect(server.handle("OPEN 1 1", 0), "ERR Expected OPEN id x y");
+    t.checkExpect(server.handle("OPEN 1 4 0", 0), "ERR No cell at 4 0");
+    t.checkExpect(server.handle("CHORD 1 0 0", 0), "ERR Cannot chord a closed cell");
+    t.checkExpect(server.handle("  STATE   1 ", 0), "OK PLAYING 0 3");
+
+    // BEFORE CHANGE: the first click on a 2x1 board with one mine opens its one
+    // safe tile, winning the game
+    t.checkExpect(server.handle("NEW 2 1 1 1", 0), "SESSION 2");
+    t.checkExpect(server.handle("OPEN 2 0 0", 0), "OK WON 0:1");
+
+    // CHANGE: moves on the finished game
+    t.checkExpect(server.handle("OPEN 2 1 0", 0), "ERR Game over");
+    t.checkExpect(server.handle("CHORD 2 0 0", 0), "ERR Game over");
+    t.checkExpect(server.handle("FLAG 2 1 0", 0), "ERR Game over");
+
+    // AFTER CHANGE: the game is as it was, and plays again once restarted
+    t.checkExpect(server.handle("STATE 2", 0), "OK WON 1 1");
+    t.checkExpect(server.handle("RESTART 2 1", 0), "OK PLAYING");
+    t.checkExpect(server.handle("FLAG 2 1 0", 0), "OK PLAYING 0");
+    server.close();
+  }
+
+  void testGameServerEndless(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 1000);
+    t.checkExpect(server.handle("ENDLESS", 0), "ERR Expected ENDLESS density [seed]");
+    t.checkExpect(server.handle("ENDLESS 1", 0),
+        "ERR Mine density must be at least 0 and below 1");
+    t.checkExpect(server.handle("ENDLESS NaN", 0),
+        "ERR Mine density must be at least 0 and below 1");
+    t.checkExpect(server.handle("ENDLESS some", 0), "ERR Not a number");
+    t.checkExpect(server.handle("ENDLESS 0.15 1", 0), "SESSION 1");
+    EndlessSession session = (EndlessSession) server.sessions.get(1L);
+    ChunkedBoard same = new ChunkedBoard(1, 0.15);
+    t.checkExpect(server.handle("CHORD 1 0 0", 0), "ERR Cannot chord a closed cell");
+
+    // CHANGE: open the cell at the origin, which is always safe
+    String reply = server.handle("OPEN 1 0 0", 0);
+
+    // AFTER CHANGE: the reply lists the cells opened as x,y pairs with their counts
+    IntList opened = same.open(0, 0);
+    t.checkExpect(reply.startsWith("OK PLAYING 0,0:" + same.surroundingMines(0, 0)), true);
+    t.checkExpect(reply.split(" ").length, 2 + opened.size() / 2);
+    t.checkExpect(server.handle("STATE 1", 0), "OK PLAYING 1 " + same.openSafe + " 0");
+
+    // CHANGE: flag a closed cell, then open a mine
+    int x = 0;
+    while (!same.hasMine(x, -3)) {
+      x--;
+    }
+    t.checkExpect(server.handle("FLAG 1 5 -70", 0), "OK PLAYING 1");
+    t.checkExpect(server.handle("OPEN 1 " + x + " -3", 0), "OK LOST " + x + ",-3:M");
+
+    // AFTER CHANGE
+    t.checkExpect(server.handle("OPEN 1 0 0", 0), "ERR Game over");
+    t.checkExpect(server.handle("STATE 1", 0), "OK LOST 3 " + same.openSafe + " 1");
+
+    // CHANGE: restart, then explore as far as a session may
+    t.checkExpect(server.handle("RESTART 1 1", 0), "OK PLAYING");
+    t.checkExpect(server.handle("STATE 1", 0), "OK PLAYING 0 0 0");
+    for (int k = 0; k < EndlessSession.MAX_CHUNKS; k++) {
+      session.board.chunkAt(k * Chunk.SIZE, 0);
+    }
+
+    // AFTER CHANGE: the session takes no more moves until it is restarted
+    t.checkExpect(server.handle("OPEN 1 0 0", 0), "ERR Board has grown as large as a session may");
+    t.checkExpect(server.handle("RESTART 1 1", 0), "OK PLAYING");
+    t.checkExpect(session.board.chunkCount(), 0);
+    t.checkExpect(server.evictIdle(2000), 1);
+    server.close();
+  }
+
+  void testGameServerEvictIdle(Tester t) throws IOException {
+    GameServer server = new GameServer(0, 1000);
+    server.handle("NEW 4 4 3", 0);
+    server.handle("NEW 4 4 3", 0);
+    server.handle("STATE 2", 900);
+
+    // CHANGE: the first session has been idle for 1500ms, the second for 600ms
+    t.checkExpect(server.evictIdle(1500), 1);
+
+    // AFTER CHANGE
+    t.checkExpect(server.handle("STATE 1", 1500), "ERR No session 1");
+    t.checkExpect(server.sessions.size(), 1);
+    t.checkExpect(server.evictIdle(1800), 0);
+    new IdleEviction(server).run();
+    t.checkExpect(server.sessions.size(), 0);
+    server.close();
+  }
+
+  void testGameServerClients(Tester t) throws IOException, InterruptedException {
+    GameServer server = new GameServer(0, 60000);
+    server.start();
+
+    // many clients play their own sessions at once
+    int clients = 8;
+    String[] replies = new String[clients];
+    Thread[] threads = new Thread[clients];
+    for (int k = 0; k < clients; k++) {
+      threads[k] = new Thread(new ClientHarness(server.port(), k, replies));
+      threads[k].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    boolean allPlayed = true;
+    for (String reply : replies) {
+      allPlayed = allPlayed && reply != null && reply.startsWith("OK ");
+    }
+    t.checkExpect(allPlayed, true);
+    t.checkExpect(server.sessions.size(), clients);
+
+    // a session outlives the connection that made it
+    GameClient client = new GameClient(server.port());
+    Engine first = ((GameSession) server.sessions.get(1L)).engine;
+    t.checkExpect(client.send("STATE 1"), "OK " + first.status() + " 1 " + first.minesLeft());
+    t.checkExpect(client.send("QUIT"), "BYE");
+    t.checkExpect(client.in.readLine(), null);
+    client.close();
+    server.close();
+  }
+
+  void testSharedBoardMatchesEngine(Tester t) {
+    Engine engine = new Engine(3, 16, 16, 40, true);
+    SharedBoard shared = new SharedBoard(new Grid(new Random(3), 16, 16, 40, true));
+
+    // CHANGE: play the same moves on both
+    t.checkExpect(shared.open(8, 8).toArray(), engine.open(8, 8).toArray());
+    Board board = engine.grid.board;
+    int mine = 0;
+    while (!board.hasMine(mine)) {
+      mine++;
+    }
+    engine.toggleFlag(mine % 16, mine / 16);
+    t.checkExpect(shared.toggleFlag(mine % 16, mine / 16), true);
+    t.checkExpect(shared.open(mine % 16, mine / 16).size(), 0);
+    t.checkExpect(shared.toggleFlag(8, 8), false);
+    int safe = 0;
+    while (board.hasMine(safe) || board.isOpen(safe)) {
+      safe++;
+    }
+    t.checkExpect(shared.open(safe % 16, safe / 16).toArray(),
+        engine.open(safe % 16, safe / 16).toArray());
+
+    // AFTER CHANGE
+    t.checkExpect(shared.status(), engine.status());
+    t.checkExpect(shared.numFlags(), 1);
+    shared.sync();
+    t.checkExpect(shared.board.cells, board.cells);
+    t.checkExpect(shared.board.countersMatchScan(), true);
+    t.checkExpect(shared.grid.pendingMines, 0);
+    t.checkConstructorException(
+        new IllegalArgumentException("A shared board must keep its tiles on the heap"),
+        "SharedBoard", new Grid(new Board(2, 2, null, 0, 4, 0), null, 0));
+  }
+
+  void testSharedBoardResult(Tester t) {
+    Grid lost = new Grid(3, 1);
+    lost.board.placeMine(0);
+    SharedBoard losing = new SharedBoard(lost);
+    Grid won = new Grid(3, 1);
+    won.board.placeMine(0);
+    SharedBoard winning = new SharedBoard(won);
+
+    // BEFORE CHANGE
+    t.checkExpect(losing.status(), GameStatus.PLAYING);
+    t.checkExpect(losing.open(5, 0).size(), 0);
+
+    // CHANGE: open the mine on one board and every safe tile on the other
+    t.checkExpect(losing.open(0, 0).toArray(), new int[] { 0, 1 });
+    t.checkExpect(winning.open(2, 0).toArray(), new int[] { 2, 1 });
+
+    // AFTER CHANGE: the result never changes again
+    t.checkExpect(losing.status(), GameStatus.LOST);
+    t.checkExpect(losing.open(2, 0).size(), 0);
+    t.checkExpect(losing.toggleFlag(2, 0), false);
+    t.checkExpect(winning.status(), GameStatus.WON);
+    t.checkExpect(winning.open(0, 0).size(), 0);
+    t.checkExpect(winning.board.isOpen(0), false);
+    winning.sync();
+    t.checkExpect(new SharedBoard(won).status(), GameStatus.WON);
+  }
+
+  void testSharedBoardStress(Tester t) throws InterruptedException {
+    // every player opens every safe tile and flags its share of the mines, each
+    // in its own order
+    int players = 4;
+    Grid grid = new Grid(new Random(16), 64, 64, 600, false);
+    SharedBoard shared = new SharedBoard(grid);
+    Random rand = new Random(16);
+    SharedSweeper[] sweepers = new SharedSweeper[players];
+    for (int k = 0; k < players; k++) {
+      IntList order = new IntList();
+      for (int i = 0; i < grid.board.size(); i++) {
+        if (!grid.board.hasMine(i) || i % players == k) {
+          order.add(i);
+        }
+      }
+      int[] tiles = order.toArray();
+      for (int j = tiles.length - 1; j > 0; j--) {
+        int r = rand.nextInt(j + 1);
+        int swap = tiles[j];
+        tiles[j] = tiles[r];
+        tiles[r] = swap;
+      }
+      sweepers[k] = new SharedSweeper(shared, tiles, true);
+    }
+    SharedSweeper.playAll(sweepers);
+
+    // each safe tile was opened by exactly one player, and floods agree
+    int[] openedBy = new int[grid.board.size()];
+    for (SharedSweeper sweeper : sweepers) {
+      for (int k = 0; k < sweeper.opened.size(); k++) {
+        openedBy[sweeper.opened.get(k)]++;
+      }
+    }
+    boolean once = true;
+    for (int i = 0; i < grid.board.size(); i++) {
+      once = once && openedBy[i] == (grid.board.hasMine(i) ? 0 : 1);
+    }
+    t.checkExpect(once, true);
+    t.checkExpect(shared.status(), GameStatus.WON);
+    // flags still to come when the game was won were refused
+    t.checkExpect(shared.numFlags() <= 600, true);
+    shared.sync();
+    t.checkExpect(grid.board.countersMatchScan(), true);
+    t.checkExpect(new Engine(grid, 600).status(), GameStatus.WON);
+  }
+
+  void testSharedBoardRaces(Tester t) throws InterruptedException {
+    // one player clears the board while another opens a mine; whichever comes
+    // first decides the game, and the other never shows on the board
+    boolean consistent = true;
+    for (int seed = 0; seed < 50; seed++) {
+      Grid grid = new Grid(new Random(seed), 8, 8, 10, false);
+      SharedBoard shared = new SharedBoard(grid);
+      IntList safe = new IntList();
+      int mine = -1;
+      for (int i = 0; i < grid.board.size(); i++) {
+        if (grid.board.hasMine(i)) {
+          mine = i;
+        }
+        else {
+          safe.add(i);
+        }
+      }
+      SharedSweeper.playAll(new SharedSweeper[] {
+          new SharedSweeper(shared, safe.toArray(), false),
+          new SharedSweeper(shared, new int[] { mine }, false) });
+      shared.sync();
+      GameStatus status = shared.status();
+      consistent = consistent && status != GameStatus.PLAYING
+          && grid.board.countersMatchScan()
+          && (status == GameStatus.LOST) == grid.board.isOpen(mine)
+          && (status != GameStatus.LOST || grid.board.closedSafe > 0)
+          && status == new Engine(grid, 10).status();
+    }
+    t.checkExpect(consistent, true);
+  }
+
+  void testHistogramBuckets(Tester t) {
+    t.checkExpect(Histogram.bucket(0), 0);
+    t.checkExpect(Histogram.bucket(127), 127);
+    t.checkExpect(Histogram.bucket(128), 128);
+    t.checkExpect(Histogram.bucket(129), 128);
+    t.checkExpect(Histogram.bucket(256), 192);
+    t.checkExpect(Histogram.bucket(Long.MAX_VALUE), Histogram.BUCKETS - 1);
+    t.checkExpect(Histogram.lowest(191), 254L);
+    t.checkExpect(Histogram.highest(191), 255L);
+    t.checkExpect(Histogram.highest(Histogram.BUCKETS - 1), Long.MAX_VALUE);
+    boolean contiguous = true;
+    for (int b = 0; b < Histogram.BUCKETS - 1; b++) {
+      contiguous = contiguous && Histogram.bucket(Histogram.lowest(b)) == b
+          && Histogram.bucket(Histogram.highest(b)) == b;
+    }
+    t.checkExpect(contiguous, true);
+  }
+
+  void testHistogramRecord(Tester t) {
+    Histogram histogram = new Histogram("test");
+    t.checkExpect(histogram.percentile(50), 0L);
+
+    // CHANGE: record 1 to 1000, and a negative value that counts as 0
+    for (int v = 1; v <= 1000; v++) {
+      histogram.record(v);
+    }
+    histogram.record(-5);
+
+    // AFTER CHANGE: percentiles are within 1 part in 64 of the true value
+    t.checkExpect(histogram.count(), 1001L);
+    t.checkInexact(histogram.mean(), 500500.0 / 1001, 0.0001);
+    t.checkExpect(histogram.percentile(0), 0L);
+    t.checkExpect(histogram.percentile(50) >= 500 && histogram.percentile(50) < 500 * 65 / 64,
+        true);
+    t.checkExpect(histogram.percentile(99) >= 990 && histogram.percentile(99) < 990 * 65 / 64,
+        true);
+    t.checkExpect(histogram.percentile(100), 1000L);
+    t.checkExpect(histogram.summary().startsWith("test count=1001 mean=500.0 p50="), true);
+    histogram.reset();
+    t.checkExpect(histogram.count(), 0L);
+    t.checkExpect(histogram.max.get(), 0L);
+  }
+
+  void testMetricsDisabled(Tester t) {
+    boolean was = Metrics.enabled;
+    Metrics.enabled = false;
+    Metrics.reset();
+
+    // CHANGE: play while metrics are off
+    Engine engine = new Engine(1, 9, 9, 10, true);
+    engine.open(4, 4);
+
+    // AFTER CHANGE: nothing is counted
+    t.checkExpect(Metrics.start(), 0L);
+    t.checkExpect(Metrics.allocatedBytes(), -1L);
+    t.checkExpect(Metrics.OPEN_NANOS.count(), 0L);
+    t.checkExpect(Metrics.OPEN_CELLS.count(), 0L);
+    t.checkExpect(Metrics.PLACE_NANOS.count(), 0L);
+    Metrics.enabled = was;
+  }
+
+  void testMetricsEnabled(Tester t) throws IOException {
+    boolean was = Metrics.enabled;
+    Metrics.enabled = true;
+    Metrics.reset();
+    Recording recording = new Recording();
+    recording.enable(MetricEvent.class);
+    recording.start();
+
+    // CHANGE: play and draw a few moves while metrics are on
+    Game game = new Game(new Random(2), 10, 9, 9, true);
+    game.onMouseClicked(new Posn(135, 135), "LeftButton");
+    game.onMouseClicked(new Posn(15, 15), "RightButton");
+    game.makeScene();
+    game.makeScene();
+    recording.stop();
+    Metrics.enabled = was;
+
+    // AFTER CHANGE
+    t.checkExpect(Metrics.OPEN_NANOS.count(), 1L);
+    t.checkExpect(Metrics.OPEN_CELLS.count(), 1L);
+    t.checkExpect(Metrics.OPEN_CELLS.max.get(),
+        (long) (81 - game.engine.grid.board.closedSafe - 10));
+    t.checkExpect(Metrics.PLACE_NANOS.count(), 1L);
+    // the second frame changed nothing, so only the first draws the board
+    t.checkExpect(Metrics.DRAW_NANOS.count(), 1L);
+    t.checkExpect(Metrics.FRAME_NANOS.count(), 2L);
+    t.checkExpect(Metrics.FRAME_BYTES.count(), 2L);
+    t.checkExpect(Metrics.FRAME_BYTES.max.get() > 0, true);
+    t.checkExpect(Metrics.histogram("grid.openCell.nanos"), Metrics.OPEN_NANOS);
+
+    // every value was also committed to the flight recording
+    Path jfr = Files.createTempFile("metrics", ".jfr");
+    recording.dump(jfr);
+    recording.close();
+    int events = 0;
+    for (RecordedEvent event : RecordingFile.readAllEvents(jfr)) {
+      if (event.getEventType().getName().equals("minesweeper.Metric")) {
+        events++;
+      }
+    }
+    t.checkExpect(events, 8);
+    Files.delete(jfr);
+
+    // and the report can be written to a file
+    Path report = Files.createTempFile("metrics", ".txt");
+    new MetricsDump(report).run();
+    String text = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    t.checkExpect(text, Metrics.report());
+    t.checkExpect(text.contains("game.makeScene.nanos count=2 "), true);
+    Files.delete(report);
+    Metrics.reset();
+  }
+
+  void testNoGuessGenerator(Tester t) {
+    NoGuessGenerator generator = new NoGuessGenerator(16, 16, 40);
+    Grid grid = generator.generate(new Random(18));
+
+    // the board starts with its middle cell open, and the Solver finishes it
+    // from there without a guess
+    t.checkExpect(grid.board.isOpen(grid.board.index(8, 8)), true);
+    t.checkExpect(grid.board.surroundingMines(grid.board.index(8, 8)), 0);
+    t.checkExpect(grid.pendingMines, 0);
+    t.checkExpect(grid.board.countersMatchScan(), true);
+    Solver solver = new Solver(grid, 40);
+    t.checkExpect(solver.solve(8, 8, true), GameStatus.WON);
+    t.checkExpect(solver.guesses, 0);
+    t.checkExpect(generator.attempts.get() >= 1, true);
+
+    // an attempt that needs a guess is thrown away
+    boolean rejected = false;
+    for (long seed = 0; seed < 200 && !rejected; seed++) {
+      Solver plain = new Solver(generator.fresh(seed), 40);
+      if (plain.solve(8, 8, true) != GameStatus.WON || plain.guesses > 0) {
+        rejected = generator.attempt(seed) == null;
+      }
+    }
+    t.checkExpect(rejected, true);
+    t.checkConstructorException(
+        new IllegalArgumentException("Cannot place 4 mines on 3 tiles"),
+        "NoGuessGenerator", 2, 2, 4);
+  }
+
+  void testBoardPool(Tester t) throws InterruptedException {
+    BoardPool pool = new BoardPool(new NoGuessGenerator(9, 9, 10), 3, 2);
+
+    // the workers fill the pool up to its capacity and no further
+    long deadline = System.currentTimeMillis() + 10000;
+    while (pool.ready.size() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    t.checkExpect(pool.ready.size(), 3);
+    t.checkExpect(pool.ready.remainingCapacity(), 0);
+
+    // CHANGE: take a board
+    Grid taken = pool.take();
+
+    // AFTER CHANGE
+    t.checkExpect(taken.board.isOpen(taken.board.index(4, 4)), true);
+    t.checkExpect(pool.ready.contains(taken), false);
+    pool.close();
+    pool.workers.awaitTermination(10, TimeUnit.SECONDS);
+    t.checkExpect(pool.workers.isTerminated(), true);
+
+    // once the ready boards run out, take builds one itself
+    pool.ready.clear();
+    t.checkExpect(pool.take().board.isOpen(40), true);
+    t.checkExpect(new DaemonThreads().newThread(new PoolFiller(pool, new Random())).isDaemon(),
+        true);
+  }
+
+  void testBoardPoolFailure(Tester t) throws InterruptedException {
+    NoGuessGenerator generator = new NoGuessGenerator(3, 3, 7);
+    generator.maxAttempts = 50;
+    BoardPool pool = new BoardPool(generator, 1, 1);
+    for (int k = 0; k < 500 && pool.failure == null; k++) {
+      Thread.sleep(10);
+    }
+    long attempts = generator.attempts.get();
+
+    // CHANGE: take a board once the worker has given up
+    String message = "";
+    try {
+      pool.take();
+    }
+    catch (IllegalStateException e) {
+      message = e.getMessage();
+    }
+
+    // AFTER CHANGE: the worker's failure is reported without searching again
+    t.checkExpect(message,
+        "No 3x3 board with 7 mines could be solved without guessing in 50 attempts");
+    t.checkExpect(generator.attempts.get(), attempts);
+    pool.close();
+  }
+
+  void testGameBoardPool(Tester t) {
+    BoardPool pool = new BoardPool(new NoGuessGenerator(9, 9, 10), 2, 1);
+    Game game = new Game(pool);
+
+    // BEFORE CHANGE
+    t.checkExpect(game.pool == pool, true);
+    t.checkExpect(game.engine.numMines, 10);
+    t.checkExpect(game.engine.grid.board.isOpen(40), true);
+    Grid first = game.engine.grid;
+    game.onTick();
+    game.onMouseClicked(new Posn(15, 15), "RightButton");
+
+    // CHANGE: restart onto a new board from the pool
+    game.onKeyEvent("r");
+
+    // AFTER CHANGE
+    t.checkExpect(game.engine.grid == first, false);
+    t.checkExpect(game.engine.grid.board.isOpen(40), true);
+    t.checkExpect(game.engine.grid.board.numFlags, 0);
+    t.checkExpect(game.engine.moves, 0);
+    t.checkExpect(game.tickNum, 0);
+    t.checkExpect(game.renderer.board, game.engine.grid.board);
+    pool.close();
+  }
+
+  void testBitboardGather(Tester t) {
+    t.checkExpect(Bitboard.gather(0L, 0), 0L);
+    t.checkExpect(Bitboard.gather(0x0101010101010101L, 0), 0xFFL);
+    t.checkExpect(Bitboard.gather(0x2000000000000020L, 5), 0x81L);
+    t.checkExpect(Bitboard.gather(0x0000000000100010L, 4), 0x05L);
+    t.checkExpect(Bitboard.gather(0xEFEFEFEFEFEFEFEFL, 4), 0L);
+  }
+
+  void testBitboardPlanes(Tester t) {
+    // a width that is not a multiple of 64, or of 8, leaves a partial word
+    Grid grid = new Grid(new Random(19), 70, 5, 60);
+    grid.openCell(0, 0);
+    grid.toggleFlag(69, 4);
+    grid.toggleFlag(68, 4);
+    Bitboard planes = new Bitboard(grid.board);
+    boolean same = true;
+    for (int i = 0; i < grid.board.size(); i++) {
+      long bit = 1L << (i % 70 % 64);
+      int w = planes.word(i);
+      same = same && ((planes.mines[w] & bit) != 0) == grid.board.hasMine(i)
+          && ((planes.open[w] & bit) != 0) == grid.board.isOpen(i)
+          && ((planes.flags[w] & bit) != 0) == grid.board.isFlagged(i)
+          && planes.hasMine(i) == grid.board.hasMine(i);
+      for (int b = 0; b < 4; b++) {
+        same = same && ((planes.counts[b][w] & bit) != 0)
+            == ((grid.board.surroundingMines(i) >> b & 1) != 0);
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(planes.words, 2);
+    t.checkExpect(planes.lastWordMask(), 0x3FL);
+    t.checkExpect(planes.mineCount(), 60);
+    t.checkExpect(planes.numFlags(), 2);
+    t.checkExpect(planes.closedSafe(), grid.board.closedSafe);
+    t.checkExpect(planes.openMines(), 0);
+    t.checkExpect(planes.lost(), false);
+    t.checkExpect(planes.won(), false);
+    t.checkExpect(planes.countsMatchMines(), true);
+    t.checkExpect(new Bitboard(new Board(64, 1)).lastWordMask(), -1L);
+  }
+
+  void testBitboardNeighborCounts(Tester t) {
+    // mines fill a 3x3 block whose middle is column 63, so the counts cross a word
+    Bitboard planes = new Bitboard(130, 3);
+    for (int y = 0; y < 3; y++) {
+      for (int x = 62; x <= 64; x++) {
+        planes.setMine(y * 130 + x);
+      }
+    }
+    long[] counts = new long[4];
+    planes.neighborCounts(1, 0, counts);
+    // columns 61, 62 and 63 of the middle row have 3, 5 and 8 adjacent mines
+    t.checkExpect(counts[0] >>> 61, 3L);
+    t.checkExpect(counts[1] >>> 61, 1L);
+    t.checkExpect(counts[2] >>> 61, 2L);
+    t.checkExpect(counts[3] >>> 61, 4L);
+    // and columns 64 and 65 have 5 and 3
+    planes.neighborCounts(1, 1, counts);
+    t.checkExpect(counts[0] & 3, 3L);
+    t.checkExpect(counts[1] & 3, 2L);
+    t.checkExpect(counts[2] & 3, 1L);
+    t.checkExpect(counts[3] & 3, 0L);
+    t.checkExpect(planes.mineWord(3, 0), 0L);
+    t.checkExpect(planes.mineWord(0, 2), 0L);
+  }
+
+  void testBitboardResults(Tester t) {
+    Grid grid = new Grid(3, 1);
+    grid.board.placeMine(0);
+    grid.openCell(2, 0);
+    t.checkExpect(new Bitboard(grid.board).won(), true);
+    grid.board.setOpen(0);
+    Bitboard lost = new Bitboard(grid.board);
+    t.checkExpect(lost.lost(), true);
+    t.checkExpect(lost.openMines(), 1);
+
+    // a count that disagrees with the mines around it is caught
+    Grid wrong = new Grid(4, 4);
+    wrong.board.placeMine(5);
+    t.checkExpect(wrong.board.countersMatchScan(), true);
+    wrong.board.setCell(15, wrong.board.cell(15) + 1);
+    t.checkExpect(wrong.board.countersMatchScan(), false);
+  }
+
+  void testPlaceMinesInOrder(Tester t) {
+    // placing mines in index order leaves the same board as one at a time
+    Bitboard planes = new Bitboard(9, 9);
+    Board inOrder = new Board(9, 9);
+    Board oneByOne = new Board(9, 9);
+    int[] mines = { 80, 3, 40, 41, 0, 17 };
+    for (int i : mines) {
+      planes.setMine(i);
+      oneByOne.placeMine(i);
+    }
+    planes.placeMinesInOrder(inOrder);
+    t.checkExpect(inOrder.cells, oneByOne.cells);
+    t.checkExpect(inOrder.closedSafe, 75);
+    t.checkExpect(inOrder.countersMatchScan(), true);
+  }
+
+  void testBoardClear(Tester t) {
+    Grid grid = new Grid(new Random(20), 6, 6, 8);
+    grid.openCell(0, 0);
+    grid.toggleFlag(5, 5);
+
+    // CHANGE
+    grid.board.clear();
+
+    // AFTER CHANGE
+    t.checkExpect(grid.board.cells, new byte[36]);
+    t.checkExpect(grid.board.numFlags, 0);
+    t.checkExpect(grid.board.closedSafe, 36);
+    t.checkExpect(grid.board.openMines, 0);
+  }
+
+  void testPlaceRandomMinesDirect(Tester t) throws IOException {
+    Path path = Files.createTempFile("board", ".mswb");
+    BoardFile file = BoardFile.create(path, 30, 16, 99, 8, false);
+    Board heap = new Grid(new Random(8), 30, 16, 99).board;
+
+    // a mapped board draws the same mines without a Bitboard on the heap
+    t.checkExpect(file.grid.board.placement, null);
+    t.checkExpect(heap.placement == null, false);
+    boolean same = true;
+    for (int i = 0; i < heap.size(); i++) {
+      same = same && file.grid.board.cell(i) == heap.cell(i);
+    }
+    t.checkExpect(same, true);
+    file.close();
+    Files.delete(path);
+
+    // a board that already holds mines gets no second mine on any tile
+    Board full = new Board(3, 1);
+    full.placeMine(0);
+    full.placeMine(1);
+    t.checkException(
+        new IllegalStateException("Cannot place 2 mines on a board that already holds mines"),
+        full, "placeRandomMines", new Random(1), 2, -1);
+  }
+
+  void testGridReset(Tester t) {
+    Grid grid = new Grid(new Random(20), 30, 16, 99);
+    Board board = grid.board;
+    Bitboard placement = board.placement;
+    grid.openCell(3, 3);
+    grid.toggleFlag(0, 0);
+
+    // CHANGE: start over on the same Board with mines from another seed
+    grid.reset(new Random(21), 99, false);
+
+    // AFTER CHANGE: the same game as a new Grid, without a new Board
+    t.checkExpect(grid.board == board, true);
+    t.checkExpect(board.placement == placement, true);
+    Grid fresh = new Grid(new Random(21), 30, 16, 99);
+    t.checkExpect(board.cells, fresh.board.cells);
+    t.checkExpect(board.closedSafe, fresh.board.closedSafe);
+    t.checkExpect(board.countersMatchScan(), true);
+
+    // a first-click-safe reset waits for the first click to place its mines
+    grid.reset(new Random(22), 99, true);
+    t.checkExpect(grid.pendingMines, 99);
+    t.checkExpect(board.closedSafe, 480);
+    grid.openCell(15, 8);
+    Grid safe = new Grid(new Random(22), 30, 16, 99, true);
+    safe.openCell(15, 8);
+    t.checkExpect(board.cells, safe.board.cells);
+  }
+
+  void testGridPrefetcher(Tester t) {
+    Engine engine = new Engine(23L, 16, 16, 40, false);
+    Grid original = engine.grid;
+    GridPrefetcher prefetcher = new GridPrefetcher(engine, new Random(24));
+    Random seeds = new Random(24);
+    long firstSeed = seeds.nextLong();
+    engine.open(8, 8);
+
+    // CHANGE 1: restart onto the prepared game
+    t.checkExpect(prefetcher.restart(), firstSeed);
+
+    // AFTER CHANGE 1: the game is the one its seed makes
+    t.checkExpect(engine.moves, 0);
+    t.checkExpect(engine.grid.board.cells,
+        new Grid(new Random(firstSeed), 16, 16, 40).board.cells);
+    t.checkExpect(engine.grid == original, false);
+
+    // CHANGE 2: restart again
+    long secondSeed = seeds.nextLong();
+    t.checkExpect(prefetcher.restart(), secondSeed);
+
+    // AFTER CHANGE 2: the first Grid was reset for this game
+    t.checkExpect(engine.grid == original, true);
+    t.checkExpect(engine.grid.board.cells,
+        new Grid(new Random(secondSeed), 16, 16, 40).board.cells);
+    t.checkExpect(engine.grid.board.countersMatchScan(), true);
+    prefetcher.close();
+  }
+
+  void testGamePrefetchRestarts(Tester t) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Game game = new Game(25, 10, 9, 9, out);
+    game.prefetchRestarts();
+    BoardRenderer renderer = game.renderer;
+    game.onMouseClicked(new Posn(135, 135), "LeftButton");
+
+    // CHANGE: restart, then play the new game
+    game.onKeyEvent("r");
+    game.onMouseClicked(new Posn(15, 15), "LeftButton");
+
+    // AFTER CHANGE: the renderer shows the new board, and the journal replays it
+    t.checkExpect(game.renderer == renderer, true);
+    t.checkExpect(renderer.board, game.engine.grid.board);
+    t.checkExpect(renderer.repaint, true);
+    JournalReplayer replay = new JournalReplayer(new ByteArrayInputStream(out.toByteArray()));
+    t.checkExpect(replay.replayTo(3), 3);
+    t.checkExpect(replay.engine.grid.board.cells, game.engine.grid.board.cells);
+    game.prefetcher.close();
+  }
+
+}
+
+// Plays one short game against a GameServer from its own connection, storing the
+// reply to its move in the given array
+class ClientHarness implements Runnable {
+  int port;
+  int k;
+  String[] replies;
+
+  ClientHarness(int port, int k, String[] replies) {
+    this.port = port;
+    this.k = k;
+    this.replies = replies;
+  }
+
+  public void run() {
+    try {
+      GameClient client = new GameClient(this.port);
+      String id = client.send("NEW 16 16 40 " + this.k).split(" ")[1];
+      this.replies[this.k] = client.send("OPEN " + id + " 8 8");
+      client.send("QUIT");
+      client.close();
+    }
+    catch (IOException e) {
+      this.replies[this.k] = "ERR " + e.getMessage();
+    }
+  }
+
+}
+
+// Plays the given tiles of a SharedBoard in order from its own thread: opens
+// each safe tile, and opens each mine or, if flagMines, flags it instead;
+// keeps every tile its moves opened
+class SharedSweeper implements Runnable {
+  SharedBoard board;
+  int[] tiles;
+  boolean flagMines;
+  IntList opened;
+
+  SharedSweeper(SharedBoard board, int[] tiles, boolean flagMines) {
+    this.board = board;
+    this.tiles = tiles;
+    this.flagMines = flagMines;
+    this.opened = new IntList();
+  }
+
+  // EFFECT: runs every given sweeper on its own thread and waits for them all
+  static void playAll(SharedSweeper[] sweepers) throws InterruptedException {
+    Thread[] threads = new Thread[sweepers.length];
+    for (int k = 0; k < sweepers.length; k++) {
+      threads[k] = new Thread(sweepers[k]);
+      threads[k].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  public void run() {
+    int width = this.board.board.width;
+    for (int i : this.tiles) {
+      if (this.flagMines && this.board.board.hasMine(i)) {
+        this.board.toggleFlag(i % width, i / width);
+      }
+      else {
+        IntList cells = this.board.open(i % width, i / width);
+        for (int k = 0; k < cells.size(); k++) {
+          this.opened.add(cells.get(k));
+        }
+      }
+    }
+  }
+
+}
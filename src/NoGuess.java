@@ -0,0 +1,164 @@
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Builds boards of one size and mine count that the Solver finishes without a
+// single guess. The first cell, in the middle of the board, is opened on every
+// board built, since whether a board needs a guess depends on where play
+// starts; the Solver may open a cell that the mine count alone proves safe, as
+// a player could. Each attempt draws a seed and plays a Grid built from it, and
+// a board that passes is built again from the same seed to be played
+class NoGuessGenerator {
+  // the most attempts generate makes before giving up on a kind of board
+  static final int MAX_ATTEMPTS = 100000;
+
+  int width;
+  int height;
+  int numMines;
+  // the most attempts generate makes, MAX_ATTEMPTS unless lowered
+  int maxAttempts;
+  AtomicLong attempts;
+
+  NoGuessGenerator(int width, int height, int numMines) {
+    if (numMines > width * height - 1) {
+      throw new IllegalArgumentException(
+          "Cannot place " + numMines + " mines on " + (width * height - 1) + " tiles");
+    }
+    this.width = width;
+    this.height = height;
+    this.numMines = numMines;
+    this.maxAttempts = MAX_ATTEMPTS;
+    this.attempts = new AtomicLong();
+  }
+
+  // a Grid the Solver finishes without guessing, with its first cell opened,
+  // built from seeds drawn from rand
+  Grid generate(Random rand) {
+    for (int k = 0; k < this.maxAttempts; k++) {
+      Grid grid = this.attempt(rand.nextLong());
+      if (grid != null) {
+        return grid;
+      }
+    }
+    throw new IllegalStateException("No " + this.width + "x" + this.height + " board with "
+        + this.numMines + " mines could be solved without guessing in " + this.maxAttempts
+        + " attempts");
+  }
+
+  // the Grid built from the given seed with its first cell opened, if the
+  // Solver finishes it without guessing, otherwise null
+  Grid attempt(long seed) {
+    this.attempts.incrementAndGet();
+    Solver solver = new Solver(this.fresh(seed), this.numMines);
+    if (solver.solve(this.width / 2, this.height / 2, true) != GameStatus.WON
+        || solver.guesses > 0) {
+      return null;
+    }
+    Grid grid = this.fresh(seed);
+    grid.openCell(this.width / 2, this.height / 2);
+    return grid;
+  }
+
+  // a Grid whose mines are drawn from the given seed when its first cell opens
+  Grid fresh(long seed) {
+    return new Grid(new Random(seed), this.width, this.height, this.numMines, true);
+  }
+
+}
+
+// Keeps up to a fixed number of boards from a NoGuessGenerator ready, built by
+// worker threads in the background, so a new game need not wait for the
+// hundreds of attempts a dense board can take; the workers are daemons and
+// stop when the pool is closed
+class BoardPool {
+  NoGuessGenerator generator;
+  ArrayBlockingQueue<Grid> ready;
+  ExecutorService workers;
+  // why a worker could not generate a board, or null if none has failed
+  volatile IllegalStateException failure;
+
+  // starts the given number of workers, each filling the pool with boards
+  // drawn from its own Random
+  BoardPool(NoGuessGenerator generator, int capacity, int workers) {
+    this.generator = generator;
+    this.ready = new ArrayBlockingQueue<Grid>(capacity);
+    this.failure = null;
+    this.workers = Executors.newFixedThreadPool(workers, new DaemonThreads());
+    for (int k = 0; k < workers; k++) {
+      this.workers.execute(new PoolFiller(this, new Random()));
+    }
+  }
+
+  // a pool with one worker per core
+  BoardPool(NoGuessGenerator generator, int capacity) {
+    this(generator, capacity, Runtime.getRuntime().availableProcessors());
+  }
+
+  // a ready board, or, if none is ready, one generated on this thread; throws
+  // at once, rather than searching again, if a worker has already failed to
+  // generate one
+  // EFFECT: removes the board from the pool, making room for a worker to
+  // build another
+  Grid take() {
+    Grid grid = this.ready.poll();
+    if (grid != null) {
+      return grid;
+    }
+    if (this.failure != null) {
+      throw new IllegalStateException(this.failure.getMessage(), this.failure);
+    }
+    return this.generator.generate(new Random());
+  }
+
+  // EFFECT: adds boards drawn from rand to the pool, waiting while it is full,
+  // until this thread is interrupted or no board can be generated, which is
+  // kept for take to report
+  void fill(Random rand) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        this.ready.put(this.generator.generate(rand));
+      }
+    }
+    catch (InterruptedException e) {
+      // the pool was closed
+    }
+    catch (IllegalStateException e) {
+      this.failure = e;
+    }
+  }
+
+  // EFFECT: stops every worker; boards already ready can still be taken
+  void close() {
+    this.workers.shutdownNow();
+  }
+
+}
+
+// Fills a BoardPool from a worker thread
+class PoolFiller implements Runnable {
+  BoardPool pool;
+  Random rand;
+
+  PoolFiller(BoardPool pool, Random rand) {
+    this.pool = pool;
+    this.rand = rand;
+  }
+
+  public void run() {
+    this.pool.fill(this.rand);
+  }
+
+}
+
+// Makes daemon threads, so background workers never keep the JVM running
+class DaemonThreads implements ThreadFactory {
+  public Thread newThread(Runnable task) {
+    Thread thread = new Thread(task);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+}
@@ -0,0 +1,225 @@
+// Represents a page of a PagedBoard's tree: a leaf holding Page.SIZE tiles, or
+// a node holding up to Page.FANOUT pages. A page belongs to the board that made
+// it, which may change it in place; a page owned by no board, or by another,
+// may be shared between boards, so it is copied before it is changed
+class Page {
+  static final int BITS = 10;
+  static final int SIZE = 1 << BITS;
+  static final int FANOUT_BITS = 5;
+  static final int FANOUT = 1 << FANOUT_BITS;
+
+  Object owner;
+  byte[] tiles;
+  Page[] kids;
+
+  // a leaf of closed tiles with no mines, owned by nobody
+  Page() {
+    this.owner = null;
+    this.tiles = new byte[SIZE];
+    this.kids = null;
+  }
+
+  // a node all of whose kids are the given page, owned by nobody
+  Page(Page kid) {
+    this.owner = null;
+    this.tiles = null;
+    this.kids = new Page[FANOUT];
+    for (int k = 0; k < FANOUT; k++) {
+      this.kids[k] = kid;
+    }
+  }
+
+  // a copy of the given page owned by the given board
+  Page(Page page, Object owner) {
+    this.owner = owner;
+    this.tiles = page.tiles == null ? null : page.tiles.clone();
+    this.kids = page.kids == null ? null : page.kids.clone();
+  }
+
+  // a tree of the given number of levels of nodes above its leaves, every tile
+  // closed with no mine; every level is one shared page, so only depth + 1
+  // pages are allocated
+  static Page empty(int depth) {
+    Page page = new Page();
+    for (int level = 0; level < depth; level++) {
+      page = new Page(page);
+    }
+    return page;
+  }
+
+  // the number of levels of nodes needed above the leaves to hold the given
+  // number of tiles
+  static int depthFor(int size) {
+    int depth = 0;
+    long capacity = SIZE;
+    while (capacity < size) {
+      capacity <<= FANOUT_BITS;
+      depth++;
+    }
+    return depth;
+  }
+
+  // which kid of a node at the given level, counting the leaves' parents as
+  // level 1, holds the tile at the given index
+  static int slot(int i, int level) {
+    return (i >>> (BITS + FANOUT_BITS * (level - 1))) & (FANOUT - 1);
+  }
+
+}
+
+// Represents a Board whose tiles are kept in a tree of copy-on-write pages, so
+// that a snapshot of it shares every page and costs the same at any size, and a
+// move copies only the pages it changes and the nodes above them. Thousands of
+// branches of one board can then be kept at once, and undoing a move restores
+// a snapshot's tree rather than the tiles. Tiles are read through the last leaf
+// read or written, since most reads fall near the one before
+class PagedBoard extends Board {
+  Page root;
+  int depth;
+  // the token marking the pages this board may change in place
+  Object owner;
+  // the leaf holding the tiles of page recentPage, or null
+  Page recent;
+  int recentPage;
+
+  // a board of the given size with no mines
+  PagedBoard(int width, int height) {
+    super(width, height, null, 0, width * height, 0);
+    this.depth = Page.depthFor(width * height);
+    this.root = Page.empty(this.depth);
+    this.owner = new Object();
+    this.recent = null;
+    this.recentPage = -1;
+  }
+
+  // a board with the same tiles and running totals as the given Board
+  PagedBoard(Board board) {
+    this(board.width, board.height);
+    for (int i = 0; i < board.size(); i++) {
+      if (board.cell(i) != 0) {
+        this.setCell(i, board.cell(i));
+      }
+    }
+    this.numFlags = board.numFlags;
+    this.closedSafe = board.closedSafe;
+    this.openMines = board.openMines;
+  }
+
+  // a board sharing every page of the given one
+  // EFFECT: the given board copies any shared page before it next changes it
+  PagedBoard(PagedBoard board) {
+    super(board.width, board.height, null, board.numFlags, board.closedSafe,
+        board.openMines);
+    this.depth = board.depth;
+    this.root = board.root;
+    this.owner = new Object();
+    this.recent = null;
+    this.recentPage = -1;
+    board.owner = new Object();
+  }
+
+  // a snapshot of this board's tiles and running totals, unchanged by later
+  // moves on this board
+  PagedBoard snapshot() {
+    return new PagedBoard(this);
+  }
+
+  // EFFECT: returns this board to the tiles and running totals of the given
+  // snapshot of it, sharing its pages; neither changes the other afterwards
+  void restore(PagedBoard snapshot) {
+    this.root = snapshot.root;
+    this.numFlags = snapshot.numFlags;
+    this.closedSafe = snapshot.closedSafe;
+    this.openMines = snapshot.openMines;
+    this.owner = new Object();
+    this.recent = null;
+    this.recentPage = -1;
+    snapshot.owner = new Object();
+  }
+
+  // the leaf holding the tile at the given index
+  Page leaf(int i) {
+    int page = i >>> Page.BITS;
+    if (page != this.recentPage) {
+      Page p = this.root;
+      for (int level = this.depth; level > 0; level--) {
+        p = p.kids[Page.slot(i, level)];
+      }
+      this.recent = p;
+      this.recentPage = page;
+    }
+    return this.recent;
+  }
+
+  // the leaf holding the tile at the given index, owned by this board
+  // EFFECT: copies the leaf and every node above it that this board does not
+  // own, linking each copy into its parent
+  Page ownLeaf(int i) {
+    Page leaf = this.leaf(i);
+    if (leaf.owner == this.owner) {
+      return leaf;
+    }
+    if (this.root.owner != this.owner) {
+      this.root = new Page(this.root, this.owner);
+    }
+    Page p = this.root;
+    for (int level = this.depth; level > 0; level--) {
+      int slot = Page.slot(i, level);
+      if (p.kids[slot].owner != this.owner) {
+        p.kids[slot] = new Page(p.kids[slot], this.owner);
+      }
+      p = p.kids[slot];
+    }
+    this.recent = p;
+    return p;
+  }
+
+  int cell(int i) {
+    return this.leaf(i).tiles[i & (Page.SIZE - 1)];
+  }
+
+  void setCell(int i, int bits) {
+    this.ownLeaf(i).tiles[i & (Page.SIZE - 1)] = (byte) bits;
+  }
+
+  // EFFECT: closes, unflags and removes the mine from every tile by starting
+  // an empty tree, leaving any snapshot's pages as they were
+  void clear() {
+    this.root = Page.empty(this.depth);
+    this.recent = null;
+    this.recentPage = -1;
+    this.numFlags = 0;
+    this.closedSafe = this.size();
+    this.openMines = 0;
+  }
+
+  // EFFECT: adds to the given list the index of every tile that differs between
+  // this board and the given one of the same size, skipping every page they
+  // share, so boards a few moves apart are compared in time proportional to the
+  // pages those moves changed
+  void diff(PagedBoard other, IntList changed) {
+    this.diff(this.root, other.root, this.depth, 0, changed);
+  }
+
+  // EFFECT: adds to the given list the index of every tile that differs between
+  // the given pages at the given level, whose first tile has the given index
+  void diff(Page mine, Page theirs, int level, int first, IntList changed) {
+    if (mine == theirs) {
+      return;
+    }
+    if (level == 0) {
+      int end = Math.min(Page.SIZE, this.size() - first);
+      for (int k = 0; k < end; k++) {
+        if (mine.tiles[k] != theirs.tiles[k]) {
+          changed.add(first + k);
+        }
+      }
+      return;
+    }
+    int span = Page.SIZE << (Page.FANOUT_BITS * (level - 1));
+    for (int k = 0; k < Page.FANOUT && first + (long) k * span < this.size(); k++) {
+      this.diff(mine.kids[k], theirs.kids[k], level - 1, first + k * span, changed);
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Prepares an Engine's next game on a background thread while the current one
+// is played, so a restart only swaps Grids. Two Grids take turns: the one a
+// restart retires is reset in the background for the game after, so steady
+// play allocates no boards. Each game's mines are drawn from a seed chosen as
+// its Grid starts being prepared, so restarts can be journalled as usual
+class GridPrefetcher {
+  Engine engine;
+  Random seeds;
+  ExecutorService worker;
+  Future<Grid> next;
+  long nextSeed;
+
+  // prefetches games for the given Engine with seeds drawn from the given Random
+  GridPrefetcher(Engine engine, Random seeds) {
+    this.engine = engine;
+    this.seeds = seeds;
+    this.worker = Executors.newSingleThreadExecutor(new DaemonThreads());
+    this.prepare(new Grid(engine.width, engine.height));
+  }
+
+  // EFFECT: starts resetting the given Grid for the next game in the background
+  void prepare(Grid grid) {
+    this.nextSeed = this.seeds.nextLong();
+    this.next = this.worker.submit(new GridReset(grid, new Random(this.nextSeed),
+        this.engine.numMines, this.engine.firstClickSafe));
+  }
+
+  // EFFECT: starts the prepared game on the Engine, waiting for it if it is not
+  // ready yet, and starts preparing the game after it on the Grid just retired;
+  // returns the seed the new game's mines are drawn from
+  long restart() {
+    Grid ready;
+    try {
+      ready = this.next.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while preparing the next game", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Could not prepare the next game", e.getCause());
+    }
+    long seed = this.nextSeed;
+    Grid retired = this.engine.grid;
+    this.engine.restart(ready);
+    this.prepare(retired);
+    return seed;
+  }
+
+  // EFFECT: stops preparing games; the Engine keeps its current one
+  void close() {
+    this.worker.shutdownNow();
+  }
+
+}
+
+// Resets a Grid for a new game, on a GridPrefetcher's worker thread
+class GridReset implements Callable<Grid> {
+  Grid grid;
+  Random rand;
+  int numMines;
+  boolean firstClickSafe;
+
+  GridReset(Grid grid, Random rand, int numMines, boolean firstClickSafe) {
+    this.grid = grid;
+    this.rand = rand;
+    this.numMines = numMines;
+    this.firstClickSafe = firstClickSafe;
+  }
+
+  public Grid call() {
+    this.grid.reset(this.rand, this.numMines, this.firstClickSafe);
+    return this.grid;
+  }
+
+}
@@ -0,0 +1,448 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Computes the exact chance that each closed cell of a Board hides a mine, given
+// the open counts, the flags (taken as mines) and the number of mines on the
+// board. The frontier, the unknown cells next to an open count, is split into
+// components that share no count; each component's arrangements are counted by
+// backtracking, memoised on the counts still being filled, and the components
+// are combined by weighting every split of the remaining mines with the number
+// of ways to scatter the rest over the cells no count can see
+class ProbabilityEngine {
+  // components remembered between calls, so a move only recounts the components
+  // it changed; dropped wholesale once it grows past this many
+  static final int CACHE_LIMIT = 4096;
+
+  Board board;
+  HashMap<String, ComponentOdds> cache;
+  double[] logFactorials;
+
+  ProbabilityEngine(Board board) {
+    this.board = board;
+    this.cache = new HashMap<String, ComponentOdds>();
+    this.logFactorials = new double[] { 0 };
+  }
+
+  // the chance of a mine under each cell of the Board, indexed like the Board:
+  // 0 for open cells, 1 for flagged cells, and NaN everywhere if the flags and
+  // counts cannot all be right with the given number of mines
+  double[] probabilities(int numMines) {
+    double[] probs = new double[this.board.size()];
+    ArrayList<FrontierComponent> components = this.components();
+    boolean[] inFrontier = new boolean[this.board.size()];
+    int frontier = 0;
+    for (FrontierComponent c : components) {
+      for (int cell : c.cells) {
+        inFrontier[cell] = true;
+      }
+      frontier += c.cells.length;
+    }
+    int unknown = 0;
+    for (int i = 0; i < this.board.size(); i++) {
+      if (this.board.isFlagged(i)) {
+        probs[i] = 1;
+      }
+      else if (!this.board.isOpen(i)) {
+        unknown++;
+      }
+    }
+    int free = unknown - frontier;
+    int remaining = numMines - this.board.numFlags;
+
+    ArrayList<ComponentOdds> odds = new ArrayList<ComponentOdds>();
+    for (FrontierComponent c : components) {
+      odds.add(this.oddsOf(c));
+    }
+    // prefix[k] and suffix[k] count the ways to place mines in the components
+    // before and after component k, by number of mines
+    ArrayList<double[]> prefix = new ArrayList<double[]>();
+    prefix.add(new double[] { 1 });
+    for (ComponentOdds o : odds) {
+      prefix.add(ProbabilityEngine.convolve(prefix.get(prefix.size() - 1), o.ways));
+    }
+    double[][] suffix = new double[odds.size() + 1][];
+    suffix[odds.size()] = new double[] { 1 };
+    for (int k = odds.size() - 1; k >= 0; k--) {
+      suffix[k] = ProbabilityEngine.convolve(odds.get(k).ways, suffix[k + 1]);
+    }
+
+    double[] all = prefix.get(odds.size());
+    double[] rest = this.scaledBinomials(free, remaining, all.length - 1);
+    double total = 0;
+    double freeMines = 0;
+    for (int s = 0; s < all.length; s++) {
+      total += all[s] * rest[s];
+      if (free > 0 && remaining - s > 0) {
+        freeMines += all[s] * rest[s] * (remaining - s) / free;
+      }
+    }
+    if (total == 0 || Double.isNaN(total)) {
+      Arrays.fill(probs, Double.NaN);
+      return probs;
+    }
+
+    for (int k = 0; k < odds.size(); k++) {
+      ComponentOdds o = odds.get(k);
+      double[] others = ProbabilityEngine.convolve(prefix.get(k), suffix[k + 1]);
+      // weight[m] is the number of ways to finish the board once this component
+      // holds m mines
+      double[] weight = new double[o.ways.length];
+      for (int m = 0; m < weight.length; m++) {
+        for (int s = 0; s < others.length; s++) {
+          if (m + s < rest.length) {
+            weight[m] += others[s] * rest[m + s];
+          }
+        }
+      }
+      FrontierComponent c = components.get(k);
+      for (int p = 0; p < c.cells.length; p++) {
+        double mined = 0;
+        for (int m = 0; m < weight.length; m++) {
+          mined += o.mineWays[p][m] * weight[m];
+        }
+        probs[c.cells[p]] = mined / total;
+      }
+    }
+    for (int i = 0; i < this.board.size(); i++) {
+      if (!this.board.isOpen(i) && !this.board.isFlagged(i) && !inFrontier[i]) {
+        probs[i] = freeMines / total;
+      }
+    }
+    return probs;
+  }
+
+  // splits the frontier into groups of cells linked by shared counts, with the
+  // cells of each group in the order they were reached, so the counts being
+  // filled at any point of a backtrack stay few
+  ArrayList<FrontierComponent> components() {
+    int n = this.board.size();
+    // the open counts touching each frontier cell, and the cells of each count
+    IntList[] countsOf = new IntList[n];
+    ArrayList<IntList> cellsOf = new ArrayList<IntList>();
+    IntList minesOf = new IntList();
+    for (int c = 0; c < n; c++) {
+      if (!this.board.isOpen(c) || this.board.hasMine(c)) {
+        continue;
+      }
+      IntList cells = new IntList(8);
+      int flags = 0;
+      int x = c % this.board.width;
+      int y = c / this.board.width;
+      for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+        for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+          int i = this.board.index(nx, ny);
+          if (this.board.isFlagged(i)) {
+            flags++;
+          }
+          else if (!this.board.isOpen(i)) {
+            cells.add(i);
+          }
+        }
+      }
+      if (cells.size() == 0) {
+        continue;
+      }
+      for (int k = 0; k < cells.size(); k++) {
+        if (countsOf[cells.get(k)] == null) {
+          countsOf[cells.get(k)] = new IntList(4);
+        }
+        countsOf[cells.get(k)].add(cellsOf.size());
+      }
+      cellsOf.add(cells);
+      minesOf.add(this.board.surroundingMines(c) - flags);
+    }
+
+    ArrayList<FrontierComponent> components = new ArrayList<FrontierComponent>();
+    boolean[] countSeen = new boolean[cellsOf.size()];
+    boolean[] cellSeen = new boolean[n];
+    for (int start = 0; start < cellsOf.size(); start++) {
+      if (countSeen[start]) {
+        continue;
+      }
+      IntList order = new IntList();
+      IntList counts = new IntList();
+      counts.add(start);
+      countSeen[start] = true;
+      for (int q = 0; q < counts.size(); q++) {
+        IntList cells = cellsOf.get(counts.get(q));
+        for (int k = 0; k < cells.size(); k++) {
+          int cell = cells.get(k);
+          if (cellSeen[cell]) {
+            continue;
+          }
+          cellSeen[cell] = true;
+          order.add(cell);
+          IntList touching = countsOf[cell];
+          for (int t = 0; t < touching.size(); t++) {
+            if (!countSeen[touching.get(t)]) {
+              countSeen[touching.get(t)] = true;
+              counts.add(touching.get(t));
+            }
+          }
+        }
+      }
+      components.add(new FrontierComponent(order, counts, cellsOf, minesOf));
+    }
+    return components;
+  }
+
+  // the arrangements of mines in the given component, from the cache if it has
+  // been counted before
+  ComponentOdds oddsOf(FrontierComponent c) {
+    String key = c.key();
+    ComponentOdds odds = this.cache.get(key);
+    if (odds == null) {
+      odds = c.count();
+      if (this.cache.size() >= CACHE_LIMIT) {
+        this.cache.clear();
+      }
+      this.cache.put(key, odds);
+    }
+    return odds;
+  }
+
+  // the number of ways to place remaining - s mines among free cells, for each s
+  // from 0 to maxS, all scaled by the same factor so the largest is 1
+  double[] scaledBinomials(int free, int remaining, int maxS) {
+    double[] logs = new double[maxS + 1];
+    double max = Double.NEGATIVE_INFINITY;
+    for (int s = 0; s <= maxS; s++) {
+      int r = remaining - s;
+      logs[s] = r < 0 || r > free ? Double.NEGATIVE_INFINITY : this.logChoose(free, r);
+      max = Math.max(max, logs[s]);
+    }
+    double[] scaled = new double[maxS + 1];
+    for (int s = 0; s <= maxS; s++) {
+      scaled[s] = logs[s] == Double.NEGATIVE_INFINITY ? 0 : Math.exp(logs[s] - max);
+    }
+    return scaled;
+  }
+
+  // the natural log of n choose r
+  double logChoose(int n, int r) {
+    if (this.logFactorials.length <= n) {
+      double[] table = new double[n + 1];
+      for (int k = 1; k <= n; k++) {
+        table[k] = table[k - 1] + Math.log(k);
+      }
+      this.logFactorials = table;
+    }
+    return this.logFactorials[n] - this.logFactorials[r] - this.logFactorials[n - r];
+  }
+
+  // the product of the two polynomials with the given coefficients
+  static double[] convolve(double[] a, double[] b) {
+    double[] out = new double[a.length + b.length - 1];
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == 0) {
+        continue;
+      }
+      for (int j = 0; j < b.length; j++) {
+        out[i + j] += a[i] * b[j];
+      }
+    }
+    return out;
+  }
+
+}
+
+// Represents a group of frontier cells and the open counts that link them, with
+// the counts renumbered from 0 and each count's cells given by their position in
+// this group
+class FrontierComponent {
+  int[] cells;
+  int[] mines;
+  int[][] countCells;
+  int[][] cellCounts;
+  int[] firstPos;
+  int[] lastPos;
+
+  FrontierComponent(IntList order, IntList counts, ArrayList<IntList> cellsOf,
+      IntList minesOf) {
+    this.cells = order.toArray();
+    HashMap<Integer, Integer> pos = new HashMap<Integer, Integer>();
+    for (int p = 0; p < this.cells.length; p++) {
+      pos.put(this.cells[p], p);
+    }
+    this.mines = new int[counts.size()];
+    this.countCells = new int[counts.size()][];
+    this.firstPos = new int[counts.size()];
+    this.lastPos = new int[counts.size()];
+    IntList[] touching = new IntList[this.cells.length];
+    for (int p = 0; p < this.cells.length; p++) {
+      touching[p] = new IntList(4);
+    }
+    for (int c = 0; c < counts.size(); c++) {
+      IntList cells = cellsOf.get(counts.get(c));
+      this.mines[c] = minesOf.get(counts.get(c));
+      this.countCells[c] = new int[cells.size()];
+      this.firstPos[c] = this.cells.length;
+      for (int k = 0; k < cells.size(); k++) {
+        int p = pos.get(cells.get(k));
+        this.countCells[c][k] = p;
+        this.firstPos[c] = Math.min(this.firstPos[c], p);
+        this.lastPos[c] = Math.max(this.lastPos[c], p);
+        touching[p].add(c);
+      }
+    }
+    this.cellCounts = new int[this.cells.length][];
+    for (int p = 0; p < this.cells.length; p++) {
+      this.cellCounts[p] = touching[p].toArray();
+    }
+  }
+
+  // a description of this component that is equal for any two components with
+  // the same cells and the same counts over them
+  String key() {
+    StringBuilder key = new StringBuilder();
+    for (int cell : this.cells) {
+      key.append(cell).append(',');
+    }
+    for (int c = 0; c < this.mines.length; c++) {
+      key.append('|').append(this.mines[c]).append(':');
+      for (int p : this.countCells[c]) {
+        key.append(p).append(',');
+      }
+    }
+    return key.toString();
+  }
+
+  // counts the arrangements of mines over this component's cells that satisfy
+  // every count, by number of mines, and for each cell how many of those have
+  // a mine there
+  ComponentOdds count() {
+    int[] needed = this.mines.clone();
+    int[] left = new int[this.mines.length];
+    for (int c = 0; c < this.mines.length; c++) {
+      left[c] = this.countCells[c].length;
+    }
+    ComponentOdds odds = this.count(0, needed, left, new HashMap<String, ComponentOdds>());
+    return odds.normalized();
+  }
+
+  // counts the arrangements of the cells from position p on, given the mines
+  // each count still needs and the cells each count has left to fill, reusing
+  // the answer for any earlier position reached with the same counts in progress
+  ComponentOdds count(int p, int[] needed, int[] left, HashMap<String, ComponentOdds> memo) {
+    if (p == this.cells.length) {
+      return ComponentOdds.empty(this.cells.length, p);
+    }
+    String key = this.memoKey(p, needed);
+    ComponentOdds known = memo.get(key);
+    if (known != null) {
+      return known;
+    }
+    ComponentOdds result = ComponentOdds.none(this.cells.length, p);
+    for (int mine = 0; mine <= 1; mine++) {
+      if (this.fits(p, mine, needed, left)) {
+        for (int c : this.cellCounts[p]) {
+          needed[c] -= mine;
+          left[c]--;
+        }
+        ComponentOdds rest = this.count(p + 1, needed, left, memo);
+        for (int c : this.cellCounts[p]) {
+          needed[c] += mine;
+          left[c]++;
+        }
+        result.add(rest, p, mine == 1);
+      }
+    }
+    memo.put(key, result);
+    return result;
+  }
+
+  // can the cell at position p hold the given number of mines (0 or 1) without
+  // leaving one of its counts over- or under-filled?
+  boolean fits(int p, int mine, int[] needed, int[] left) {
+    for (int c : this.cellCounts[p]) {
+      int stillNeeded = needed[c] - mine;
+      if (stillNeeded < 0 || stillNeeded > left[c] - 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the position together with the mines still needed by every count that has
+  // been started but not finished at that position; counts not yet started
+  // still need all their mines, and finished ones need none
+  String memoKey(int p, int[] needed) {
+    StringBuilder key = new StringBuilder().append(p);
+    for (int c = 0; c < needed.length; c++) {
+      if (this.firstPos[c] < p && this.lastPos[c] >= p) {
+        key.append(',').append(c).append('=').append(needed[c]);
+      }
+    }
+    return key.toString();
+  }
+
+}
+
+// Represents the arrangements of mines over the cells of a FrontierComponent from
+// position from on: ways[m] counts those with m mines, and mineWays[p - from][m]
+// those of them with a mine in the cell at position p
+class ComponentOdds {
+  int from;
+  double[] ways;
+  double[][] mineWays;
+
+  ComponentOdds(int from, double[] ways, double[][] mineWays) {
+    this.from = from;
+    this.ways = ways;
+    this.mineWays = mineWays;
+  }
+
+  // the single, empty arrangement of no cells, for a component of the given size
+  static ComponentOdds empty(int size, int from) {
+    ComponentOdds odds = ComponentOdds.none(size, from);
+    odds.ways[0] = 1;
+    return odds;
+  }
+
+  // no arrangements at all of the cells from the given position on
+  static ComponentOdds none(int size, int from) {
+    return new ComponentOdds(from, new double[size - from + 1],
+        new double[size - from][size - from + 1]);
+  }
+
+  // EFFECT: adds the arrangements of the given odds for the later cells, with the
+  // cell at position p holding a mine or not
+  void add(ComponentOdds rest, int p, boolean mine) {
+    int shift = mine ? 1 : 0;
+    for (int m = 0; m < rest.ways.length; m++) {
+      if (rest.ways[m] == 0) {
+        continue;
+      }
+      this.ways[m + shift] += rest.ways[m];
+      if (mine) {
+        this.mineWays[p - this.from][m + shift] += rest.ways[m];
+      }
+      for (int q = 0; q < rest.mineWays.length; q++) {
+        this.mineWays[q + rest.from - this.from][m + shift] += rest.mineWays[q][m];
+      }
+    }
+  }
+
+  // these odds scaled so the most common mine count has weight 1, which leaves
+  // every probability unchanged and keeps large components within range
+  ComponentOdds normalized() {
+    double max = 0;
+    for (double w : this.ways) {
+      max = Math.max(max, w);
+    }
+    if (max == 0) {
+      return this;
+    }
+    double[] ways = new double[this.ways.length];
+    double[][] mineWays = new double[this.mineWays.length][this.ways.length];
+    for (int m = 0; m < ways.length; m++) {
+      ways[m] = this.ways[m] / max;
+      for (int p = 0; p < mineWays.length; p++) {
+        mineWays[p][m] = this.mineWays[p][m] / max;
+      }
+    }
+    return new ComponentOdds(this.from, ways, mineWays);
+  }
+
+}
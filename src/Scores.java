@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*-
+ * A score file is a header followed by one fixed-width record per finished
+ * game, in the order the games finished, every field big-endian:
+ *
+ *   header  offset  0  int   MAGIC, "MSSC"
+ *           offset  4  int   VERSION
+ *   record  offset  0  int   width
+ *           offset  4  int   height
+ *           offset  8  int   number of mines
+ *           offset 12  long  seed the mines were drawn from, or NO_SEED
+ *           offset 20  int   ticks played
+ *           offset 24  int   moves made
+ *           offset 28  long  time finished, in milliseconds since the epoch
+ *           offset 36  byte  1 if the game was won, else 0
+ *
+ * Records are only ever appended, so the file is rebuilt into its index by
+ * reading it once from start to end; a record cut short by a crash is dropped
+ * when the file is next opened.
+ */
+
+// Represents the result of one finished game
+class GameResult {
+  // stands for the seed of a game whose mines were not drawn from a known seed
+  static final long NO_SEED = Long.MIN_VALUE;
+
+  int width;
+  int height;
+  int numMines;
+  long seed;
+  int ticks;
+  int moves;
+  long finishedAt;
+  boolean won;
+
+  GameResult(int width, int height, int numMines, long seed, int ticks, int moves,
+      long finishedAt, boolean won) {
+    this.width = width;
+    this.height = height;
+    this.numMines = numMines;
+    this.seed = seed;
+    this.ticks = ticks;
+    this.moves = moves;
+    this.finishedAt = finishedAt;
+    this.won = won;
+  }
+
+  // the result whose record starts at the given buffer's position
+  // EFFECT: moves the buffer past the record
+  static GameResult read(ByteBuffer in) {
+    int start = in.position();
+    GameResult result = new GameResult(in.getInt(start), in.getInt(start + 4),
+        in.getInt(start + 8), in.getLong(start + 12), in.getInt(start + 20),
+        in.getInt(start + 24), in.getLong(start + 28), in.get(start + 36) == 1);
+    in.position(start + ScoreStore.RECORD_SIZE);
+    return result;
+  }
+
+  // EFFECT: writes this result's record at the given buffer's position, moving
+  // the buffer past it
+  void write(ByteBuffer out) {
+    int start = out.position();
+    out.putInt(start, this.width);
+    out.putInt(start + 4, this.height);
+    out.putInt(start + 8, this.numMines);
+    out.putLong(start + 12, this.seed);
+    out.putInt(start + 20, this.ticks);
+    out.putInt(start + 24, this.moves);
+    out.putLong(start + 28, this.finishedAt);
+    out.put(start + 36, (byte) (this.won ? 1 : 0));
+    for (int k = 37; k < ScoreStore.RECORD_SIZE; k++) {
+      out.put(start + k, (byte) 0);
+    }
+    out.position(start + ScoreStore.RECORD_SIZE);
+  }
+
+}
+
+// Represents what is known of every game of one board size and mine count: how
+// many were played and won, the times of the wins, and which records hold them
+class ScoreIndex {
+  int games;
+  int wins;
+  int bestTicks;
+  Histogram winTicks;
+  IntList records;
+
+  ScoreIndex(String name) {
+    this.games = 0;
+    this.wins = 0;
+    this.bestTicks = -1;
+    this.winTicks = new Histogram(name);
+    this.records = new IntList();
+  }
+
+  // EFFECT: counts the given result, which is kept in the given record
+  void add(GameResult result, int record) {
+    this.games++;
+    if (result.won) {
+      this.wins++;
+      this.winTicks.record(result.ticks);
+      if (this.bestTicks < 0 || result.ticks < this.bestTicks) {
+        this.bestTicks = result.ticks;
+      }
+    }
+    this.records.add(record);
+  }
+
+  // the fewest ticks any win took, or -1 if no game has been won
+  int best() {
+    return this.bestTicks;
+  }
+
+  // the most ticks taken by the fastest given percentage of wins, exact below
+  // 2 * Histogram.SUB_BUCKETS ticks and otherwise within one part in
+  // Histogram.SUB_BUCKETS; 0 if no game has been won
+  long percentile(double percent) {
+    return this.winTicks.percentile(percent);
+  }
+
+  // the fraction of games won
+  double winRate() {
+    return this.games == 0 ? 0 : (double) this.wins / this.games;
+  }
+
+}
+
+// Represents an open score file: every result in it, indexed in memory by board
+// size and mine count, plus the results added since it was opened. Adding a
+// result updates the index and queues its record, and never waits for the disk:
+// a writer thread appends whatever has queued in one write and forces it to
+// the storage device once, so results that finish while a batch is being
+// forced share the next force
+class ScoreStore {
+  static final int MAGIC = 0x4D535343;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 8;
+  static final int RECORD_SIZE = 40;
+  // the most records written and forced at once
+  static final int MAX_BATCH = 4096;
+
+  Path path;
+  FileChannel channel;
+  HashMap<Long, ScoreIndex> index;
+  LinkedBlockingQueue<GameResult> queue;
+  ExecutorService writer;
+  int records;
+  int durable;
+  IOException failure;
+
+  // indexes every whole record in the given channel, whose header has been
+  // checked, dropping any record cut short, and starts the writer
+  ScoreStore(Path path, FileChannel channel) throws IOException {
+    this.path = path;
+    this.channel = channel;
+    this.index = new HashMap<Long, ScoreIndex>();
+    this.queue = new LinkedBlockingQueue<GameResult>();
+    this.records = 0;
+    this.failure = null;
+    long whole = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+    if (whole > Integer.MAX_VALUE) {
+      throw new IOException("Too many records in score file: " + path);
+    }
+    channel.truncate(HEADER_SIZE + whole * RECORD_SIZE);
+    ByteBuffer in = ByteBuffer.allocate(RECORD_SIZE * MAX_BATCH);
+    while (this.records < whole) {
+      in.clear();
+      in.limit((int) Math.min(in.capacity(), (whole - this.records) * RECORD_SIZE));
+      long position = HEADER_SIZE + (long) this.records * RECORD_SIZE;
+      while (in.hasRemaining()) {
+        if (channel.read(in, position + in.position()) < 0) {
+          throw new IOException("Score file shrank while being read: " + path);
+        }
+      }
+      in.flip();
+      while (in.hasRemaining()) {
+        GameResult result = GameResult.read(in);
+        this.indexOf(result.width, result.height, result.numMines).add(result, this.records);
+        this.records++;
+      }
+    }
+    this.durable = this.records;
+    this.writer = Executors.newSingleThreadExecutor(new DaemonThreads());
+    this.writer.execute(new ScoreWriter(this));
+  }
+
+  // opens the score file at the given path, creating it if there is none
+  static ScoreStore open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    if (channel.size() == 0) {
+      header.putInt(0, MAGIC);
+      header.putInt(4, VERSION);
+      channel.write(header, 0);
+      channel.force(false);
+    }
+    else {
+      channel.read(header, 0);
+      if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+        channel.close();
+        throw new IOException("Not a score file: " + path);
+      }
+      if (header.getInt(4) != VERSION) {
+        channel.close();
+        throw new IOException("Unsupported score file version " + header.getInt(4));
+      }
+    }
+    return new ScoreStore(path, channel);
+  }
+
+  // the key of the index of games of the given size and mine count
+  static long key(int width, int height, int numMines) {
+    if (width >= 1 << 16 || height >= 1 << 16) {
+      throw new IllegalArgumentException(
+          "Cannot keep scores for boards wider or taller than 65535 tiles");
+    }
+    return (long) width << 48 | (long) height << 32 | (numMines & 0xFFFFFFFFL);
+  }
+
+  // the index of games of the given size and mine count, made empty if there is
+  // none yet
+  ScoreIndex indexOf(int width, int height, int numMines) {
+    long key = ScoreStore.key(width, height, numMines);
+    ScoreIndex scores = this.index.get(key);
+    if (scores == null) {
+      scores = new ScoreIndex(width + "x" + height + "/" + numMines);
+      this.index.put(key, scores);
+    }
+    return scores;
+  }
+
+  // the index of games of the given size and mine count, or null if none has
+  // been played
+  synchronized ScoreIndex scores(int width, int height, int numMines) {
+    return this.index.get(ScoreStore.key(width, height, numMines));
+  }
+
+  // EFFECT: counts the given result and queues its record to be appended
+  synchronized void add(GameResult result) {
+    this.indexOf(result.width, result.height, result.numMines).add(result, this.records);
+    this.records++;
+    this.queue.add(result);
+  }
+
+  // EFFECT: waits until every result added so far is on the storage device
+  synchronized void flush() throws IOException {
+    try {
+      while (this.durable < this.records && this.failure == null) {
+        this.wait();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while flushing scores to " + this.path, e);
+    }
+    if (this.failure != null) {
+      throw new IOException("Could not write scores to " + this.path, this.failure);
+    }
+  }
+
+  // every game of the given size and mine count, oldest first, read back from
+  // the file once every result added so far is on it
+  ArrayList<GameResult> games(int width, int height, int numMines) throws IOException {
+    this.flush();
+    ArrayList<GameResult> games = new ArrayList<GameResult>();
+    ScoreIndex scores = this.scores(width, height, numMines);
+    if (scores == null) {
+      return games;
+    }
+    ByteBuffer in = ByteBuffer.allocate(RECORD_SIZE);
+    for (int k = 0; k < scores.records.size(); k++) {
+      in.clear();
+      long position = HEADER_SIZE + (long) scores.records.get(k) * RECORD_SIZE;
+      while (in.hasRemaining()) {
+        if (this.channel.read(in, position + in.position()) < 0) {
+          throw new IOException("Score file ends inside a record: " + this.path);
+        }
+      }
+      in.flip();
+      games.add(GameResult.read(in));
+    }
+    return games;
+  }
+
+  // EFFECT: appends queued records in batches until the writer is stopped, each
+  // batch in one write followed by one force, then counts them as durable; a
+  // failure stops the writer and is reported by flush
+  void writeBatches() {
+    ArrayList<GameResult> batch = new ArrayList<GameResult>();
+    ByteBuffer out = ByteBuffer.allocate(RECORD_SIZE * MAX_BATCH);
+    try {
+      while (true) {
+        batch.add(this.queue.take());
+        this.queue.drainTo(batch, MAX_BATCH - 1);
+        out.clear();
+        for (GameResult result : batch) {
+          result.write(out);
+        }
+        out.flip();
+        long position;
+        synchronized (this) {
+          position = HEADER_SIZE + (long) this.durable * RECORD_SIZE;
+        }
+        while (out.hasRemaining()) {
+          position += this.channel.write(out, position);
+        }
+        this.channel.force(false);
+        synchronized (this) {
+          this.durable += batch.size();
+          this.notifyAll();
+        }
+        batch.clear();
+      }
+    }
+    catch (InterruptedException e) {
+      // the store was closed
+    }
+    catch (IOException e) {
+      synchronized (this) {
+        this.failure = e;
+        this.notifyAll();
+      }
+    }
+  }
+
+  // EFFECT: flushes every result added so far, stops the writer and closes the
+  // file; nothing may be added afterwards
+  void close() throws IOException {
+    try {
+      this.flush();
+    }
+    finally {
+      this.writer.shutdownNow();
+      try {
+        this.writer.awaitTermination(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      this.channel.close();
+    }
+  }
+
+}
+
+// Appends a ScoreStore's queued records from its writer thread
+class ScoreWriter implements Runnable {
+  ScoreStore store;
+
+  ScoreWriter(ScoreStore store) {
+    this.store = store;
+  }
+
+  public void run() {
+    this.store.writeBatches();
+  }
+
+}
@@ -0,0 +1,446 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*-
+ * Hosts many games at once over a line-based protocol on a local TCP socket.
+ * Sessions outlive connections: any connection may play any session by id.
+ *
+ *   NEW width height mines [seed]  ->  SESSION id
+ *   ENDLESS density [seed]         ->  SESSION id
+ *   OPEN id x y                    ->  OK status cell:count ...  (count M is a mine)
+ *   CHORD id x y                   ->  OK status cell:count ...
+ *   FLAG id x y                    ->  OK status minesLeft
+ *   RESTART id [seed]              ->  OK status
+ *   STATE id                       ->  OK status moves minesLeft
+ *   QUIT                           ->  BYE, and the connection is closed
+ *
+ * Cells are given by index, y * width + x. Any request that cannot be carried
+ * out gets ERR and a reason; once a game is won or lost, only RESTART and STATE
+ * are carried out until it is restarted.
+ *
+ * ENDLESS starts a game on a ChunkedBoard, which has no edges and holds the given
+ * fraction of its cells as mines. Its game is never won, only lost, and it is
+ * played with the same requests, but its cells are given as x,y pairs, either of
+ * which may be negative, and a few replies differ:
+ *
+ *   OPEN id x y   ->  OK status x,y:count ...
+ *   CHORD id x y  ->  OK status x,y:count ...
+ *   FLAG id x y   ->  OK status flags
+ *   STATE id      ->  OK status moves opened flags
+ *
+ * Sessions of either kind not used for the idle timeout are evicted.
+ *
+ * Run with the game's classpath:
+ *   java GameServer [port] [idle timeout in seconds]
+ */
+
+// A game hosted by a GameServer, whose requests are answered one at a time
+interface ISession {
+  // the reply to the given OPEN, CHORD, FLAG, RESTART or STATE request on this
+  // session, made at the given time
+  // EFFECT: carries out the request, and records when it was made
+  String handle(String[] words, long now);
+
+  // the time this session was last asked anything
+  long lastUsed();
+}
+
+// Represents one game hosted by a GameServer, and when it was last played
+class GameSession implements ISession {
+  Engine engine;
+  volatile long lastUsed;
+
+  GameSession(Engine engine, long now) {
+    this.engine = engine;
+    this.lastUsed = now;
+  }
+
+  // the time this session was last asked anything
+  public long lastUsed() {
+    return this.lastUsed;
+  }
+
+  // the reply to the given request on this session, made at the given time
+  public synchronized String handle(String[] words, long now) {
+    this.lastUsed = now;
+    String command = words[0];
+    if (command.equals("STATE")) {
+      return "OK " + this.engine.status() + " " + this.engine.moves + " "
+          + this.engine.minesLeft();
+    }
+    if (command.equals("RESTART")) {
+      long seed = words.length > 2 ? Long.parseLong(words[2]) : new Random().nextLong();
+      this.engine.restart(new Random(seed));
+      return "OK " + this.engine.status();
+    }
+    if (words.length != 4) {
+      throw new IllegalArgumentException("Expected " + command + " id x y");
+    }
+    int x = Integer.parseInt(words[2]);
+    int y = Integer.parseInt(words[3]);
+    if (!this.engine.inBounds(x, y)) {
+      throw new IllegalArgumentException("No cell at " + x + " " + y);
+    }
+    if (this.engine.status() != GameStatus.PLAYING) {
+      throw new IllegalArgumentException("Game over");
+    }
+    if (command.equals("FLAG")) {
+      this.engine.toggleFlag(x, y);
+      return "OK " + this.engine.status() + " " + this.engine.minesLeft();
+    }
+    Board board = this.engine.grid.board;
+    if (command.equals("CHORD") && !board.isOpen(board.index(x, y))) {
+      throw new IllegalArgumentException("Cannot chord a closed cell");
+    }
+    IntList opened = this.engine.open(x, y);
+    StringBuilder reply = new StringBuilder("OK ").append(this.engine.status());
+    for (int k = 0; k < opened.size(); k++) {
+      int i = opened.get(k);
+      reply.append(' ').append(i).append(':');
+      if (board.hasMine(i)) {
+        reply.append('M');
+      }
+      else {
+        reply.append(board.surroundingMines(i));
+      }
+    }
+    return reply.toString();
+  }
+
+}
+
+// Represents one game on a board with no edges hosted by a GameServer, and when
+// it was last played
+class EndlessSession implements ISession {
+  // the most chunks a session may create, so one session cannot take the heap;
+  // once it has, it can still be restarted
+  static final int MAX_CHUNKS = 1024;
+
+  ChunkedBoard board;
+  double density;
+  int moves;
+  volatile long lastUsed;
+
+  EndlessSession(ChunkedBoard board, double density, long now) {
+    this.board = board;
+    this.density = density;
+    this.moves = 0;
+    this.lastUsed = now;
+  }
+
+  // the time this session was last asked anything
+  public long lastUsed() {
+    return this.lastUsed;
+  }
+
+  // is the game lost or still being played? it is never won
+  GameStatus status() {
+    return this.board.exploded ? GameStatus.LOST : GameStatus.PLAYING;
+  }
+
+  // the reply to the given request on this session, made at the given time
+  public synchronized String handle(String[] words, long now) {
+    this.lastUsed = now;
+    String command = words[0];
+    if (command.equals("STATE")) {
+      return "OK " + this.status() + " " + this.moves + " " + this.board.openSafe + " "
+          + this.board.numFlags;
+    }
+    if (command.equals("RESTART")) {
+      long seed = words.length > 2 ? Long.parseLong(words[2]) : new Random().nextLong();
+      this.board = new ChunkedBoard(seed, this.density);
+      this.moves = 0;
+      return "OK " + this.status();
+    }
+    if (words.length != 4) {
+      throw new IllegalArgumentException("Expected " + command + " id x y");
+    }
+    int x = Integer.parseInt(words[2]);
+    int y = Integer.parseInt(words[3]);
+    if (this.status() != GameStatus.PLAYING) {
+      throw new IllegalArgumentException("Game over");
+    }
+    if (this.board.chunkCount() >= MAX_CHUNKS) {
+      throw new IllegalArgumentException("Board has grown as large as a session may");
+    }
+    if (command.equals("FLAG")) {
+      if (!this.board.isOpen(x, y)) {
+        this.board.toggleFlag(x, y);
+        this.moves++;
+      }
+      return "OK " + this.status() + " " + this.board.numFlags;
+    }
+    if (command.equals("CHORD") && !this.board.isOpen(x, y)) {
+      throw new IllegalArgumentException("Cannot chord a closed cell");
+    }
+    IntList opened = this.board.open(x, y);
+    if (opened.size() > 0) {
+      this.moves++;
+    }
+    StringBuilder reply = new StringBuilder("OK ").append(this.status());
+    for (int k = 0; k < opened.size(); k += 2) {
+      int cx = opened.get(k);
+      int cy = opened.get(k + 1);
+      reply.append(' ').append(cx).append(',').append(cy).append(':');
+      if (this.board.hasMine(cx, cy)) {
+        reply.append('M');
+      }
+      else {
+        reply.append(this.board.surroundingMines(cx, cy));
+      }
+    }
+    return reply.toString();
+  }
+
+}
+
+// Serves GameSessions to any number of connections, each on its own thread,
+// and evicts sessions left idle for longer than the timeout; running a
+// GameServer accepts connections until it is closed
+class GameServer implements Runnable {
+  // the largest board a session may ask for, so one request cannot take the heap
+  static final int MAX_TILES = 1 << 20;
+
+  ServerSocket socket;
+  ConcurrentHashMap<Long, ISession> sessions;
+  AtomicLong nextId;
+  long idleMillis;
+  ExecutorService connections;
+  ScheduledExecutorService evictor;
+
+  // listens on the given local port, or any free one if it is 0
+  GameServer(int port, long idleMillis) throws IOException {
+    this.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    this.sessions = new ConcurrentHashMap<Long, ISession>();
+    this.nextId = new AtomicLong(1);
+    this.idleMillis = idleMillis;
+    this.connections = Executors.newCachedThreadPool();
+    this.evictor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7171;
+    long idleSeconds = args.length > 1 ? Long.parseLong(args[1]) : 600;
+    GameServer server = new GameServer(port, idleSeconds * 1000);
+    System.out.println("Serving Minesweeper on port " + server.port());
+    server.start();
+  }
+
+  // the port this server listens on
+  int port() {
+    return this.socket.getLocalPort();
+  }
+
+  // EFFECT: accepts connections on a background thread until closed, and
+  // checks for idle sessions twice per timeout
+  void start() {
+    long period = Math.max(this.idleMillis / 2, 1);
+    this.evictor.scheduleAtFixedRate(new IdleEviction(this), period, period,
+        TimeUnit.MILLISECONDS);
+    this.connections.execute(this);
+  }
+
+  // EFFECT: hands each new connection to its own thread until the socket closes
+  public void run() {
+    try {
+      while (true) {
+        this.connections.execute(new GameConnection(this, this.socket.accept()));
+      }
+    }
+    catch (IOException e) {
+      // the socket was closed
+    }
+  }
+
+  // EFFECT: answers each line from the given connection until it quits or
+  // disconnects
+  void serve(Socket client) {
+    try (Socket c = client;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(c.getOutputStream(), true)) {
+      String line = in.readLine();
+      while (line != null) {
+        String reply = this.handle(line, System.currentTimeMillis());
+        out.println(reply);
+        if (reply.equals("BYE")) {
+          return;
+        }
+        line = in.readLine();
+      }
+    }
+    catch (IOException e) {
+      // the client went away
+    }
+  }
+
+  // the reply to the given request line, made at the given time
+  String handle(String line, long now) {
+    String[] words = line.trim().split("\\s+");
+    try {
+      if (words[0].equals("QUIT")) {
+        return "BYE";
+      }
+      if (words[0].equals("NEW")) {
+        return this.newSession(words, now);
+      }
+      if (words[0].equals("ENDLESS")) {
+        return this.newEndlessSession(words, now);
+      }
+      if (words.length < 2) {
+        return "ERR Unknown request";
+      }
+      ISession session = this.sessions.get(Long.parseLong(words[1]));
+      if (session == null) {
+        return "ERR No session " + words[1];
+      }
+      switch (words[0]) {
+        case "OPEN":
+        case "CHORD":
+        case "FLAG":
+        case "RESTART":
+        case "STATE":
+          return session.handle(words, now);
+        default:
+          return "ERR Unknown request";
+      }
+    }
+    catch (NumberFormatException e) {
+      return "ERR Not a number";
+    }
+    catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // starts a session for the given NEW request, made at the given time, and
+  // returns the reply
+  String newSession(String[] words, long now) {
+    if (words.length != 4 && words.length != 5) {
+      throw new IllegalArgumentException("Expected NEW width height mines [seed]");
+    }
+    int width = Integer.parseInt(words[1]);
+    int height = Integer.parseInt(words[2]);
+    int numMines = Integer.parseInt(words[3]);
+    if (width < 1 || height < 1 || (long) width * height > MAX_TILES) {
+      throw new IllegalArgumentException("Board must have between 1 and " + MAX_TILES + " tiles");
+    }
+    if (numMines < 0) {
+      throw new IllegalArgumentException("Mines cannot be negative");
+    }
+    long seed = words.length == 5 ? Long.parseLong(words[4]) : new Random().nextLong();
+    Engine engine = new Engine(seed, width, height, numMines, true);
+    return this.add(new GameSession(engine, now));
+  }
+
+  // starts a session on a board with no edges for the given ENDLESS request,
+  // made at the given time, and returns the reply
+  String newEndlessSession(String[] words, long now) {
+    if (words.length != 2 && words.length != 3) {
+      throw new IllegalArgumentException("Expected ENDLESS density [seed]");
+    }
+    double density = Double.parseDouble(words[1]);
+    long seed = words.length == 3 ? Long.parseLong(words[2]) : new Random().nextLong();
+    return this.add(new EndlessSession(new ChunkedBoard(seed, density), density, now));
+  }
+
+  // EFFECT: hosts the given session under the next id
+  // returns the reply naming it
+  String add(ISession session) {
+    long id = this.nextId.getAndIncrement();
+    this.sessions.put(id, session);
+    return "SESSION " + id;
+  }
+
+  // EFFECT: removes every session last used more than the idle timeout before
+  // the given time; returns how many were removed
+  int evictIdle(long now) {
+    int evicted = 0;
+    Iterator<ISession> it = this.sessions.values().iterator();
+    while (it.hasNext()) {
+      if (now - it.next().lastUsed() > this.idleMillis) {
+        it.remove();
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  // EFFECT: stops accepting connections and evicting sessions
+  void close() throws IOException {
+    this.socket.close();
+    this.evictor.shutdownNow();
+    this.connections.shutdownNow();
+  }
+
+}
+
+// Serves one connection to a GameServer
+class GameConnection implements Runnable {
+  GameServer server;
+  Socket socket;
+
+  GameConnection(GameServer server, Socket socket) {
+    this.server = server;
+    this.socket = socket;
+  }
+
+  public void run() {
+    this.server.serve(this.socket);
+  }
+
+}
+
+// Evicts the idle sessions of a GameServer
+class IdleEviction implements Runnable {
+  GameServer server;
+
+  IdleEviction(GameServer server) {
+    this.server = server;
+  }
+
+  public void run() {
+    this.server.evictIdle(System.currentTimeMillis());
+  }
+
+}
+
+// A blocking client for a GameServer, one request at a time
+class GameClient {
+  Socket socket;
+  BufferedReader in;
+  PrintWriter out;
+
+  GameClient(int port) throws IOException {
+    this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    this.in = new BufferedReader(
+        new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+    this.out = new PrintWriter(this.socket.getOutputStream(), true);
+  }
+
+  // sends the given request and waits for its reply
+  String send(String request) throws IOException {
+    this.out.println(request);
+    return this.in.readLine();
+  }
+
+  // EFFECT: closes the connection
+  void close() throws IOException {
+    this.socket.close();
+  }
+
+}
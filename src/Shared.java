@@ -0,0 +1,290 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Represents one game played by many players at once, each from their own
+// thread. Every tile's byte is changed only by compare-and-set, so safe moves
+// take no lock and two moves contend only when they race for the same tile:
+// each tile is opened, and counted, by exactly one move, and a flood that meets
+// a tile another move has opened or flagged passes it by, just as it would had
+// the moves been made one after the other. The move that opened a tile expands
+// it, so every open tile with no adjacent mines has its neighbors opened.
+// The result changes at most once, under this board's lock, when a mine or the
+// last safe tile is opened: every other safe tile claims its place in the count
+// of closed safe tiles before it opens, never taking that count below 1, so the
+// last one is always opened under the lock and the game is won there. Moves
+// that begin after the result has changed do nothing, no mine is opened on a
+// won board, and the last safe tile is never opened on a lost one.
+class SharedBoard {
+  static final VarHandle TILES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+  Grid grid;
+  Board board;
+  volatile int pendingMines;
+  AtomicInteger numFlags;
+  AtomicInteger closedSafe;
+  AtomicInteger openMines;
+  AtomicReference<GameStatus> result;
+
+  // shares the given Grid, which must keep its tiles on the heap and must only
+  // be played through this SharedBoard until it is synced
+  SharedBoard(Grid grid) {
+    if (grid.board.cells == null) {
+      throw new IllegalArgumentException("A shared board must keep its tiles on the heap");
+    }
+    this.grid = grid;
+    this.board = grid.board;
+    this.pendingMines = grid.pendingMines;
+    this.numFlags = new AtomicInteger(this.board.numFlags);
+    this.closedSafe = new AtomicInteger(this.board.closedSafe);
+    this.openMines = new AtomicInteger(this.board.openMines);
+    GameStatus status = GameStatus.PLAYING;
+    if (this.board.openMines > 0) {
+      status = GameStatus.LOST;
+    }
+    else if (this.board.closedSafe == 0 && this.pendingMines == 0) {
+      status = GameStatus.WON;
+    }
+    this.result = new AtomicReference<GameStatus>(status);
+  }
+
+  // the packed byte of the tile at the given index, as last written by any thread
+  int cell(int i) {
+    return (byte) TILES.getVolatile(this.board.cells, i);
+  }
+
+  // EFFECT: sets the packed byte of the tile at the given index to bits if it is
+  // still expected; returns whether it was
+  boolean swapCell(int i, int expected, int bits) {
+    return TILES.compareAndSet(this.board.cells, i, (byte) expected, (byte) bits);
+  }
+
+  // is the game won, lost or still being played?
+  GameStatus status() {
+    return this.result.get();
+  }
+
+  // the number of flagged tiles
+  int numFlags() {
+    return this.numFlags.get();
+  }
+
+  // is the tile at the given index open?
+  boolean isOpen(int i) {
+    return (this.cell(i) & Board.OPEN) != 0;
+  }
+
+  // is the tile at the given index flagged?
+  boolean isFlagged(int i) {
+    return (this.cell(i) & Board.FLAG) != 0;
+  }
+
+  // the number of mines adjacent to the tile at the given index
+  int surroundingMines(int i) {
+    return this.cell(i) & Board.COUNT_MASK;
+  }
+
+  // counts the flagged tiles adjacent to the tile at the given index
+  int surroundingFlags(int i) {
+    int x = i % this.board.width;
+    int y = i / this.board.width;
+    int num = 0;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        if ((nx != x || ny != y) && this.isFlagged(this.board.index(nx, ny))) {
+          num++;
+        }
+      }
+    }
+    return num;
+  }
+
+  // EFFECT: places the pending mines away from the tile at the given index if
+  // they have not been placed yet, holding back every other move until they are
+  void placePending(int i) {
+    if (this.pendingMines > 0) {
+      synchronized (this) {
+        if (this.pendingMines > 0) {
+          this.board.placeRandomMines(this.grid.rand, this.pendingMines, i);
+          this.closedSafe.set(this.board.closedSafe);
+          this.pendingMines = 0;
+        }
+      }
+    }
+  }
+
+  // EFFECT: opens the unflagged tile at the given coordinates as Board.open
+  // does for a click, flooding and chording alongside any other moves; returns
+  // the indices of the tiles this move opened, in the order opened
+  IntList open(int x, int y) {
+    IntList opened = new IntList();
+    if (!this.board.inBounds(x, y) || this.result.get() != GameStatus.PLAYING) {
+      return opened;
+    }
+    int i = this.board.index(x, y);
+    this.placePending(i);
+    if (this.isFlagged(i)) {
+      return opened;
+    }
+    int count = this.surroundingMines(i);
+    if (this.isOpen(i)) {
+      if (count == 0) {
+        this.openNeighbors(i, opened);
+      }
+    }
+    else {
+      this.reveal(i, opened);
+    }
+    if (count == this.surroundingFlags(i)) {
+      this.openNeighbors(i, opened);
+    }
+    for (int k = 0; k < opened.size(); k++) {
+      int c = opened.get(k);
+      if (this.surroundingMines(c) == 0) {
+        this.openNeighbors(c, opened);
+      }
+    }
+    if (this.closedSafe.get() == 0) {
+      synchronized (this) {
+        this.result.compareAndSet(GameStatus.PLAYING, GameStatus.WON);
+      }
+    }
+    return opened;
+  }
+
+  // EFFECT: opens every closed, unflagged tile adjacent to the tile at the given
+  // index, adding each to the given list
+  void openNeighbors(int i, IntList opened) {
+    int x = i % this.board.width;
+    int y = i / this.board.width;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        this.reveal(this.board.index(nx, ny), opened);
+      }
+    }
+  }
+
+  // EFFECT: opens the tile at the given index if it is closed and unflagged,
+  // adding it to the given list; a mine, or what may be the last safe tile, is
+  // opened under this board's lock
+  void reveal(int i, IntList opened) {
+    int bits = this.cell(i);
+    if ((bits & Board.MINE) != 0) {
+      synchronized (this) {
+        this.revealMine(i, opened);
+      }
+      return;
+    }
+    while ((bits & (Board.OPEN | Board.FLAG)) == 0) {
+      if (!this.claimSafe()) {
+        synchronized (this) {
+          this.revealLast(i, opened);
+        }
+        return;
+      }
+      if (this.swapCell(i, bits, bits | Board.OPEN)) {
+        opened.add(i);
+        return;
+      }
+      this.closedSafe.incrementAndGet();
+      bits = this.cell(i);
+    }
+  }
+
+  // EFFECT: takes one from the count of closed safe tiles unless that would
+  // leave none; returns whether it did
+  boolean claimSafe() {
+    int left = this.closedSafe.get();
+    while (left > 1) {
+      if (this.closedSafe.compareAndSet(left, left - 1)) {
+        return true;
+      }
+      left = this.closedSafe.get();
+    }
+    return false;
+  }
+
+  // EFFECT: opens the safe tile at the given index unless it is open or flagged
+  // or the game is lost, winning the game if no other safe tile is closed; the
+  // caller holds this board's lock
+  void revealLast(int i, IntList opened) {
+    if (this.result.get() == GameStatus.LOST) {
+      return;
+    }
+    int bits = this.cell(i);
+    while ((bits & (Board.OPEN | Board.FLAG)) == 0) {
+      if (this.swapCell(i, bits, bits | Board.OPEN)) {
+        if (this.closedSafe.decrementAndGet() == 0) {
+          this.result.compareAndSet(GameStatus.PLAYING, GameStatus.WON);
+        }
+        opened.add(i);
+        return;
+      }
+      bits = this.cell(i);
+    }
+  }
+
+  // EFFECT: opens the mine at the given index, losing the game, unless it is
+  // open or flagged or every safe tile is open, which wins the game; the caller
+  // holds this board's lock
+  void revealMine(int i, IntList opened) {
+    if (this.closedSafe.get() == 0) {
+      this.result.compareAndSet(GameStatus.PLAYING, GameStatus.WON);
+      return;
+    }
+    if (this.result.get() == GameStatus.WON) {
+      return;
+    }
+    int bits = this.cell(i);
+    while ((bits & (Board.OPEN | Board.FLAG)) == 0) {
+      if (this.swapCell(i, bits, bits | Board.OPEN)) {
+        this.openMines.incrementAndGet();
+        this.result.set(GameStatus.LOST);
+        opened.add(i);
+        return;
+      }
+      bits = this.cell(i);
+    }
+  }
+
+  // EFFECT: flags the closed tile at the given coordinates, or unflags it if it
+  // is flagged; returns whether the tile changed
+  boolean toggleFlag(int x, int y) {
+    if (!this.board.inBounds(x, y) || this.result.get() != GameStatus.PLAYING) {
+      return false;
+    }
+    int i = this.board.index(x, y);
+    if (this.pendingMines > 0) {
+      // placing mines writes tiles without compare-and-set, so wait it out
+      synchronized (this) {
+        return this.flip(i);
+      }
+    }
+    return this.flip(i);
+  }
+
+  // EFFECT: toggles the flag on the tile at the given index unless it is open;
+  // returns whether it was toggled
+  boolean flip(int i) {
+    int bits = this.cell(i);
+    while ((bits & Board.OPEN) == 0) {
+      if (this.swapCell(i, bits, bits ^ Board.FLAG)) {
+        this.numFlags.addAndGet((bits & Board.FLAG) == 0 ? 1 : -1);
+        return true;
+      }
+      bits = this.cell(i);
+    }
+    return false;
+  }
+
+  // EFFECT: records the running totals in the shared Grid, so it can be read or
+  // played on its own; call only once every move has finished
+  void sync() {
+    this.board.numFlags = this.numFlags.get();
+    this.board.closedSafe = this.closedSafe.get();
+    this.board.openMines = this.openMines.get();
+    this.grid.pendingMines = this.pendingMines;
+  }
+
+}
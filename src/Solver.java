@@ -0,0 +1,321 @@
+import java.util.Random;
+
+// Plays a Grid to the end using only what a player can see: the open cells'
+// mine counts and the flags. Safe cells and mines are deduced with the
+// single-cell rule (a count whose flags are all placed, or whose unknown cells
+// must all be mines) and the subset rule (two nearby counts whose unknown cells
+// nest). Only cells whose neighborhood changed since they were last checked are
+// evaluated again: they wait on a stack, deduplicated by a bitset, so solving
+// costs time proportional to the cells revealed rather than to board area
+class Solver {
+  Grid grid;
+  Board board;
+  long[] queued;
+  IntList pending;
+  Random rand;
+  ProbabilityEngine odds;
+  int numMines;
+  int guessCursor;
+  int moves;
+  int guesses;
+
+  // if rand is null, guesses are made in reading order; otherwise they are
+  // drawn from rand
+  Solver(Grid grid, Random rand) {
+    this.grid = grid;
+    this.board = grid.board;
+    this.queued = new long[(this.board.size() + 63) / 64];
+    this.pending = new IntList();
+    this.rand = rand;
+    this.odds = null;
+    this.numMines = 0;
+    this.guessCursor = 0;
+    this.moves = 0;
+    this.guesses = 0;
+  }
+
+  Solver(Grid grid) {
+    this(grid, null);
+  }
+
+  // guesses open the cell least likely to hold a mine, knowing the Grid holds
+  // the given number of mines
+  Solver(Grid grid, int numMines) {
+    this(grid, null);
+    this.odds = new ProbabilityEngine(this.board);
+    this.numMines = numMines;
+  }
+
+  // is the game on this Solver's Grid lost, won or still going?
+  GameStatus status() {
+    if (this.grid.gameOver()) {
+      return GameStatus.LOST;
+    }
+    else if (this.grid.win()) {
+      return GameStatus.WON;
+    }
+    return GameStatus.PLAYING;
+  }
+
+  // EFFECT: opens the cell at the given coordinates, then plays until the game
+  // ends, or until no cell can be deduced and, if guessing is allowed, every
+  // closed cell is flagged, so there is nothing left to guess
+  // returns how the game stands afterwards
+  GameStatus solve(int x, int y, boolean allowGuesses) {
+    this.open(this.board.index(x, y));
+    while (this.status() == GameStatus.PLAYING) {
+      this.propagate();
+      if (this.status() != GameStatus.PLAYING || !allowGuesses || !this.guess()) {
+        break;
+      }
+    }
+    return this.status();
+  }
+
+  // EFFECT: applies the single-cell and subset rules to every pending cell,
+  // and to every cell whose neighborhood they change, until none is left;
+  // returns whether any cell was opened or flagged
+  boolean propagate() {
+    int before = this.moves;
+    while (this.pending.size() > 0 && this.status() == GameStatus.PLAYING) {
+      int c = this.pending.removeLast();
+      this.queued[c >> 6] &= ~(1L << c);
+      this.evaluate(c);
+    }
+    return this.moves > before;
+  }
+
+  // EFFECT: opens or flags whatever the count on the cell at the given index
+  // determines, alone or together with a nearby count
+  void evaluate(int c) {
+    if (!this.board.isOpen(c) || this.board.hasMine(c)) {
+      return;
+    }
+    IntList unknown = this.unknownAround(c);
+    if (unknown.size() == 0) {
+      return;
+    }
+    int left = this.minesLeftAround(c);
+    if (left == 0) {
+      this.openAll(unknown, null);
+      return;
+    }
+    if (left == unknown.size()) {
+      this.flagAll(unknown, null);
+      return;
+    }
+    int x = c % this.board.width;
+    int y = c / this.board.width;
+    for (int ny = Math.max(y - 2, 0); ny <= Math.min(y + 2, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 2, 0); nx <= Math.min(x + 2, this.board.width - 1); nx++) {
+        int b = this.board.index(nx, ny);
+        if (b != c && this.board.isOpen(b) && !this.board.hasMine(b)
+            && this.applySubset(c, unknown, left, b)) {
+          return;
+        }
+      }
+    }
+  }
+
+  // EFFECT: if the unknown cells around one of the given counts all lie around
+  // the other, decides the cells around only the larger as all safe or all
+  // mines when the difference in mines left allows it; returns whether it did
+  boolean applySubset(int c, IntList unknownC, int leftC, int b) {
+    IntList unknownB = this.unknownAround(b);
+    int leftB = this.minesLeftAround(b);
+    if (unknownB.size() == 0) {
+      return false;
+    }
+    if (this.containsAll(unknownB, unknownC)) {
+      return this.decideDifference(unknownB, unknownC, leftB - leftC);
+    }
+    if (this.containsAll(unknownC, unknownB)) {
+      return this.decideDifference(unknownC, unknownB, leftC - leftB);
+    }
+    return false;
+  }
+
+  // EFFECT: given that the cells in outer but not inner hold the given number of
+  // mines, opens them if that is none or flags them if that is all of them;
+  // returns whether it did either
+  boolean decideDifference(IntList outer, IntList inner, int mines) {
+    int extra = outer.size() - inner.size();
+    if (extra == 0) {
+      return false;
+    }
+    if (mines == 0) {
+      this.openAll(outer, inner);
+      return true;
+    }
+    if (mines == extra) {
+      this.flagAll(outer, inner);
+      return true;
+    }
+    return false;
+  }
+
+  // does the first list contain every int in the second?
+  boolean containsAll(IntList big, IntList small) {
+    if (small.size() > big.size()) {
+      return false;
+    }
+    for (int k = 0; k < small.size(); k++) {
+      if (!this.contains(big, small.get(k))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // does the given list contain the given int?
+  boolean contains(IntList list, int n) {
+    for (int k = 0; k < list.size(); k++) {
+      if (list.get(k) == n) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the closed, unflagged cells adjacent to the cell at the given index
+  IntList unknownAround(int c) {
+    IntList unknown = new IntList(8);
+    int x = c % this.board.width;
+    int y = c / this.board.width;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        int n = this.board.index(nx, ny);
+        if (!this.board.isOpen(n) && !this.board.isFlagged(n)) {
+          unknown.add(n);
+        }
+      }
+    }
+    return unknown;
+  }
+
+  // the number of mines adjacent to the cell at the given index that are not
+  // yet flagged
+  int minesLeftAround(int c) {
+    return this.board.surroundingMines(c) - this.board.surroundingFlags(c);
+  }
+
+  // EFFECT: opens every cell in the given list that is not in the excluded list
+  void openAll(IntList cells, IntList excluded) {
+    for (int k = 0; k < cells.size(); k++) {
+      int n = cells.get(k);
+      if ((excluded == null || !this.contains(excluded, n)) && !this.board.isOpen(n)) {
+        this.open(n);
+      }
+    }
+  }
+
+  // EFFECT: flags every cell in the given list that is not in the excluded list
+  void flagAll(IntList cells, IntList excluded) {
+    for (int k = 0; k < cells.size(); k++) {
+      int n = cells.get(k);
+      if ((excluded == null || !this.contains(excluded, n)) && !this.board.isFlagged(n)) {
+        this.flag(n);
+      }
+    }
+  }
+
+  // EFFECT: opens the cell at the given index, and queues every newly opened
+  // cell and its neighbors to be evaluated
+  void open(int i) {
+    this.moves++;
+    IntList opened = this.grid.openCell(i % this.board.width, i / this.board.width);
+    for (int k = 0; k < opened.size(); k++) {
+      this.queueAround(opened.get(k));
+    }
+  }
+
+  // EFFECT: flags the cell at the given index and queues its neighbors to be
+  // evaluated
+  void flag(int i) {
+    this.moves++;
+    this.board.toggleFlag(i);
+    this.queueAround(i);
+  }
+
+  // EFFECT: queues the cell at the given index and its open neighbors to be
+  // evaluated, skipping any already waiting
+  void queueAround(int i) {
+    int x = i % this.board.width;
+    int y = i / this.board.width;
+    for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, this.board.height - 1); ny++) {
+      for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, this.board.width - 1); nx++) {
+        int n = this.board.index(nx, ny);
+        if (this.board.isOpen(n) && (this.queued[n >> 6] & (1L << n)) == 0) {
+          this.queued[n >> 6] |= 1L << n;
+          this.pending.add(n);
+        }
+      }
+    }
+  }
+
+  // EFFECT: opens a closed, unflagged cell that could not be deduced, if there
+  // is one; returns whether it did. A random guess is drawn uniformly from every
+  // such cell
+  boolean guess() {
+    if (this.odds != null) {
+      return this.guessSafest();
+    }
+    if (this.rand != null) {
+      int eligible = 0;
+      for (int i = 0; i < this.board.size(); i++) {
+        if (!this.board.isOpen(i) && !this.board.isFlagged(i)) {
+          eligible++;
+        }
+      }
+      if (eligible == 0) {
+        return false;
+      }
+      int skip = this.rand.nextInt(eligible);
+      for (int i = 0; i < this.board.size(); i++) {
+        if (!this.board.isOpen(i) && !this.board.isFlagged(i)) {
+          if (skip == 0) {
+            this.guesses++;
+            this.open(i);
+            return true;
+          }
+          skip--;
+        }
+      }
+      return false;
+    }
+    while (this.guessCursor < this.board.size() && (this.board.isOpen(this.guessCursor)
+        || this.board.isFlagged(this.guessCursor))) {
+      this.guessCursor++;
+    }
+    if (this.guessCursor < this.board.size()) {
+      this.guesses++;
+      this.open(this.guessCursor);
+      return true;
+    }
+    return false;
+  }
+
+  // EFFECT: opens the closed, unflagged cell least likely to hold a mine, the
+  // first in reading order among equals; opening a cell that cannot hold a mine
+  // is a deduction from the total number of mines, not a guess; returns whether
+  // there was a cell to open
+  boolean guessSafest() {
+    double[] probs = this.odds.probabilities(this.numMines);
+    int best = -1;
+    for (int i = 0; i < probs.length; i++) {
+      if (!this.board.isOpen(i) && !this.board.isFlagged(i)
+          && (best < 0 || probs[i] < probs[best])) {
+        best = i;
+      }
+    }
+    if (best >= 0) {
+      if (!(probs[best] == 0)) {
+        this.guesses++;
+      }
+      this.open(best);
+      return true;
+    }
+    return false;
+  }
+
+}
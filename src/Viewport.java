@@ -0,0 +1,116 @@
+import javalib.worldimages.Posn;
+
+// Represents the part of a board seen through a window of a fixed size in
+// pixels: the board is drawn with square tiles of one of TILE_SIZES pixels, and
+// the window's top left corner sits at an offset into that drawing, kept so the
+// window never looks past the board's right or bottom edge where it can help it
+class Camera {
+  // the tile sizes zooming steps through, smallest first; each is even, so a
+  // layer of whole tiles is centered on a whole pixel
+  static final int[] TILE_SIZES = { 10, 16, 20, 30, 40, 60 };
+  // the zoom level of 30 pixel tiles, as drawn without a camera
+  static final int NORMAL_ZOOM = 3;
+
+  int width;
+  int height;
+  int columns;
+  int rows;
+  int zoom;
+  int x;
+  int y;
+
+  // a camera with a window of the given size in pixels, looking at the top left
+  // of a board of the given size in tiles with 30 pixel tiles
+  Camera(int width, int height, int columns, int rows) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("A camera's window must have a positive size");
+    }
+    this.width = width;
+    this.height = height;
+    this.columns = columns;
+    this.rows = rows;
+    this.zoom = NORMAL_ZOOM;
+    this.x = 0;
+    this.y = 0;
+  }
+
+  // the size in pixels of a tile at the current zoom
+  int tileSize() {
+    return TILE_SIZES[this.zoom];
+  }
+
+  // EFFECT: moves the window by the given number of pixels, staying on the
+  // board
+  void panBy(int dx, int dy) {
+    this.x += dx;
+    this.y += dy;
+    this.clamp();
+  }
+
+  // EFFECT: zooms in by the given number of steps, or out if it is negative, up
+  // to the largest or smallest tile size, keeping the point of the board at the
+  // middle of the window where it is
+  void zoomBy(int steps) {
+    int zoom = Math.max(0, Math.min(TILE_SIZES.length - 1, this.zoom + steps));
+    long middleX = (long) (this.x + this.width / 2) * TILE_SIZES[zoom] / this.tileSize();
+    long middleY = (long) (this.y + this.height / 2) * TILE_SIZES[zoom] / this.tileSize();
+    this.zoom = zoom;
+    this.x = (int) middleX - this.width / 2;
+    this.y = (int) middleY - this.height / 2;
+    this.clamp();
+  }
+
+  // EFFECT: keeps the window on the board, with its top left corner on the
+  // board's when the board is smaller than the window
+  void clamp() {
+    this.x = Math.max(0, Math.min(this.x, this.columns * this.tileSize() - this.width));
+    this.y = Math.max(0, Math.min(this.y, this.rows * this.tileSize() - this.height));
+  }
+
+  // the column of the tile at the given x coordinate in the window, which may be
+  // off the board
+  int columnAt(int px) {
+    return Math.floorDiv(this.x + px, this.tileSize());
+  }
+
+  // the row of the tile at the given y coordinate in the window, which may be
+  // off the board
+  int rowAt(int py) {
+    return Math.floorDiv(this.y + py, this.tileSize());
+  }
+
+  // the column and row of the tile shown at the given point in the window, or
+  // null if the point is outside the window or shows no tile
+  Posn tileAt(Posn p) {
+    if (p.x < 0 || p.x >= this.width || p.y < 0 || p.y >= this.height) {
+      return null;
+    }
+    int column = this.columnAt(p.x);
+    int row = this.rowAt(p.y);
+    if (column >= this.columns || row >= this.rows) {
+      return null;
+    }
+    return new Posn(column, row);
+  }
+
+  // the first column with any part in the window
+  int firstColumn() {
+    return Math.max(0, this.columnAt(0));
+  }
+
+  // one past the last column with any part in the window
+  int endColumn() {
+    return Math.min(this.columns, this.columnAt(this.width - 1) + 1);
+  }
+
+  // the first row with any part in the window
+  int firstRow() {
+    return Math.max(0, this.rowAt(0));
+  }
+
+  // one past the last row with any part in the window
+  int endRow() {
+    return Math.min(this.rows, this.rowAt(this.height - 1) + 1);
+  }
+
+}
@@ -0,0 +1,217 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*-
+ * Estimates how often the Solver wins a given kind of board by playing many
+ * seeded games across every core.
+ *
+ * Run with the game's classpath:
+ *   java WinRates [width] [height] [mines] [games] [safe|unsafe] [safest|random]
+ *
+ * Game k is played on a Grid built from new Random(WinRates.mix(k)), clicked
+ * first in the middle, so a batch gives the same tallies however it is split
+ * across threads.
+ */
+
+// Represents the tallies of a batch of games: how many were won and lost, and
+// histograms of the moves and the time each game took, bucketed by powers of two
+class WinRateStats {
+  // bucket k counts values from 2^(k-1) up to 2^k - 1, and bucket 0 counts 0
+  static final int BUCKETS = 64;
+
+  long games;
+  long wins;
+  long losses;
+  long[] moves;
+  long[] nanos;
+
+  WinRateStats() {
+    this.games = 0;
+    this.wins = 0;
+    this.losses = 0;
+    this.moves = new long[BUCKETS];
+    this.nanos = new long[BUCKETS];
+  }
+
+  // the histogram bucket holding the given non-negative value
+  static int bucket(long value) {
+    return BUCKETS - Long.numberOfLeadingZeros(value);
+  }
+
+  // EFFECT: counts one game that ended with the given status after the given
+  // number of moves and nanoseconds
+  void record(GameStatus status, int moves, long nanos) {
+    this.games++;
+    if (status == GameStatus.WON) {
+      this.wins++;
+    }
+    else if (status == GameStatus.LOST) {
+      this.losses++;
+    }
+    this.moves[WinRateStats.bucket(moves)]++;
+    this.nanos[WinRateStats.bucket(Math.max(nanos, 0))]++;
+  }
+
+  // EFFECT: adds the tallies of the given stats to these
+  void merge(WinRateStats other) {
+    this.games += other.games;
+    this.wins += other.wins;
+    this.losses += other.losses;
+    for (int k = 0; k < BUCKETS; k++) {
+      this.moves[k] += other.moves[k];
+      this.nanos[k] += other.nanos[k];
+    }
+  }
+
+  // the fraction of games won
+  double winRate() {
+    return this.games == 0 ? 0 : (double) this.wins / this.games;
+  }
+
+  // the half-width of a 95% confidence interval around the win rate
+  double margin() {
+    if (this.games == 0) {
+      return 0;
+    }
+    double p = this.winRate();
+    return 1.96 * Math.sqrt(p * (1 - p) / this.games);
+  }
+
+  // the given histogram as one line per non-empty bucket, labelled with the
+  // bucket's range
+  static String histogram(long[] counts) {
+    StringBuilder out = new StringBuilder();
+    for (int k = 0; k < BUCKETS; k++) {
+      if (counts[k] > 0) {
+        long low = k == 0 ? 0 : 1L << (k - 1);
+        long high = k == 0 ? 0 : (1L << (k - 1)) * 2 - 1;
+        out.append("  ").append(low).append("-").append(high).append(": ").append(counts[k])
+            .append("\n");
+      }
+    }
+    return out.toString();
+  }
+
+  // these tallies as a human-readable report
+  String summary() {
+    return "games: " + this.games + "\nwins: " + this.wins + "\nlosses: " + this.losses
+        + "\nwin rate: " + String.format("%.4f +/- %.4f", this.winRate(), this.margin())
+        + "\nmoves:\n" + WinRateStats.histogram(this.moves)
+        + "nanoseconds:\n" + WinRateStats.histogram(this.nanos);
+  }
+
+}
+
+// Plays batches of seeded games of one kind of board with the Solver, splitting
+// the seeds across a ForkJoinPool; every game has its own Grid and every task
+// its own WinRateStats, merged as the tasks are joined, so nothing is shared
+// while games are played
+class WinRates {
+  // games played by one task without splitting further
+  static final int GAMES_PER_TASK = 256;
+
+  int width;
+  int height;
+  int numMines;
+  boolean firstClickSafe;
+  boolean safestGuess;
+
+  // if safestGuess, the Solver guesses the cell least likely to hold a mine;
+  // otherwise it guesses at random
+  WinRates(int width, int height, int numMines, boolean firstClickSafe,
+      boolean safestGuess) {
+    this.width = width;
+    this.height = height;
+    this.numMines = numMines;
+    this.firstClickSafe = firstClickSafe;
+    this.safestGuess = safestGuess;
+  }
+
+  public static void main(String[] args) {
+    int width = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+    int height = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int numMines = args.length > 2 ? Integer.parseInt(args[2]) : 99;
+    long games = args.length > 3 ? Long.parseLong(args[3]) : 100000;
+    boolean safe = args.length <= 4 || !args[4].equals("unsafe");
+    boolean safest = args.length <= 5 || !args[5].equals("random");
+
+    WinRates rates = new WinRates(width, height, numMines, safe, safest);
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    long start = System.nanoTime();
+    WinRateStats stats = rates.estimate(pool, 0, games);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    pool.shutdown();
+    System.out.print(stats.summary());
+    System.out.println(String.format("%.0f games/s on %d threads", games / seconds,
+        pool.getParallelism()));
+  }
+
+  // plays the games with seeds from first up to first + games on the given pool
+  WinRateStats estimate(ForkJoinPool pool, long first, long games) {
+    return pool.invoke(new WinRateTask(this, first, first + games));
+  }
+
+  // plays the games with seeds from up to to on this thread
+  WinRateStats play(long from, long to) {
+    WinRateStats stats = new WinRateStats();
+    for (long seed = from; seed < to; seed++) {
+      long start = System.nanoTime();
+      Solver solver = this.solverFor(seed);
+      GameStatus status = solver.solve(this.width / 2, this.height / 2, true);
+      stats.record(status, solver.moves, System.nanoTime() - start);
+    }
+    return stats;
+  }
+
+  // a Solver for a fresh Grid built from the given seed
+  Solver solverFor(long seed) {
+    Random rand = new Random(WinRates.mix(seed));
+    Grid grid = new Grid(rand, this.width, this.height, this.numMines, this.firstClickSafe);
+    if (this.safestGuess) {
+      return new Solver(grid, this.numMines);
+    }
+    return new Solver(grid, rand);
+  }
+
+  // the seed given to the Random of the game with the given seed: one step of
+  // SplitMix64, as in Chunk.seed, since Randoms made from consecutive seeds
+  // start out alike; the first nextInt(2) of new Random(k) is 1 for every k
+  // below 2000
+  static long mix(long seed) {
+    long z = (seed + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+}
+
+// Plays the games with seeds from up to to, halving the range until it is no
+// more than WinRates.GAMES_PER_TASK games
+class WinRateTask extends RecursiveTask<WinRateStats> {
+  private static final long serialVersionUID = 1L;
+
+  WinRates rates;
+  long from;
+  long to;
+
+  WinRateTask(WinRates rates, long from, long to) {
+    this.rates = rates;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected WinRateStats compute() {
+    if (this.to - this.from <= WinRates.GAMES_PER_TASK) {
+      return this.rates.play(this.from, this.to);
+    }
+    long mid = this.from + (this.to - this.from) / 2;
+    WinRateTask left = new WinRateTask(this.rates, this.from, mid);
+    left.fork();
+    WinRateStats stats = new WinRateTask(this.rates, mid, this.to).compute();
+    stats.merge(left.join());
+    return stats;
+  }
+
+}